@@ -0,0 +1,52 @@
+package javiergs.benchmark;
+
+import javiergs.vm.Interpreter;
+import javiergs.vm.InterpreterListener;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Execution throughput of the Virtual Machine on representative programs:
+ * a counting loop, nested int and float arithmetic, string concatenation and branch-heavy code.
+ * The program is loaded once and reset before each run, so only execution is measured.
+ * With jit -1 it is always interpreted, with jit 0 it is compiled to JVM code from the first run.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+	
+	@Param({"counting", "arithmetic", "strings", "branches"})
+	public String program;
+	
+	@Param({"-1", "0"})
+	public int jit;
+	
+	private Interpreter vm;
+	
+	@Setup(Level.Trial)
+	public void load() throws IOException {
+		vm = new Interpreter(InterpreterListener.NONE);
+		vm.setJitThreshold(jit);
+		vm.init(Programs.read(program));
+	}
+	
+	@Setup(Level.Invocation)
+	public void reset() {
+		vm.reset();
+	}
+	
+	@Benchmark
+	public void execute() {
+		vm.run();
+	}
+	
+}
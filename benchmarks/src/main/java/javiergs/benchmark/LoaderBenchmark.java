@@ -0,0 +1,71 @@
+package javiergs.benchmark;
+
+import javiergs.vm.Interpreter;
+import javiergs.vm.InterpreterListener;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of loading a program: reading the intermediate code, decoding, linking and type inference,
+ * from the editor text (Interpreter.init), from a stream (Interpreter.load) and from a bytecode file
+ * written by Interpreter.save.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoaderBenchmark {
+	
+	@Param({"1000", "100000"})
+	public int instructions;
+	
+	private String text;
+	private byte[] bytes;
+	private Path bytecode;
+	private Interpreter vm;
+	
+	@Setup(Level.Trial)
+	public void generate() throws IOException {
+		text = Programs.generated(instructions);
+		bytes = text.getBytes(StandardCharsets.UTF_8);
+		vm = new Interpreter(InterpreterListener.NONE);
+		vm.init(text);
+		bytecode = Files.createTempFile("program", ".tcvm");
+		vm.save(bytecode);
+	}
+	
+	@TearDown(Level.Trial)
+	public void delete() throws IOException {
+		Files.deleteIfExists(bytecode);
+	}
+	
+	@Benchmark
+	public Interpreter init() {
+		vm.init(text);
+		return vm;
+	}
+	
+	@Benchmark
+	public Interpreter loadStream() throws IOException {
+		vm.load(new ByteArrayInputStream(bytes));
+		return vm;
+	}
+	
+	@Benchmark
+	public Interpreter loadBytecode() throws IOException {
+		vm.load(bytecode);
+		return vm;
+	}
+	
+}
@@ -0,0 +1,66 @@
+package javiergs.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Intermediate code used by the benchmarks.
+ * The representative programs are in the resources folder (programs/*.txt).
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public final class Programs {
+	
+	public static String read(String name) throws IOException {
+		try (InputStream in = Programs.class.getResourceAsStream("/programs/" + name + ".txt")) {
+			if (in == null) {
+				throw new IOException("program not found: " + name);
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				out.write(buffer, 0, n);
+			}
+			return out.toString(StandardCharsets.UTF_8.name());
+		}
+	}
+	
+	/**
+	 * A program with the given number of instructions (rounded to blocks of 8), like the code a compiler
+	 * generates for a long list of assignments, comparisons and prints with a few labels.
+	 */
+	public static String generated(int instructions) {
+		int blocks = Math.max(1, instructions / 8);
+		StringBuilder text = new StringBuilder(instructions * 12);
+		text.append("x, int, global, 0\n");
+		text.append("y, float, global, 0\n");
+		text.append("b, boolean, global, 0\n");
+		text.append("s, string, global, 0\n");
+		for (int i = 0; i < blocks; i += 100) {
+			text.append("#L").append(i).append(", int, ").append(i * 8 + 1).append('\n');
+		}
+		text.append("@\n");
+		for (int i = 0; i < blocks; i++) {
+			text.append("lod x, 0\n");
+			text.append("lit ").append(i).append(", 0\n");
+			text.append("opr 2, 0\n");
+			text.append("sto x, 0\n");
+			text.append("lod y, 0\n");
+			text.append("lit 0.5, 0\n");
+			text.append("opr 11, 0\n");
+			text.append("sto b, 0\n");
+		}
+		text.append("lod x, 0\n");
+		text.append("opr 21, 0\n");
+		text.append("opr 0, 0\n");
+		return text.toString();
+	}
+	
+	private Programs() {
+	}
+	
+}
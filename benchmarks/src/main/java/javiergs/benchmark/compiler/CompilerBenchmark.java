@@ -0,0 +1,62 @@
+package javiergs.benchmark.compiler;
+
+import javiergs.compiler.CompilerUI;
+import javiergs.compiler.lexer.Lexer;
+import javiergs.compiler.lexer.Token;
+import javiergs.compiler.parser.Parser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The compiler front end as CompilerUI runs it: Lexer and then Parser.run over the tokens.
+ * Build with -Pcompiler and run with -p source=path/to/a/source/file.
+ * Parser.run reports to a CompilerUI, so the parser benchmark needs a display.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilerBenchmark {
+	
+	@Param({""})
+	public String source;
+	
+	private String text;
+	private CompilerUI ui;
+	
+	@Setup(Level.Trial)
+	public void read() throws IOException {
+		if (source.isEmpty()) {
+			throw new IllegalStateException("run with -p source=<file>");
+		}
+		text = new String(Files.readAllBytes(Paths.get(source)));
+	}
+	
+	@Benchmark
+	public Vector<Token> lexer() {
+		Lexer lex = new Lexer(text);
+		lex.run();
+		return lex.getTokens();
+	}
+	
+	@Benchmark
+	public Object lexerAndParser() {
+		if (ui == null) {
+			ui = new CompilerUI();
+		}
+		Lexer lex = new Lexer(text);
+		lex.run();
+		return Parser.run(lex.getTokens(), ui);
+	}
+	
+}
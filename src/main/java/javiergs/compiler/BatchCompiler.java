@@ -0,0 +1,204 @@
+package javiergs.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles many source files in parallel on a fixed pool of threads (one per core by default),
+ * each file with its own Compiler, Lexer and Parser.
+ * The Parser is called through a static method and may keep its symbol table in static fields, so by default
+ * every file loads its own copy of the compiler classes (see ParserLoader); a parser without static state
+ * can share them.
+ * For every file it keeps the Compiler.Result and writes a summary with one tab-separated line per file,
+ * in the order they were given (tabs, new lines and backslashes in the errors are escaped as \t, \n and \\).
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public class BatchCompiler {
+
+	private final int threads;
+	private final boolean isolated;
+	private Path directory;
+
+	/**
+	 * @param threads  size of the pool
+	 * @param isolated true to load the compiler classes again for every file
+	 */
+	public BatchCompiler(int threads, boolean isolated) {
+		this.threads = threads;
+		this.isolated = isolated;
+	}
+
+	/**
+	 * Directory for the intermediate code files, null to write them next to the sources.
+	 */
+	public void setDirectory(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Compiles the files and returns their results in the same order.
+	 */
+	public List<Compiler.Result> compile(List<Path> sources) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Compiler.Result>> futures = new ArrayList<>();
+			for (Path source : sources) {
+				futures.add(pool.submit(() -> compile(source)));
+			}
+			List<Compiler.Result> results = new ArrayList<>();
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					results.add(futures.get(i).get());
+				} catch (ExecutionException e) {
+					List<String> diagnostics = new ArrayList<>();
+					diagnostics.add("ERROR:\n" + e.getCause());
+					results.add(new Compiler.Result(sources.get(i).toString(), "", diagnostics, 0, 0, 0));
+				}
+			}
+			return results;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private Compiler.Result compile(Path source) throws IOException, ReflectiveOperationException {
+		Compiler compiler = new Compiler(CompilerListener.NONE, frontend());
+		return compiler.compile(source, Compiler.output(source, directory));
+	}
+
+	@SuppressWarnings("unchecked")
+	private BiFunction<String, CompilerListener, int[]> frontend() throws ReflectiveOperationException {
+		if (!isolated) {
+			return new Frontend();
+		}
+		ParserLoader loader = new ParserLoader(BatchCompiler.class.getClassLoader());
+		Constructor<?> constructor = loader.loadClass(Frontend.class.getName()).getDeclaredConstructor();
+		constructor.setAccessible(true);
+		return (BiFunction<String, CompilerListener, int[]>) constructor.newInstance();
+	}
+
+	/**
+	 * Writes the summary: a header and one line per result.
+	 */
+	public static void write(List<Compiler.Result> results, Path path) throws IOException {
+		try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			out.write("source\tstatus\ttokens\tlexical errors\tms\terrors\n");
+			for (Compiler.Result result : results) {
+				out.write(result.source + "\t" + (result.isOk() ? "ok" : "error") + "\t" + result.tokens + "\t"
+					+ result.lexicalErrors + "\t" + String.format("%.3f", result.nanos / 1e6) + "\t"
+					+ escape(errors(result)) + "\n");
+			}
+		}
+	}
+
+	/**
+	 * The diagnostics of a result that start with ERROR, one per line.
+	 */
+	static String errors(Compiler.Result result) {
+		return result.diagnostics.stream().filter(diagnostic -> diagnostic.startsWith("ERROR"))
+			.collect(Collectors.joining("\n"));
+	}
+
+	private static String escape(String text) {
+		return text.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	/**
+	 * Source files given on the command line: every regular file of a directory (sorted by name),
+	 * or the file itself.
+	 */
+	private static List<Path> sources(List<String> names) throws IOException {
+		List<Path> sources = new ArrayList<>();
+		for (String name : names) {
+			Path path = Paths.get(name);
+			if (Files.isDirectory(path)) {
+				try (Stream<Path> files = Files.list(path)) {
+					sources.addAll(files.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+				}
+			} else {
+				sources.add(path);
+			}
+		}
+		return sources;
+	}
+
+	/**
+	 * java javiergs.compiler.BatchCompiler [-threads n] [-shared] [-d directory] [-o summary] (directory | file)...
+	 * The intermediate code of every file goes to a .code file (see Compiler), the summary to summary.tsv
+	 * unless -o says otherwise and the errors of every file that did not compile to the standard error.
+	 * With -shared the files share the compiler classes. It exits with 1 when a file did not compile.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean isolated = true;
+		Path directory = null;
+		Path summary = Paths.get("summary.tsv");
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-shared")) {
+				isolated = false;
+			} else if (args[i].equals("-d") && i + 1 < args.length) {
+				directory = Paths.get(args[++i]);
+			} else if (args[i].equals("-o") && i + 1 < args.length) {
+				summary = Paths.get(args[++i]);
+			} else {
+				names.add(args[i]);
+			}
+		}
+		if (names.isEmpty()) {
+			System.err.println("ERROR: no sources, use BatchCompiler [-threads n] [-shared] [-d directory] [-o summary]"
+				+ " (directory | file)...");
+			System.exit(1);
+		}
+		List<Path> sources = sources(names);
+		long start = System.nanoTime();
+		BatchCompiler compiler = new BatchCompiler(threads, isolated);
+		if (directory != null) {
+			Files.createDirectories(directory);
+			compiler.setDirectory(directory);
+		}
+		List<Compiler.Result> results = compiler.compile(sources);
+		write(results, summary);
+		long failed = 0;
+		long tokens = 0;
+		long nanos = 0;
+		for (Compiler.Result result : results) {
+			tokens += result.tokens;
+			nanos += result.nanos;
+			if (!result.isOk()) {
+				failed++;
+				System.err.println("ERROR: " + result.source + (result.lexicalErrors > 0
+					? ", " + result.lexicalErrors + " strings do not match any rule" : ""));
+				String errors = errors(result);
+				if (!errors.isEmpty()) {
+					System.err.println(errors);
+				}
+			}
+		}
+		System.err.printf("* %d files (%d tokens) compiled on %d threads in %.3f ms (%.3f ms of compilation),"
+				+ " %d did not compile. Summary written to %s%n", results.size(), tokens, threads,
+			(System.nanoTime() - start) / 1e6, nanos / 1e6, failed, summary);
+		if (failed > 0) {
+			System.exit(1);
+		}
+	}
+
+}
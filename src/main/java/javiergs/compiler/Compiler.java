@@ -0,0 +1,215 @@
+package javiergs.compiler;
+
+import javiergs.compiler.semantic.SymbolTableItem;
+import javiergs.vm.ConsoleListener;
+import javiergs.vm.Interpreter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Vector;
+import java.util.function.BiFunction;
+
+/**
+ * Compiler without a GUI: the same pipeline as CompilerUI (Lexer, Parser with its semantic analysis
+ * and code generation) from source text or files to intermediate code.
+ * Diagnostics go to a CompilerListener instead of the console of the GUI, and the intermediate code
+ * is kept in the Result, ready to be written to a file or loaded by the Interpreter.
+ * The Parser reports to a CompilerListener, which CompilerUI implements too.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public class Compiler {
+
+	private final CompilerListener listener;
+	private final BiFunction<String, CompilerListener, int[]> frontend;
+
+	/**
+	 * @param listener where diagnostics and symbol tables go, while the code is kept in the Result
+	 */
+	public Compiler(CompilerListener listener) {
+		this(listener, new Frontend());
+	}
+
+	/**
+	 * @param frontend a Frontend, maybe loaded by another class loader
+	 */
+	Compiler(CompilerListener listener, BiFunction<String, CompilerListener, int[]> frontend) {
+		this.listener = listener;
+		this.frontend = frontend;
+	}
+
+	public Compiler() {
+		this(CompilerListener.NONE);
+	}
+
+	/**
+	 * Result of compiling one source.
+	 */
+	public static final class Result {
+
+		// file name, or the name given with the text
+		public final String source;
+		// intermediate code, one instruction or symbol per line
+		public final String code;
+		public final List<String> diagnostics;
+		public final int tokens;
+		// tokens that do not match any rule of the Lexer
+		public final int lexicalErrors;
+		public final long nanos;
+
+		Result(String source, String code, List<String> diagnostics, int tokens, int lexicalErrors, long nanos) {
+			this.source = source;
+			this.code = code;
+			this.diagnostics = Collections.unmodifiableList(diagnostics);
+			this.tokens = tokens;
+			this.lexicalErrors = lexicalErrors;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * True when the Lexer found no errors and no diagnostic starts with ERROR.
+		 */
+		public boolean isOk() {
+			if (lexicalErrors > 0 || code.isEmpty()) {
+				return false;
+			}
+			for (String diagnostic : diagnostics) {
+				if (diagnostic.startsWith("ERROR")) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+	/**
+	 * Keeps the code and the diagnostics of one compilation and passes the diagnostics on.
+	 */
+	private static class Capture implements CompilerListener {
+
+		private final CompilerListener listener;
+		private final StringBuilder code = new StringBuilder();
+		private final List<String> diagnostics = new ArrayList<>();
+
+		Capture(CompilerListener listener) {
+			this.listener = listener;
+		}
+
+		@Override
+		public void writeConsole(String msg) {
+			diagnostics.add(msg);
+			listener.writeConsole(msg);
+		}
+
+		@Override
+		public void writeCode(String msg) {
+			code.append(msg).append('\n');
+		}
+
+		@Override
+		public void writeSymbolTable(Hashtable<String, Vector<SymbolTableItem>> symbolTable) {
+			listener.writeSymbolTable(symbolTable);
+		}
+
+	}
+
+	public Result compile(Path source) throws IOException {
+		return compile(source.toString(), Files.readString(source));
+	}
+
+	/**
+	 * Compiles source text; name only labels the Result.
+	 */
+	public Result compile(String name, String text) {
+		long start = System.nanoTime();
+		Capture capture = new Capture(listener);
+		if (text.isEmpty()) {
+			capture.writeConsole("ERROR: " + name + " is empty");
+			return new Result(name, "", capture.diagnostics, 0, 0, System.nanoTime() - start);
+		}
+		int[] counts = frontend.apply(text, capture);
+		return new Result(name, capture.code.toString(), capture.diagnostics, counts[0], counts[1],
+			System.nanoTime() - start);
+	}
+
+	/**
+	 * Compiles a file and writes its intermediate code to output.
+	 */
+	public Result compile(Path source, Path output) throws IOException {
+		Result result = compile(source);
+		Files.writeString(output, result.code);
+		return result;
+	}
+
+	/**
+	 * File next to the source for its intermediate code: the name without its extension plus .code.
+	 */
+	static Path output(Path source, Path directory) {
+		String name = source.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		name = (dot > 0 ? name.substring(0, dot) : name) + ".code";
+		return directory == null ? source.resolveSibling(name) : directory.resolve(name);
+	}
+
+	/**
+	 * java javiergs.compiler.Compiler [-d directory] [-run] file...
+	 * Compiles every file into a .code file next to it (or in the directory) with the diagnostics on the
+	 * standard error. With -run the intermediate code of every file that compiled runs in the Interpreter.
+	 * It exits with 1 when a file did not compile.
+	 */
+	public static void main(String[] args) throws IOException {
+		Path directory = null;
+		boolean run = false;
+		List<Path> sources = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-d") && i + 1 < args.length) {
+				directory = Paths.get(args[++i]);
+			} else if (args[i].equals("-run")) {
+				run = true;
+			} else {
+				sources.add(Paths.get(args[i]));
+			}
+		}
+		if (sources.isEmpty()) {
+			System.err.println("ERROR: no sources, use Compiler [-d directory] [-run] file...");
+			System.exit(1);
+		}
+		if (directory != null) {
+			Files.createDirectories(directory);
+		}
+		Compiler compiler = new Compiler(new CompilerListener() {
+			@Override
+			public void writeConsole(String msg) {
+				System.err.println(msg);
+			}
+		});
+		int failed = 0;
+		for (Path source : sources) {
+			System.err.println("* Compiling " + source + "...");
+			Result result = compiler.compile(source, output(source, directory));
+			if (!result.isOk()) {
+				failed++;
+			} else if (run) {
+				ConsoleListener console = new ConsoleListener();
+				Interpreter interpreter = new Interpreter(console);
+				interpreter.load(new ByteArrayInputStream(result.code.getBytes(StandardCharsets.UTF_8)));
+				interpreter.run();
+				failed += console.hasErrors() ? 1 : 0;
+			}
+		}
+		if (failed > 0) {
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,34 @@
+package javiergs.compiler;
+
+import javiergs.compiler.semantic.SymbolTableItem;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Observer for the Compiler.
+ * The Parser reports diagnostics, the symbol table and the intermediate code through this interface,
+ * so it can run with a GUI (CompilerUI) or without one (Compiler).
+ * Every method does nothing by default.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public interface CompilerListener {
+
+	CompilerListener NONE = new CompilerListener() {
+	};
+
+	default void writeConsole(String msg) {
+	}
+
+	/**
+	 * One line of intermediate code.
+	 */
+	default void writeCode(String msg) {
+	}
+
+	default void writeSymbolTable(Hashtable<String, Vector<SymbolTableItem>> symbolTable) {
+	}
+
+}
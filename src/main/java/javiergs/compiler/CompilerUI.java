@@ -1,6 +1,5 @@
 package javiergs.compiler;
 
-import javiergs.compiler.lexer.Lexer;
 import javiergs.compiler.lexer.Token;
 import javiergs.compiler.parser.Parser;
 import javiergs.compiler.semantic.SymbolTableItem;
@@ -17,17 +16,25 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Vector;
 
 /**
  * User Interface for the Compiler including four tabs: Lexer, Parser, Semantic Analyzer and Intermediate Code
+ * A compilation does nothing when the source was not edited since the last one (see EditTracker), and it only
+ * parses again when the edits changed the tokens (word, rule and line) of the last one. The tokens come from
+ * the EditTracker, that lexes only what each edit can reach, and are the ones the Parser takes.
+ * It only replaces the rows of the tokens the edits changed, and the rows of the symbol table and the lines
+ * of the code that changed.
  *
  * @author javiergs
  * @version 1.1
  */
-public class CompilerUI extends JFrame implements ActionListener {
+public class CompilerUI extends JFrame implements ActionListener, CompilerListener {
 	
 	private JTextArea console, codeArea;
 	private JTextArea editor;
@@ -37,6 +44,10 @@ public class CompilerUI extends JFrame implements ActionListener {
 	private JMenuItem menuCompiler = new JMenuItem("Compile");
 	private JTree tree;
 	private JPanel treePanel = new JPanel(new GridLayout(1, 1));
+	private EditTracker tracker;
+	// symbol table and code of the compilation running
+	private final List<Object[]> symbols = new ArrayList<>();
+	private final StringBuilder code = new StringBuilder();
 	
 	public CompilerUI() {
 		createMenu();
@@ -61,24 +72,26 @@ public class CompilerUI extends JFrame implements ActionListener {
 	}
 	
 	public void writeCode(String msg) {
-		codeArea.append(msg + "\n");
+		code.append(msg).append("\n");
 	}
 	
 	public void writeConsole(String msg) {
 		console.append(msg + "\n");
 	}
 	
-	private void writeEditor(String msg) {
-		editor.append(msg + "\n");
-	}
-	
-	private void writeTokenTable(Vector<Token> tokens) {
-		for (Token token1 : tokens) {
+	/**
+	 * Shows the tokens, replacing only the rows from first up to the last tail ones.
+	 */
+	private void writeTokenTable(Vector<Token> tokens, int first, int tail) {
+		DefaultTableModel model = (DefaultTableModel) tokensTable.getModel();
+		Vector<Vector<Object>> rows = new Vector<>();
+		for (Token token1 : tokens.subList(first, tokens.size() - tail)) {
 			int line = token1.getLine();
 			String token = token1.getToken();
 			String word = token1.getWord();
-			((DefaultTableModel) tokensTable.getModel()).addRow(new Object[]{String.format("%04d", line), token, word});
+			rows.add(new Vector<>(Arrays.asList(String.format("%04d", line), token, word)));
 		}
+		replaceRows(model, first, model.getRowCount() - tail - first, rows);
 	}
 	
 	public void writeSymbolTable(Hashtable<String, Vector<SymbolTableItem>> symbolTable) {
@@ -89,20 +102,75 @@ public class CompilerUI extends JFrame implements ActionListener {
 			String type = symbolTable.get(name).get(0).getType();
 			String scope = symbolTable.get(name).get(0).getScope();
 			String value = symbolTable.get(name).get(0).getValue();
-			((DefaultTableModel) semanticTable.getModel()).addRow(new Object[]{name, type, scope,});
+			symbols.add(new Object[]{name, type, scope,});
+		}
+	}
+	
+	/**
+	 * Gives the model the rows, removing and inserting only the ones between the first and the last that changed.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void patchTable(DefaultTableModel model, List<Object[]> rows) {
+		Vector<Vector> data = model.getDataVector();
+		Vector<Vector> fresh = new Vector<>();
+		for (Object[] row : rows) {
+			Vector<Object> cells = new Vector<>(Arrays.asList(row));
+			cells.setSize(model.getColumnCount());
+			fresh.add(cells);
+		}
+		int shorter = Math.min(data.size(), fresh.size());
+		int prefix = 0;
+		while (prefix < shorter && data.get(prefix).equals(fresh.get(prefix))) {
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < shorter - prefix
+			&& data.get(data.size() - 1 - suffix).equals(fresh.get(fresh.size() - 1 - suffix))) {
+			suffix++;
 		}
+		replaceRows(model, prefix, data.size() - prefix - suffix, fresh.subList(prefix, fresh.size() - suffix));
+	}
+	
+	/**
+	 * Replaces removed rows of the model from first by rows.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void replaceRows(DefaultTableModel model, int first, int removed, List<? extends Vector> rows) {
+		Vector<Vector> data = model.getDataVector();
+		if (removed > 0) {
+			data.subList(first, first + removed).clear();
+			model.fireTableRowsDeleted(first, first + removed - 1);
+		}
+		if (!rows.isEmpty()) {
+			data.addAll(first, rows);
+			model.fireTableRowsInserted(first, first + rows.size() - 1);
+		}
+	}
+	
+	/**
+	 * Shows the code, replacing only the text between the first and the last character that changed.
+	 */
+	private void patchCode(String text) {
+		String old = codeArea.getText();
+		int shorter = Math.min(old.length(), text.length());
+		int prefix = 0;
+		while (prefix < shorter && old.charAt(prefix) == text.charAt(prefix)) {
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < shorter - prefix
+			&& old.charAt(old.length() - 1 - suffix) == text.charAt(text.length() - 1 - suffix)) {
+			suffix++;
+		}
+		codeArea.replaceRange(text.substring(prefix, text.length() - suffix), prefix, old.length() - suffix);
 	}
 	
 	private void clearTokenTable() {
-		int ta = ((DefaultTableModel) tokensTable.getModel()).getRowCount();
-		for (int i = 0; i < ta; i++)
-			((DefaultTableModel) tokensTable.getModel()).removeRow(0);
+		((DefaultTableModel) tokensTable.getModel()).setRowCount(0);
 	}
 	
 	private void clearSemanticTable() {
-		int ta = ((DefaultTableModel) semanticTable.getModel()).getRowCount();
-		for (int i = 0; i < ta; i++)
-			((DefaultTableModel) semanticTable.getModel()).removeRow(0);
+		((DefaultTableModel) semanticTable.getModel()).setRowCount(0);
 	}
 	
 	@Override
@@ -119,6 +187,7 @@ public class CompilerUI extends JFrame implements ActionListener {
 				editor.setText("");
 				clearTokenTable();
 				clearSemanticTable();
+				tracker.reset();
 				try {
 					loadFile(file.getAbsolutePath());
 				} catch (IOException ex) {
@@ -126,29 +195,36 @@ public class CompilerUI extends JFrame implements ActionListener {
 				}
 			}
 		} else if (menuCompiler.equals(e.getSource())) {
-			clearTokenTable();
-			clearSemanticTable();
-			console.setText("");
-			codeArea.setText("");
 			// lexical analysis
 			if (editor.getText().equals("")) {
+				clearTokenTable();
+				clearSemanticTable();
+				console.setText("");
+				codeArea.setText("");
+				tracker.reset();
 				writeConsole("The file is empty");
 				return;
 			}
-			Lexer lex = new Lexer(editor.getText());
-			lex.run();
-			Vector<Token> tokens = lex.getTokens();
+			if (!tracker.edited()) {
+				writeConsole("No changes since the last compilation");
+				return;
+			}
+			if (!tracker.changed()) {
+				tracker.compiled();
+				writeConsole("No changes in the tokens since the last compilation");
+				return;
+			}
+			Vector<Token> tokens = tracker.compile();
+			console.setText("");
+			symbols.clear();
+			code.setLength(0);
 			// show token in a table
-			writeTokenTable(tokens);
+			writeTokenTable(tokens, tracker.first(), tracker.tail());
 			// counting errors
-			int errors = 0;
-			for (Token token : tokens) {
-				if (token.getToken().equals("ERROR")) {
-					errors++;
-				}
-			}
+			int errors = tracker.tokens().errors();
 			// show stats on on the console
-			writeConsole(tokens.size() + " strings found in " + tokens.get(tokens.size() - 1).getLine() + " lines,");
+			int lines = tokens.isEmpty() ? 0 : tokens.get(tokens.size() - 1).getLine();
+			writeConsole(tokens.size() + " strings found in " + lines + " lines,");
 			writeConsole(errors + " strings do not match any rule");
 			// update tree
 			treePanel.removeAll();
@@ -161,6 +237,10 @@ public class CompilerUI extends JFrame implements ActionListener {
 			treePanel.add(treeView);
 			treePanel.revalidate();
 			treePanel.repaint();
+			// symbol table and code
+			patchTable((DefaultTableModel) semanticTable.getModel(), symbols);
+			patchCode(code.toString());
+			tracker.compiled();
 		}
 	}
 	
@@ -168,11 +248,14 @@ public class CompilerUI extends JFrame implements ActionListener {
 		String line;
 		BufferedReader br = new BufferedReader(new FileReader(file));
 		writeConsole("Reading " + file + "");
+		StringBuilder text = new StringBuilder();
 		line = br.readLine();
 		while (line != null) {
-			writeEditor(line);
+			text.append(line).append("\n");
 			line = br.readLine();
 		}
+		// one edit of the editor instead of one per line
+		editor.append(text.toString());
 		writeConsole("File loaded.");
 		br.close();
 		return true;
@@ -206,6 +289,7 @@ public class CompilerUI extends JFrame implements ActionListener {
 		screenPanel.setBorder(panelTitle);
 		editor = new JTextArea();
 		editor.setEditable(true);
+		tracker = new EditTracker(editor.getDocument());
 		JScrollPane scrollScreen = new JScrollPane(editor);
 		screenPanel.add(scrollScreen);
 		// tokens
@@ -0,0 +1,155 @@
+package javiergs.compiler;
+
+import javiergs.compiler.lexer.Token;
+import javiergs.compiler.lexer.Tokens;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import java.util.Vector;
+
+/**
+ * Follows the edits of the document of the editor, lexing again only the tokens each edit can reach
+ * (see Tokens.edit), so the tokens of the source are known without lexing all of it; an edit reads only
+ * the inserted text from the document. It tells whether the source was edited since the last compilation
+ * and whether the edits changed the tokens, their kind, word or line; these tokens are the only ones the
+ * compiler lexes and the ones the Parser takes (see CompilerUI).
+ * The tokens changed since the last compilation are the ones from first up to the last tail ones, so the
+ * Vector of Token of the last compilation and the table of tokens are updated only there.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+final class EditTracker implements DocumentListener {
+
+	private static final char[] NOTHING = new char[0];
+
+	private final Document document;
+	private final Segment segment = new Segment();
+	private final Tokens tokens;
+	// the tokens of the last compilation, null before the first one
+	private Vector<Token> compiled;
+	private boolean edited = true;
+	private boolean changed = true;
+	private int first;
+	private int tail;
+
+	EditTracker(Document document) {
+		this.document = document;
+		try {
+			tokens = Tokens.of(document.getText(0, document.getLength()));
+		} catch (BadLocationException e) {
+			throw new IllegalStateException(e);
+		}
+		document.addDocumentListener(this);
+	}
+
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+		try {
+			document.getText(e.getOffset(), e.getLength(), segment);
+		} catch (BadLocationException ex) {
+			throw new IllegalStateException(ex);
+		}
+		edit(tokens.edit(e.getOffset(), 0, segment.array, segment.offset, segment.count));
+	}
+
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+		edit(tokens.edit(e.getOffset(), e.getLength(), NOTHING, 0, 0));
+	}
+
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+		// attributes only, the text is the same
+	}
+
+	private void edit(Tokens.Edit edit) {
+		edited = true;
+		if (edit.same && edit.lines == 0) {
+			return;
+		}
+		// the tokens after the edit keep their kind and word but not their line when it added or removed lines
+		int after = edit.lines == 0 ? tokens.size() - edit.first - edit.added : 0;
+		if (changed) {
+			first = Math.min(first, edit.first);
+			tail = Math.min(tail, after);
+		} else {
+			first = edit.first;
+			tail = after;
+			changed = true;
+		}
+	}
+
+	/**
+	 * The tokens of the document, up to date with its last edit.
+	 */
+	Tokens tokens() {
+		return tokens;
+	}
+
+	/**
+	 * The tokens as the Vector of Token the Parser takes: the one of the last compilation with the tokens
+	 * from first up to the last tail ones replaced.
+	 */
+	Vector<Token> compile() {
+		if (compiled == null) {
+			compiled = tokens.toVector();
+			return compiled;
+		}
+		Vector<Token> fresh = new Vector<>(tokens.size() - tail - first);
+		for (int i = first; i < tokens.size() - tail; i++) {
+			fresh.add(tokens.token(i));
+		}
+		compiled.subList(first, compiled.size() - tail).clear();
+		compiled.addAll(first, fresh);
+		return compiled;
+	}
+
+	/**
+	 * First token changed since the last compilation.
+	 */
+	int first() {
+		return first;
+	}
+
+	/**
+	 * Number of tokens at the end not changed since the last compilation.
+	 */
+	int tail() {
+		return tail;
+	}
+
+	/**
+	 * True when the document was edited since the last call to compiled.
+	 */
+	boolean edited() {
+		return edited;
+	}
+
+	/**
+	 * True when the edits since the last call to compiled changed the tokens.
+	 */
+	boolean changed() {
+		return changed;
+	}
+
+	void compiled() {
+		edited = false;
+		changed = false;
+	}
+
+	/**
+	 * Forgets the last compilation, when the tables it filled were cleared, so the next one takes all the tokens.
+	 */
+	void reset() {
+		compiled = null;
+		edited = true;
+		changed = true;
+		first = 0;
+		tail = 0;
+	}
+
+}
@@ -0,0 +1,38 @@
+package javiergs.compiler;
+
+import javiergs.compiler.lexer.StreamLexer;
+import javiergs.compiler.lexer.Token;
+import javiergs.compiler.parser.Parser;
+
+import java.util.Vector;
+import java.util.function.BiFunction;
+
+/**
+ * The part of the Compiler that uses the Lexer and the Parser: it lexes the text with the StreamLexer, reports
+ * the token counts and parses the tokens, with the diagnostics and the code going to the listener.
+ * It returns the number of tokens and the number of tokens that do not match any rule.
+ * It only uses types of the JDK and CompilerListener in its interface, so BatchCompiler can load it
+ * (with the Lexer and the Parser) in a ParserLoader of its own.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+final class Frontend implements BiFunction<String, CompilerListener, int[]> {
+
+	@Override
+	public int[] apply(String text, CompilerListener listener) {
+		StreamLexer lexer = new StreamLexer(text);
+		Vector<Token> tokens = lexer.toVector();
+		int errors = lexer.errors();
+		int lines = tokens.isEmpty() ? 0 : tokens.get(tokens.size() - 1).getLine();
+		listener.writeConsole(tokens.size() + " strings found in " + lines + " lines,");
+		listener.writeConsole(errors + " strings do not match any rule");
+		try {
+			Parser.run(tokens, listener);
+		} catch (RuntimeException e) {
+			listener.writeConsole("ERROR:\n" + e);
+		}
+		return new int[]{tokens.size(), errors};
+	}
+
+}
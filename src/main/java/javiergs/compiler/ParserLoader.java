@@ -0,0 +1,74 @@
+package javiergs.compiler;
+
+import javiergs.compiler.semantic.SymbolTableItem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class loader that loads its own copy of the classes of the compiler (the Lexer, the Parser, the semantic
+ * analysis and the Frontend that calls them), so their static fields, like the symbol table, are not shared
+ * with other compilations.
+ * Only CompilerListener and SymbolTableItem come from the parent, since the listener passes them between both sides.
+ * The bytes of every class are read once and shared by all the loaders.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+final class ParserLoader extends ClassLoader {
+
+	private static final Map<String, byte[]> CLASSES = new ConcurrentHashMap<>();
+
+	ParserLoader(ClassLoader parent) {
+		super(parent);
+	}
+
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		if (!isolated(name)) {
+			return super.loadClass(name, resolve);
+		}
+		synchronized (getClassLoadingLock(name)) {
+			Class<?> type = findLoadedClass(name);
+			if (type == null) {
+				byte[] bytes = bytes(name);
+				type = defineClass(name, bytes, 0, bytes.length);
+			}
+			if (resolve) {
+				resolveClass(type);
+			}
+			return type;
+		}
+	}
+
+	private static boolean isolated(String name) {
+		return name.startsWith("javiergs.compiler.") && !shared(name, CompilerListener.class.getName())
+			&& !shared(name, SymbolTableItem.class.getName());
+	}
+
+	/**
+	 * True when name is the shared class or one of its nested classes.
+	 */
+	private static boolean shared(String name, String type) {
+		return name.equals(type) || name.startsWith(type + "$");
+	}
+
+	private byte[] bytes(String name) throws ClassNotFoundException {
+		byte[] bytes = CLASSES.get(name);
+		if (bytes == null) {
+			try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+				if (in == null) {
+					throw new ClassNotFoundException(name);
+				}
+				bytes = in.readAllBytes();
+			} catch (IOException e) {
+				throw new ClassNotFoundException(name, e);
+			}
+			CLASSES.putIfAbsent(name, bytes);
+		}
+		return bytes;
+	}
+
+}
@@ -0,0 +1,363 @@
+package javiergs.compiler.lexer;
+
+import java.util.Arrays;
+
+/**
+ * The automaton of the lexical rules (see StreamLexer and Tokens), as a transition table over classes of characters
+ * built once when the class loads.
+ * <p>
+ * Rules: letters, digits, _ and $ starting with a letter, _ or $ (KEYWORD or IDENTIFIER);
+ * digits (INTEGER), 0 and octal digits (OCTAL), 0x and hexadecimal digits (HEXADECIMAL), 0b and bits (BINARY),
+ * digits, a point and digits (FLOAT); text between double quotes in one line (STRING), one character
+ * between single quotes (CHARACTER); ( ) { } [ ] ; , : (DELIMITER); + - * / % = &lt; &gt; ! &amp; | and
+ * == != &lt;= &gt;= &amp;&amp; || (OPERATOR). Anything else is an ERROR. Tokens are separated by white space
+ * or by the end of the rule they match.
+ * <p>
+ * A token is the longest text from its first character that ends in a state that accepts a kind,
+ * so a match is a lookup per character and no text is copied.
+ * Keywords are found with a perfect hash on their first and last characters and their length,
+ * and keywords, delimiters and operators take their word from a table of constant strings.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+final class Dfa {
+
+	// classes of characters, every character from 128 up is OTHER
+	private static final int OTHER = 0;
+	private static final int SPACE = 1;
+	private static final int NEWLINE = 2;
+	private static final int LETTER = 3;
+	private static final int HEX_LETTER = 4;
+	private static final int B = 5;
+	private static final int X = 6;
+	private static final int ZERO = 7;
+	private static final int ONE = 8;
+	private static final int OCTAL_DIGIT = 9;
+	private static final int DIGIT = 10;
+	private static final int DOT = 11;
+	private static final int DOUBLE_QUOTE = 12;
+	private static final int SINGLE_QUOTE = 13;
+	private static final int BACKSLASH = 14;
+	private static final int DELIMITER = 15;
+	private static final int ARITHMETIC = 16;
+	private static final int EQUAL = 17;
+	private static final int COMPARISON = 18;
+	private static final int AMPERSAND = 19;
+	private static final int BAR = 20;
+	private static final int CLASSES = 21;
+
+	private static final int[] ALPHANUMERIC = {LETTER, HEX_LETTER, B, X, ZERO, ONE, OCTAL_DIGIT, DIGIT};
+	private static final int[] DIGITS = {ZERO, ONE, OCTAL_DIGIT, DIGIT};
+
+	// states
+	private static final int START = 0;
+	private static final int S_IDENTIFIER = 1;
+	private static final int S_ZERO = 2;
+	private static final int S_INTEGER = 3;
+	private static final int S_OCTAL = 4;
+	private static final int S_LEADING_ZERO = 5;
+	private static final int S_POINT = 6;
+	private static final int S_FLOAT = 7;
+	private static final int S_HEX_PREFIX = 8;
+	private static final int S_HEX = 9;
+	private static final int S_BINARY_PREFIX = 10;
+	private static final int S_BINARY = 11;
+	private static final int S_BAD_NUMBER = 12;
+	private static final int S_STRING = 13;
+	private static final int S_STRING_ESCAPE = 14;
+	private static final int S_STRING_END = 15;
+	private static final int S_CHARACTER_OPEN = 16;
+	private static final int S_CHARACTER_ESCAPE = 17;
+	private static final int S_CHARACTER = 18;
+	private static final int S_CHARACTER_END = 19;
+	private static final int S_CHARACTERS = 20;
+	private static final int S_CHARACTERS_ESCAPE = 21;
+	private static final int S_CHARACTERS_END = 22;
+	private static final int S_DELIMITER = 23;
+	private static final int S_OPERATOR = 24;
+	private static final int S_EQUAL = 25;
+	private static final int S_AMPERSAND = 26;
+	private static final int S_BAR = 27;
+	private static final int S_ERROR = 28;
+	private static final int STATES = 29;
+
+	private static final byte[] CLASS = new byte[128];
+	// next state by state * CLASSES + class, -1 for none
+	private static final byte[] NEXT = new byte[STATES * CLASSES];
+	// kind a state accepts, -1 for none
+	private static final byte[] ACCEPT = new byte[STATES];
+	// states with no transitions
+	private static final boolean[] LAST = new boolean[STATES];
+
+	private static final String[] KEYWORDS = {"if", "else", "while", "do", "for", "switch", "case", "default", "break",
+		"return", "int", "float", "char", "string", "boolean", "void", "true", "false", "print"};
+	private static final String[] OPERATORS = {"==", "!=", "<=", ">=", "&&", "||"};
+	private static final int SLOTS = 64;
+	private static final String[] SLOT = new String[SLOTS];
+	private static final int MULTIPLIER;
+	// words of one character, by character
+	private static final String[] SINGLE = new String[128];
+
+	// a match is end << 8 | MORE | kind
+	private static final int MORE = 1 << 7;
+	// characters after a token the automaton may read before it ends (the point and the digit of a FLOAT)
+	static final int FOLLOWING = 2;
+
+	static {
+		Arrays.fill(CLASS, (byte) OTHER);
+		classify(" \t\r\f\u000B", SPACE);
+		classify("\n", NEWLINE);
+		for (char c = 'a'; c <= 'z'; c++) {
+			CLASS[c] = LETTER;
+			CLASS[Character.toUpperCase(c)] = LETTER;
+		}
+		classify("_$", LETTER);
+		classify("acdefACDEF", HEX_LETTER);
+		classify("bB", B);
+		classify("xX", X);
+		classify("0", ZERO);
+		classify("1", ONE);
+		classify("234567", OCTAL_DIGIT);
+		classify("89", DIGIT);
+		classify(".", DOT);
+		classify("\"", DOUBLE_QUOTE);
+		classify("'", SINGLE_QUOTE);
+		classify("\\", BACKSLASH);
+		classify("(){}[];,:", DELIMITER);
+		classify("+-*/%", ARITHMETIC);
+		classify("=", EQUAL);
+		classify("<>!", COMPARISON);
+		classify("&", AMPERSAND);
+		classify("|", BAR);
+
+		Arrays.fill(NEXT, (byte) -1);
+		go(START, new int[]{LETTER, HEX_LETTER, B, X}, S_IDENTIFIER);
+		go(START, new int[]{ZERO}, S_ZERO);
+		go(START, new int[]{ONE, OCTAL_DIGIT, DIGIT}, S_INTEGER);
+		go(START, new int[]{DOUBLE_QUOTE}, S_STRING);
+		go(START, new int[]{SINGLE_QUOTE}, S_CHARACTER_OPEN);
+		go(START, new int[]{DELIMITER}, S_DELIMITER);
+		go(START, new int[]{ARITHMETIC}, S_OPERATOR);
+		go(START, new int[]{EQUAL, COMPARISON}, S_EQUAL);
+		go(START, new int[]{AMPERSAND}, S_AMPERSAND);
+		go(START, new int[]{BAR}, S_BAR);
+		go(START, new int[]{OTHER, DOT, BACKSLASH}, S_ERROR);
+		go(S_IDENTIFIER, ALPHANUMERIC, S_IDENTIFIER);
+		// a number glued to letters, such as 12ab, is one wrong word
+		for (int state : new int[]{S_ZERO, S_INTEGER, S_OCTAL, S_LEADING_ZERO, S_FLOAT, S_HEX_PREFIX, S_HEX,
+			S_BINARY_PREFIX, S_BINARY, S_BAD_NUMBER}) {
+			go(state, ALPHANUMERIC, S_BAD_NUMBER);
+		}
+		go(S_ZERO, new int[]{X}, S_HEX_PREFIX);
+		go(S_ZERO, new int[]{B}, S_BINARY_PREFIX);
+		go(S_ZERO, new int[]{ZERO, ONE, OCTAL_DIGIT}, S_OCTAL);
+		go(S_ZERO, new int[]{DIGIT}, S_LEADING_ZERO);
+		go(S_OCTAL, new int[]{ZERO, ONE, OCTAL_DIGIT}, S_OCTAL);
+		go(S_OCTAL, new int[]{DIGIT}, S_LEADING_ZERO);
+		go(S_LEADING_ZERO, DIGITS, S_LEADING_ZERO);
+		go(S_INTEGER, DIGITS, S_INTEGER);
+		for (int state : new int[]{S_ZERO, S_INTEGER, S_OCTAL, S_LEADING_ZERO}) {
+			go(state, new int[]{DOT}, S_POINT);
+		}
+		go(S_POINT, DIGITS, S_FLOAT);
+		go(S_FLOAT, DIGITS, S_FLOAT);
+		go(S_HEX_PREFIX, new int[]{ZERO, ONE, OCTAL_DIGIT, DIGIT, HEX_LETTER, B}, S_HEX);
+		go(S_HEX, new int[]{ZERO, ONE, OCTAL_DIGIT, DIGIT, HEX_LETTER, B}, S_HEX);
+		go(S_BINARY_PREFIX, new int[]{ZERO, ONE}, S_BINARY);
+		go(S_BINARY, new int[]{ZERO, ONE}, S_BINARY);
+		// text between quotes ends with the line
+		go(S_STRING, except(NEWLINE, DOUBLE_QUOTE, BACKSLASH), S_STRING);
+		go(S_STRING, new int[]{BACKSLASH}, S_STRING_ESCAPE);
+		go(S_STRING, new int[]{DOUBLE_QUOTE}, S_STRING_END);
+		go(S_STRING_ESCAPE, except(NEWLINE), S_STRING);
+		go(S_CHARACTER_OPEN, except(NEWLINE, SINGLE_QUOTE, BACKSLASH), S_CHARACTER);
+		go(S_CHARACTER_OPEN, new int[]{BACKSLASH}, S_CHARACTER_ESCAPE);
+		go(S_CHARACTER_OPEN, new int[]{SINGLE_QUOTE}, S_CHARACTERS_END);
+		go(S_CHARACTER_ESCAPE, except(NEWLINE), S_CHARACTER);
+		go(S_CHARACTER, new int[]{SINGLE_QUOTE}, S_CHARACTER_END);
+		for (int state : new int[]{S_CHARACTER, S_CHARACTERS}) {
+			go(state, except(NEWLINE, SINGLE_QUOTE, BACKSLASH), S_CHARACTERS);
+			go(state, new int[]{BACKSLASH}, S_CHARACTERS_ESCAPE);
+		}
+		go(S_CHARACTERS, new int[]{SINGLE_QUOTE}, S_CHARACTERS_END);
+		go(S_CHARACTERS_ESCAPE, except(NEWLINE), S_CHARACTERS);
+		go(S_EQUAL, new int[]{EQUAL}, S_OPERATOR);
+		go(S_AMPERSAND, new int[]{AMPERSAND}, S_OPERATOR);
+		go(S_BAR, new int[]{BAR}, S_OPERATOR);
+
+		Arrays.fill(ACCEPT, (byte) TokenKind.ERROR.ordinal());
+		ACCEPT[START] = -1;
+		ACCEPT[S_POINT] = -1;
+		accept(TokenKind.IDENTIFIER, S_IDENTIFIER);
+		accept(TokenKind.INTEGER, S_ZERO, S_INTEGER);
+		accept(TokenKind.OCTAL, S_OCTAL);
+		accept(TokenKind.FLOAT, S_FLOAT);
+		accept(TokenKind.HEXADECIMAL, S_HEX);
+		accept(TokenKind.BINARY, S_BINARY);
+		accept(TokenKind.STRING, S_STRING_END);
+		accept(TokenKind.CHARACTER, S_CHARACTER_END);
+		accept(TokenKind.DELIMITER, S_DELIMITER);
+		accept(TokenKind.OPERATOR, S_OPERATOR, S_EQUAL, S_AMPERSAND, S_BAR);
+		for (int state = 0; state < STATES; state++) {
+			LAST[state] = true;
+			for (int c = 0; c < CLASSES; c++) {
+				LAST[state] &= NEXT[state * CLASSES + c] < 0;
+			}
+		}
+
+		MULTIPLIER = multiplier();
+		for (String keyword : KEYWORDS) {
+			SLOT[hash(keyword.toCharArray(), 0, keyword.length(), MULTIPLIER)] = keyword;
+		}
+		for (char c = 0; c < 128; c++) {
+			if (CLASS[c] >= DELIMITER) {
+				SINGLE[c] = String.valueOf(c);
+			}
+		}
+	}
+
+	private Dfa() {
+	}
+
+	private static void classify(String characters, int type) {
+		for (int i = 0; i < characters.length(); i++) {
+			CLASS[characters.charAt(i)] = (byte) type;
+		}
+	}
+
+	private static void go(int state, int[] classes, int next) {
+		for (int type : classes) {
+			NEXT[state * CLASSES + type] = (byte) next;
+		}
+	}
+
+	private static int[] except(int... classes) {
+		int[] others = new int[CLASSES - classes.length];
+		int n = 0;
+		for (int type = 0; type < CLASSES; type++) {
+			boolean excluded = false;
+			for (int exception : classes) {
+				excluded |= type == exception;
+			}
+			if (!excluded) {
+				others[n++] = type;
+			}
+		}
+		return others;
+	}
+
+	private static void accept(TokenKind kind, int... states) {
+		for (int state : states) {
+			ACCEPT[state] = (byte) kind.ordinal();
+		}
+	}
+
+	/**
+	 * The smallest multiplier that gives every keyword a slot of its own.
+	 */
+	private static int multiplier() {
+		for (int multiplier = 1; multiplier < 1 << 16; multiplier++) {
+			boolean[] used = new boolean[SLOTS];
+			boolean perfect = true;
+			for (String keyword : KEYWORDS) {
+				int slot = hash(keyword.toCharArray(), 0, keyword.length(), multiplier);
+				perfect &= !used[slot];
+				used[slot] = true;
+			}
+			if (perfect) {
+				return multiplier;
+			}
+		}
+		throw new IllegalStateException("no perfect hash for " + KEYWORDS.length + " keywords in " + SLOTS + " slots");
+	}
+
+	private static int hash(char[] text, int offset, int length, int multiplier) {
+		return ((text[offset] * multiplier) ^ (text[offset + length - 1] + length)) & (SLOTS - 1);
+	}
+
+	/**
+	 * True for white space, that separates tokens.
+	 */
+	static boolean isSpace(char c) {
+		return c < 128 && (CLASS[c] == SPACE || CLASS[c] == NEWLINE);
+	}
+
+	/**
+	 * Runs the automaton on text from from (not white space) up to to and returns the longest token:
+	 * its end and kind (see end, kind and more).
+	 * When it reaches to and the token could still go on, more says so, since the rest of the source may continue it.
+	 */
+	static long match(char[] text, int from, int to) {
+		int state = START;
+		int end = from + 1;
+		int kind = TokenKind.ERROR.ordinal();
+		for (int i = from; i < to; i++) {
+			char c = text[i];
+			int next = NEXT[state * CLASSES + (c < 128 ? CLASS[c] : OTHER)];
+			if (next < 0) {
+				return (long) end << 8 | kind;
+			}
+			state = next;
+			if (ACCEPT[state] >= 0) {
+				end = i + 1;
+				kind = ACCEPT[state];
+			}
+		}
+		return (long) end << 8 | (LAST[state] ? 0 : MORE) | kind;
+	}
+
+	static int end(long match) {
+		return (int) (match >>> 8);
+	}
+
+	static int kind(long match) {
+		return (int) match & (MORE - 1);
+	}
+
+	static boolean more(long match) {
+		return (match & MORE) != 0;
+	}
+
+	/**
+	 * KEYWORD when the identifier in text is a keyword, IDENTIFIER if not.
+	 */
+	static int keyword(char[] text, int offset, int length) {
+		String keyword = SLOT[hash(text, offset, length, MULTIPLIER)];
+		return keyword != null && same(keyword, text, offset, length)
+			? TokenKind.KEYWORD.ordinal() : TokenKind.IDENTIFIER.ordinal();
+	}
+
+	/**
+	 * The word of a token: a constant string for keywords, delimiters and operators, a new one for the rest.
+	 */
+	static String word(char[] text, int offset, int length, int kind) {
+		if (kind == TokenKind.KEYWORD.ordinal()) {
+			return SLOT[hash(text, offset, length, MULTIPLIER)];
+		}
+		if (kind == TokenKind.DELIMITER.ordinal() || kind == TokenKind.OPERATOR.ordinal()) {
+			if (length == 1) {
+				return SINGLE[text[offset]];
+			}
+			for (String operator : OPERATORS) {
+				if (same(operator, text, offset, length)) {
+					return operator;
+				}
+			}
+		}
+		return new String(text, offset, length);
+	}
+
+	private static boolean same(String word, char[] text, int offset, int length) {
+		if (word.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (word.charAt(i) != text[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
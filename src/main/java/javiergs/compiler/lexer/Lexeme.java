@@ -0,0 +1,57 @@
+package javiergs.compiler.lexer;
+
+/**
+ * Token produced by the StreamLexer, or token i of Tokens (see Tokens.get): its kind, its word, its line and
+ * its offset in the source. It answers getToken, getWord and getLine like Token, so code written for the Vector
+ * of Token of the Lexer can read it the same way, and getKind to compare kinds without comparing strings.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public final class Lexeme {
+
+	private final TokenKind kind;
+	private final String word;
+	private final int line;
+	private final int offset;
+
+	public Lexeme(TokenKind kind, String word, int line, int offset) {
+		this.kind = kind;
+		this.word = word;
+		this.line = line;
+		this.offset = offset;
+	}
+
+	public TokenKind getKind() {
+		return kind;
+	}
+
+	/**
+	 * The name of the kind: KEYWORD, IDENTIFIER, INTEGER, OCTAL, HEXADECIMAL, BINARY, FLOAT, STRING, CHARACTER,
+	 * DELIMITER, OPERATOR or ERROR.
+	 */
+	public String getToken() {
+		return kind.name();
+	}
+
+	public String getWord() {
+		return word;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * Position of its first character in the source.
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%04d", line) + " " + kind + " " + word;
+	}
+
+}
@@ -0,0 +1,193 @@
+package javiergs.compiler.lexer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Vector;
+
+/**
+ * Lexer that reads the source from a Reader (or a CharBuffer) and gives the tokens one at a time, when the parser
+ * asks for them, instead of reading the whole text and building the Vector of all its tokens first.
+ * The source goes through a buffer of fixed size (it only grows for a token longer than it) and the parser can
+ * look up to LOOKAHEAD tokens ahead, so the memory it uses does not grow with the size of the source;
+ * reading, lexing and parsing go together. The tokens are matched by the transition table of Dfa.
+ * <p>
+ * The Parser still takes a Vector of Token, so toVector takes the rest of the tokens into one for it,
+ * and errors counts the tokens that do not match any rule.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public class StreamLexer implements Iterator<Lexeme> {
+
+	// tokens the parser can see before taking them
+	public static final int LOOKAHEAD = 8;
+
+	private static final int BUFFER = 1 << 13;
+
+	private final Readable in;
+	private char[] buffer = new char[BUFFER];
+	private CharBuffer window = CharBuffer.wrap(buffer);
+	private int position;
+	private int limit;
+	// characters dropped from the start of the buffer, the offset of buffer[0] in the source
+	private int dropped;
+	private boolean ended;
+	private int line = 1;
+	// tokens read ahead, a ring of LOOKAHEAD
+	private final Lexeme[] ahead = new Lexeme[LOOKAHEAD];
+	private int first;
+	private int count;
+	private int errors;
+
+	/**
+	 * @param in a Reader, or a CharBuffer that is read without copying it first
+	 */
+	public StreamLexer(Readable in) {
+		this.in = in;
+	}
+
+	public StreamLexer(String text) {
+		this(CharBuffer.wrap(text));
+	}
+
+	@Override
+	public boolean hasNext() {
+		return peek(0) != null;
+	}
+
+	@Override
+	public Lexeme next() {
+		Lexeme lexeme = peek(0);
+		if (lexeme == null) {
+			throw new NoSuchElementException("no more tokens after line " + line);
+		}
+		ahead[first] = null;
+		first = (first + 1) % LOOKAHEAD;
+		count--;
+		return lexeme;
+	}
+
+	/**
+	 * The token k positions ahead without taking it (0 is the one next returns), or null after the last one.
+	 */
+	public Lexeme peek(int k) {
+		if (k < 0 || k >= LOOKAHEAD) {
+			throw new IllegalArgumentException("lookahead of " + k + " tokens, at most " + (LOOKAHEAD - 1));
+		}
+		while (count <= k) {
+			Lexeme lexeme = scan();
+			if (lexeme == null) {
+				return null;
+			}
+			ahead[(first + count) % LOOKAHEAD] = lexeme;
+			count++;
+		}
+		return ahead[(first + k) % LOOKAHEAD];
+	}
+
+	/**
+	 * Takes the tokens not taken yet into a Vector of Token, the input of the Parser.
+	 */
+	public Vector<Token> toVector() {
+		Vector<Token> tokens = new Vector<>();
+		while (hasNext()) {
+			Lexeme lexeme = next();
+			tokens.add(new Token(lexeme.getWord(), lexeme.getToken(), lexeme.getLine()));
+		}
+		return tokens;
+	}
+
+	/**
+	 * Number of the tokens read so far that do not match any rule.
+	 */
+	public int errors() {
+		return errors;
+	}
+
+	/**
+	 * Line of the last character read.
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	private Lexeme scan() {
+		if (!skipSpaces()) {
+			return null;
+		}
+		long match;
+		// a token that reaches the end of the buffer may go on in the rest of the source
+		while (Dfa.more(match = Dfa.match(buffer, position, limit)) && !ended) {
+			read();
+		}
+		int length = Dfa.end(match) - position;
+		int kind = Dfa.kind(match);
+		if (kind == TokenKind.IDENTIFIER.ordinal()) {
+			kind = Dfa.keyword(buffer, position, length);
+		}
+		if (kind == TokenKind.ERROR.ordinal()) {
+			errors++;
+		}
+		Lexeme lexeme = new Lexeme(TokenKind.of(kind), Dfa.word(buffer, position, length, kind), line,
+			dropped + position);
+		position += length;
+		return lexeme;
+	}
+
+	/**
+	 * Skips white space counting lines; false at the end of the source.
+	 */
+	private boolean skipSpaces() {
+		while (true) {
+			while (position < limit && Dfa.isSpace(buffer[position])) {
+				if (buffer[position] == '\n') {
+					line++;
+				}
+				position++;
+			}
+			if (position < limit) {
+				return true;
+			}
+			if (!read()) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Reads more of the source after the characters not taken yet, moving them to the start of the buffer
+	 * (or to a buffer twice as big when one token fills it); false when the source ended.
+	 */
+	private boolean read() {
+		if (ended) {
+			return false;
+		}
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			dropped += position;
+			limit -= position;
+			position = 0;
+		}
+		if (limit == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			window = CharBuffer.wrap(buffer);
+		}
+		try {
+			window.limit(buffer.length).position(limit);
+			int read = in.read(window);
+			if (read < 0) {
+				ended = true;
+			} else {
+				limit += read;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return !ended;
+	}
+
+}
@@ -0,0 +1,23 @@
+package javiergs.compiler.lexer;
+
+/**
+ * The rules a token can match. The names are the strings Token.getToken returns,
+ * so the kind of a token is compared as an int (or ==) instead of comparing strings.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public enum TokenKind {
+
+	KEYWORD, IDENTIFIER, INTEGER, OCTAL, HEXADECIMAL, BINARY, FLOAT, STRING, CHARACTER, DELIMITER, OPERATOR, ERROR;
+
+	private static final TokenKind[] VALUES = values();
+
+	/**
+	 * The kind with the given ordinal.
+	 */
+	public static TokenKind of(int ordinal) {
+		return VALUES[ordinal];
+	}
+
+}
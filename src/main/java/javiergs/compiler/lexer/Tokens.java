@@ -0,0 +1,289 @@
+package javiergs.compiler.lexer;
+
+import java.util.Arrays;
+import java.util.Vector;
+
+/**
+ * The tokens of a whole text, lexed in one pass over its char[] with the transition table of Dfa.
+ * A token is not an object but four ints in parallel arrays (its kind, offset, length and line), so lexing
+ * only allocates when the arrays grow; its word is made when asked for, constant for keywords, delimiters
+ * and operators. The text is not copied, so it must not change while the tokens are used.
+ * After an edit of the text, edit lexes again only the tokens the edit can reach; the edit that takes
+ * only the inserted characters makes it in the text itself, so the caller does not copy the whole text.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public final class Tokens {
+
+	private char[] text;
+	// the lexed part of the text
+	private final int from;
+	private int to;
+	private int[] kinds;
+	private int[] offsets;
+	private int[] lengths;
+	private int[] lines;
+	private int size;
+	private int errors;
+
+	private Tokens(char[] text, int from, int to, int capacity) {
+		this.text = text;
+		this.from = from;
+		this.to = to;
+		kinds = new int[capacity];
+		offsets = new int[capacity];
+		lengths = new int[capacity];
+		lines = new int[capacity];
+	}
+
+	public static Tokens of(String text) {
+		return of(text.toCharArray());
+	}
+
+	public static Tokens of(char[] text) {
+		return of(text, 0, text.length);
+	}
+
+	/**
+	 * Lexes text from from up to to, with lines counted from 1 at from.
+	 */
+	public static Tokens of(char[] text, int from, int to) {
+		// about one token every five characters in our sources
+		Tokens tokens = new Tokens(text, from, to, Math.max(16, (to - from) / 5));
+		int line = 1;
+		int i = from;
+		while (true) {
+			while (i < to && Dfa.isSpace(text[i])) {
+				if (text[i] == '\n') {
+					line++;
+				}
+				i++;
+			}
+			if (i == to) {
+				return tokens;
+			}
+			i = tokens.lex(i, line);
+		}
+	}
+
+	/**
+	 * Lexes the token at i (not white space) of the text, adds it and returns its end.
+	 */
+	private int lex(int i, int line) {
+		long match = Dfa.match(text, i, to);
+		int length = Dfa.end(match) - i;
+		int kind = Dfa.kind(match);
+		if (kind == TokenKind.IDENTIFIER.ordinal()) {
+			kind = Dfa.keyword(text, i, length);
+		}
+		add(kind, i, length, line);
+		return i + length;
+	}
+
+	/**
+	 * Updates the tokens for the new text, that is the old one with removed characters at offset replaced
+	 * by inserted characters.
+	 * It lexes again from the end of the last token the edit cannot reach (the automaton reads up to
+	 * Dfa.FOLLOWING characters after a token) until a new token starts where an old one after the edit started,
+	 * since from there on the text and so the tokens are the same; the tokens after it only move.
+	 */
+	public Edit edit(char[] text, int offset, int removed, int inserted) {
+		return edit(text, offset, removed, inserted, Arrays.copyOfRange(this.text, offset, offset + removed));
+	}
+
+	/**
+	 * Makes the edit in the text of the tokens, replacing removed characters at offset by length characters
+	 * of inserted from start, and updates the tokens as the edit above. The text grows when needed.
+	 */
+	public Edit edit(int offset, int removed, char[] inserted, int start, int length) {
+		char[] removedText = Arrays.copyOfRange(text, offset, offset + removed);
+		int delta = length - removed;
+		char[] buffer = text;
+		if (to + delta > buffer.length) {
+			buffer = Arrays.copyOf(text, Math.max(to + delta, text.length * 2));
+		}
+		System.arraycopy(text, offset + removed, buffer, offset + length, to - offset - removed);
+		System.arraycopy(inserted, start, buffer, offset, length);
+		return edit(buffer, offset, removed, length, removedText);
+	}
+
+	private Edit edit(char[] text, int offset, int removed, int inserted, char[] removedText) {
+		int delta = inserted - removed;
+		int end = offset + removed;
+		// the first token the edit can reach
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (offsets[middle] + lengths[middle] + Dfa.FOLLOWING > offset) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		int first = low;
+		int i = first > 0 ? offsets[first - 1] + lengths[first - 1] : from;
+		int line = first > 0 ? lines[first - 1] : 1;
+		Tokens fresh = new Tokens(text, from, to + delta, 16);
+		int next = first;
+		while (true) {
+			while (i < fresh.to && Dfa.isSpace(text[i])) {
+				if (text[i] == '\n') {
+					line++;
+				}
+				i++;
+			}
+			// old tokens that start before i (or in the removed text) are replaced
+			while (next < size && (offsets[next] < end || offsets[next] + delta < i)) {
+				next++;
+			}
+			if (i == fresh.to || next < size && offsets[next] + delta == i) {
+				break;
+			}
+			i = fresh.lex(i, line);
+		}
+		int lineShift = next < size ? line - lines[next] : 0;
+		boolean same = fresh.size == next - first;
+		for (int k = 0; same && k < fresh.size; k++) {
+			same = kinds[first + k] == fresh.kinds[k] && lines[first + k] == fresh.lines[k]
+				&& lengths[first + k] == fresh.lengths[k];
+			// the old text is the new one before the edit, the removed text and the new one moved by delta after it
+			for (int j = 0; same && j < fresh.lengths[k]; j++) {
+				int p = offsets[first + k] + j;
+				char old = p < offset ? text[p] : p < end ? removedText[p - offset] : text[p + delta];
+				same = old == text[fresh.offsets[k] + j];
+			}
+		}
+		for (int k = first; k < next; k++) {
+			if (kinds[k] == TokenKind.ERROR.ordinal()) {
+				errors--;
+			}
+		}
+		errors += fresh.errors;
+		// the tokens after the edit go to their new place, moved by delta characters and lineShift lines
+		int tail = size - next;
+		int length = first + fresh.size + tail;
+		if (length > kinds.length) {
+			int capacity = Math.max(length, kinds.length * 2);
+			kinds = Arrays.copyOf(kinds, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			lines = Arrays.copyOf(lines, capacity);
+		}
+		int target = first + fresh.size;
+		System.arraycopy(kinds, next, kinds, target, tail);
+		System.arraycopy(offsets, next, offsets, target, tail);
+		System.arraycopy(lengths, next, lengths, target, tail);
+		System.arraycopy(lines, next, lines, target, tail);
+		System.arraycopy(fresh.kinds, 0, kinds, first, fresh.size);
+		System.arraycopy(fresh.offsets, 0, offsets, first, fresh.size);
+		System.arraycopy(fresh.lengths, 0, lengths, first, fresh.size);
+		System.arraycopy(fresh.lines, 0, lines, first, fresh.size);
+		for (int k = target; k < length; k++) {
+			offsets[k] += delta;
+			lines[k] += lineShift;
+		}
+		size = length;
+		this.text = text;
+		to += delta;
+		return new Edit(first, next - first, fresh.size, same, lineShift);
+	}
+
+	private void add(int kind, int offset, int length, int line) {
+		if (size == kinds.length) {
+			int capacity = size * 2;
+			kinds = Arrays.copyOf(kinds, capacity);
+			offsets = Arrays.copyOf(offsets, capacity);
+			lengths = Arrays.copyOf(lengths, capacity);
+			lines = Arrays.copyOf(lines, capacity);
+		}
+		kinds[size] = kind;
+		offsets[size] = offset;
+		lengths[size] = length;
+		lines[size] = line;
+		size++;
+		if (kind == TokenKind.ERROR.ordinal()) {
+			errors++;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Number of tokens that do not match any rule.
+	 */
+	public int errors() {
+		return errors;
+	}
+
+	public TokenKind kind(int i) {
+		return TokenKind.of(kinds[i]);
+	}
+
+	public int offset(int i) {
+		return offsets[i];
+	}
+
+	public int length(int i) {
+		return lengths[i];
+	}
+
+	public int line(int i) {
+		return lines[i];
+	}
+
+	public String word(int i) {
+		return Dfa.word(text, offsets[i], lengths[i], kinds[i]);
+	}
+
+	/**
+	 * The token i as a Lexeme.
+	 */
+	public Lexeme get(int i) {
+		return new Lexeme(kind(i), word(i), lines[i], offsets[i]);
+	}
+
+	/**
+	 * The token i as a Token, the input of the Parser.
+	 */
+	public Token token(int i) {
+		return new Token(word(i), kind(i).name(), lines[i]);
+	}
+
+	/**
+	 * The tokens as the Vector of Token the Parser takes.
+	 */
+	public Vector<Token> toVector() {
+		Vector<Token> tokens = new Vector<>(size);
+		for (int i = 0; i < size; i++) {
+			tokens.add(token(i));
+		}
+		return tokens;
+	}
+
+	/**
+	 * What an edit did: from token first, removed tokens were replaced by added ones, the same in kind,
+	 * word and line as them when same is true, and the tokens after them moved lines lines.
+	 */
+	public static final class Edit {
+
+		public final int first;
+		public final int removed;
+		public final int added;
+		public final boolean same;
+		public final int lines;
+
+		Edit(int first, int removed, int added, boolean same, int lines) {
+			this.first = first;
+			this.removed = removed;
+			this.added = added;
+			this.same = same;
+			this.lines = lines;
+		}
+
+	}
+
+}
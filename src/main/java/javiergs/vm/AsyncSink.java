@@ -0,0 +1,170 @@
+package javiergs.vm;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * OutputSink that hands the output to another OutputSink in a thread of its own, so a slow destination
+ * does not stop the program. Values are collected in chunks, following the Flush policy, and the chunks
+ * wait in a bounded queue; when the queue is full the program waits for the thread (back-pressure)
+ * instead of keeping an unbounded amount of output in memory.
+ * A failure of the destination is thrown by the next write, flush or close.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public final class AsyncSink implements OutputSink {
+
+	// tells the thread to flush the destination
+	private static final String FLUSH = new String("flush");
+	// tells the thread to close the destination and end
+	private static final String CLOSE = new String("close");
+
+	private final OutputSink target;
+	private final int chunk;
+	private final Flush flush;
+	private final BlockingQueue<String> queue;
+	private final Thread thread;
+	private final StringBuilder buffer;
+	private final Object lock = new Object();
+	// requests (chunks, flushes or the close) taken and done by the thread
+	private long done;
+	private long sent;
+	private volatile RuntimeException failure;
+	private boolean closed;
+
+	/**
+	 * @param target destination, used only by the thread
+	 * @param chunk  characters collected before they are queued
+	 * @param queued chunks that can wait before write waits
+	 * @param flush  when the characters are queued before the chunk is full
+	 */
+	public AsyncSink(OutputSink target, int chunk, int queued, Flush flush) {
+		this.target = target;
+		this.chunk = chunk;
+		this.flush = flush;
+		queue = new ArrayBlockingQueue<>(queued);
+		buffer = new StringBuilder(chunk);
+		thread = new Thread(this::drain, "output");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void write(String text) {
+		if (closed) {
+			throw new IllegalStateException("the output is closed");
+		}
+		check();
+		buffer.append(text);
+		if (OutputSink.due(flush, text)) {
+			send(take());
+			send(FLUSH);
+		} else if (buffer.length() >= chunk) {
+			send(take());
+		}
+	}
+
+	/**
+	 * Waits until the thread has passed everything written so far to the destination and flushed it.
+	 */
+	@Override
+	public void flush() {
+		check();
+		if (buffer.length() > 0) {
+			send(take());
+		}
+		send(FLUSH);
+		await();
+		check();
+	}
+
+	/**
+	 * Flushes, closes the destination and ends the thread. Later writes throw an IllegalStateException.
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		if (buffer.length() > 0) {
+			send(take());
+		}
+		send(CLOSE);
+		closed = true;
+		await();
+		check();
+	}
+
+	private String take() {
+		String text = buffer.toString();
+		buffer.setLength(0);
+		return text;
+	}
+
+	private void send(String request) {
+		if (closed) {
+			throw new IllegalStateException("the output is closed");
+		}
+		if (request.isEmpty()) {
+			return;
+		}
+		try {
+			queue.put(request);
+			sent++;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while writing the output", e);
+		}
+	}
+
+	private void await() {
+		synchronized (lock) {
+			while (done < sent && thread.isAlive()) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("interrupted while flushing the output", e);
+				}
+			}
+		}
+	}
+
+	private void check() {
+		RuntimeException e = failure;
+		if (e != null) {
+			failure = null;
+			throw e;
+		}
+	}
+
+	private void drain() {
+		boolean open = true;
+		while (open) {
+			String request;
+			try {
+				request = queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			try {
+				if (request == FLUSH) {
+					target.flush();
+				} else if (request == CLOSE) {
+					open = false;
+					target.close();
+				} else {
+					target.write(request);
+				}
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+			synchronized (lock) {
+				done++;
+				lock.notifyAll();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,268 @@
+package javiergs.vm;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs many independent programs in parallel, each one in its own headless Interpreter,
+ * on a fixed pool of threads (one per core by default).
+ * For every program it keeps the screen output, the status (the Outcome in lower case), the first error
+ * written to the console, the instructions executed and the wall time of loading and running it,
+ * and writes them to a summary file with one tab-separated line per program, in the order they were given
+ * (tabs, new lines and backslashes in the output and the error are escaped as \t, \n and \\).
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public class BatchRunner {
+
+	// time given to runFor between two checks for interruption
+	private static final long CHECK = 10_000_000L;
+	// bytes of output first allocated for every program
+	private static final int OUTPUT = 1 << 12;
+
+	private final int threads;
+	private final int jitThreshold;
+	private long instructionLimit;
+	private long timeLimit;
+	private int stackLimit;
+	private int outputLimit = 1 << 20;
+	private String input;
+
+	/**
+	 * @param threads      size of the pool
+	 * @param jitThreshold see Interpreter.setJitThreshold
+	 */
+	public BatchRunner(int threads, int jitThreshold) {
+		this.threads = threads;
+		this.jitThreshold = jitThreshold;
+	}
+
+	/**
+	 * Limits for every program, 0 for none (see Interpreter.setInstructionLimit, setTimeLimit and setStackLimit).
+	 */
+	public void setLimits(long instructionLimit, long timeLimit, int stackLimit) {
+		this.instructionLimit = instructionLimit;
+		this.timeLimit = timeLimit;
+		this.stackLimit = stackLimit;
+	}
+
+	/**
+	 * Most bytes (UTF-8) of output kept for every program, 1 MiB by default; a program that prints more
+	 * ends with an error, keeping the output up to the limit.
+	 */
+	public void setOutputLimit(int outputLimit) {
+		this.outputLimit = outputLimit;
+	}
+
+	/**
+	 * Input every program reads from the beginning (see Interpreter.setInput), null for none.
+	 */
+	public void setInput(String input) {
+		this.input = input;
+	}
+
+	/**
+	 * Result of one program.
+	 */
+	public static final class Result {
+
+		public final Path program;
+		public final String status;
+		public final String error;
+		public final String output;
+		public final long instructions;
+		public final long nanos;
+
+		Result(Path program, String status, String error, String output, long instructions, long nanos) {
+			this.program = program;
+			this.status = status;
+			this.error = error;
+			this.output = output;
+			this.instructions = instructions;
+			this.nanos = nanos;
+		}
+
+	}
+
+	/**
+	 * Listener of one program: it keeps the first error (the output goes to a ByteBufferSink).
+	 */
+	private static class Capture implements InterpreterListener {
+
+		private String error;
+
+		@Override
+		public void writeConsole(String msg) {
+			if (error == null && msg.startsWith("ERROR")) {
+				error = msg;
+			}
+		}
+
+	}
+
+	/**
+	 * Runs the programs and returns their results in the same order.
+	 */
+	public List<Result> run(List<Path> programs) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Result>> futures = new ArrayList<>();
+			for (Path program : programs) {
+				futures.add(pool.submit(() -> run(program)));
+			}
+			List<Result> results = new ArrayList<>();
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					results.add(futures.get(i).get());
+				} catch (ExecutionException e) {
+					results.add(new Result(programs.get(i), "error", "ERROR:\n" + e.getCause(), "", 0, 0));
+				}
+			}
+			return results;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private Result run(Path program) {
+		Capture capture = new Capture();
+		ByteBufferSink output = new ByteBufferSink(Math.min(OUTPUT, outputLimit), outputLimit);
+		Interpreter interpreter = new Interpreter(capture);
+		interpreter.setOutput(output);
+		interpreter.setJitThreshold(jitThreshold);
+		interpreter.setInstructionLimit(instructionLimit);
+		interpreter.setTimeLimit(timeLimit);
+		interpreter.setStackLimit(stackLimit);
+		if (input != null) {
+			interpreter.setInput(InputSource.of(input));
+		}
+		long start = System.nanoTime();
+		String status;
+		try {
+			interpreter.load(program);
+			while (!interpreter.runFor(CHECK)) {
+				if (Thread.currentThread().isInterrupted()) {
+					interpreter.cancel();
+				}
+			}
+			status = interpreter.getOutcome() == Outcome.FINISHED && capture.error != null ? "error"
+				: interpreter.getOutcome() == Outcome.FINISHED ? "ok" : interpreter.getOutcome().toString().toLowerCase();
+		} catch (IOException | RuntimeException e) {
+			capture.writeConsole("ERROR:\n" + e);
+			status = "error";
+		}
+		long nanos = System.nanoTime() - start;
+		return new Result(program, status, capture.error == null ? "" : capture.error, output.toString(),
+			interpreter.getExecuted(), nanos);
+	}
+
+	/**
+	 * Writes the summary: a header and one line per result.
+	 */
+	public static void write(List<Result> results, Path path) throws IOException {
+		try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			out.write("program\tstatus\tinstructions\tms\terror\toutput\n");
+			for (Result result : results) {
+				out.write(result.program + "\t" + result.status + "\t" + result.instructions + "\t"
+					+ String.format("%.3f", result.nanos / 1e6) + "\t" + escape(result.error) + "\t"
+					+ escape(result.output) + "\n");
+			}
+		}
+	}
+
+	private static String escape(String text) {
+		return text.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	/**
+	 * Program files given on the command line: every regular file of a directory (sorted by name),
+	 * or the file itself.
+	 */
+	private static List<Path> programs(List<String> names) throws IOException {
+		List<Path> programs = new ArrayList<>();
+		for (String name : names) {
+			Path path = Paths.get(name);
+			if (Files.isDirectory(path)) {
+				try (Stream<Path> files = Files.list(path)) {
+					programs.addAll(files.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+				}
+			} else {
+				programs.add(path);
+			}
+		}
+		return programs;
+	}
+
+	/**
+	 * java javiergs.vm.BatchRunner [-threads n] [-limit n] [-timeout ms] [-stack n] [-output bytes] [-jit n] [-in input]
+	 * [-o summary] (directory | file)...
+	 * The input file is read once and every program reads it from the beginning. The summary goes to summary.tsv unless -o says otherwise; it exits with 1 when a program did not end ok.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		long limit = 0;
+		long timeout = 0;
+		int stack = 0;
+		int output = 1 << 20;
+		int jit = 100_000;
+		Path summary = Paths.get("summary.tsv");
+		Path in = null;
+		List<String> names = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-limit") && i + 1 < args.length) {
+				limit = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-timeout") && i + 1 < args.length) {
+				timeout = Long.parseLong(args[++i]) * 1_000_000L;
+			} else if (args[i].equals("-stack") && i + 1 < args.length) {
+				stack = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-output") && i + 1 < args.length) {
+				output = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-jit") && i + 1 < args.length) {
+				jit = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-in") && i + 1 < args.length) {
+				in = Paths.get(args[++i]);
+			} else if (args[i].equals("-o") && i + 1 < args.length) {
+				summary = Paths.get(args[++i]);
+			} else {
+				names.add(args[i]);
+			}
+		}
+		if (names.isEmpty()) {
+			System.err.println("ERROR: no programs, use BatchRunner [-threads n] [-limit n] [-timeout ms] [-stack n] [-output bytes]"
+				+ " [-jit n] [-in input] [-o summary] (directory | file)...");
+			System.exit(1);
+		}
+		List<Path> programs = programs(names);
+		long start = System.nanoTime();
+		BatchRunner runner = new BatchRunner(threads, jit);
+		runner.setLimits(limit, timeout, stack);
+		runner.setOutputLimit(output);
+		if (in != null) {
+			runner.setInput(Files.readString(in));
+		}
+		List<Result> results = runner.run(programs);
+		write(results, summary);
+		long failed = results.stream().filter(result -> !result.status.equals("ok")).count();
+		System.err.printf("* %d programs run on %d threads in %.3f ms, %d did not end ok. Summary written to %s%n",
+			results.size(), threads, (System.nanoTime() - start) / 1e6, failed, summary);
+		if (failed > 0) {
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+package javiergs.vm;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * OutputSink that keeps the output in memory as UTF-8 in a ByteBuffer, which grows up to a maximum size;
+ * writing past it throws an IllegalStateException, so it also limits the output of a program.
+ * Nothing is passed on, so the Flush policy does not apply.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public final class ByteBufferSink implements OutputSink {
+
+	private final int maximum;
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+	private ByteBuffer buffer;
+
+	/**
+	 * @param initial bytes allocated at the beginning
+	 * @param maximum most bytes it keeps
+	 */
+	public ByteBufferSink(int initial, int maximum) {
+		this.maximum = maximum;
+		buffer = ByteBuffer.allocate(Math.min(initial, maximum));
+	}
+
+	/**
+	 * Writes the whole text or, when it cannot be encoded (a lone surrogate), nothing of it
+	 * and throws an IllegalStateException.
+	 */
+	@Override
+	public void write(String text) {
+		int start = buffer.position();
+		CharBuffer chars = CharBuffer.wrap(text);
+		try {
+			CoderResult result;
+			while (!(result = encoder.encode(chars, buffer, true)).isUnderflow()) {
+				check(result, start);
+			}
+			while (!(result = encoder.flush(buffer)).isUnderflow()) {
+				check(result, start);
+			}
+		} finally {
+			encoder.reset();
+		}
+	}
+
+	/**
+	 * Grows the buffer on overflow; on an error it drops what was written from start and throws.
+	 */
+	private void check(CoderResult result, int start) {
+		if (result.isError()) {
+			buffer.position(start);
+			throw new IllegalStateException("the output cannot be encoded as UTF-8 (" + result + ")");
+		}
+		if (buffer.capacity() >= maximum) {
+			throw new IllegalStateException("the output is over " + maximum + " bytes");
+		}
+		ByteBuffer larger = ByteBuffer.allocate((int) Math.min(Math.max(buffer.capacity() * 2L, 16), maximum));
+		buffer.flip();
+		larger.put(buffer);
+		buffer = larger;
+	}
+
+	@Override
+	public void flush() {
+	}
+
+	/**
+	 * A read-only view of the bytes written so far.
+	 */
+	public ByteBuffer buffer() {
+		ByteBuffer view = buffer.duplicate();
+		view.flip();
+		return view.asReadOnlyBuffer();
+	}
+
+	public int size() {
+		return buffer.position();
+	}
+
+	public void clear() {
+		buffer.clear();
+	}
+
+	@Override
+	public String toString() {
+		return StandardCharsets.UTF_8.decode(buffer()).toString();
+	}
+
+}
@@ -0,0 +1,281 @@
+package javiergs.vm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Binary form of a decoded Program, so a program can be loaded again without parsing text.
+ * Files are read through a memory-mapped FileChannel and the instruction section is copied
+ * in bulk into the arrays of the Program.
+ * <p>
+ * Layout (big-endian, every section aligned to 4 bytes):
+ * <pre>
+ * header        magic "TCVM", version (short), reserved (short),
+ *               instruction count, slot count, string count, entry
+ * strings       for every string: length in bytes, UTF-8 bytes, padding
+ * slots         for every slot: name, declared type (string indexes), Type tag, value
+ *               (int and boolean value, raw float bits or string index); an array has the Type tag of its
+ *               elements in the second byte of the tag and its length as the value (elements start at zero)
+ * instructions  opcodes[], operands[], operands2[] (one int each)
+ * </pre>
+ * Strings are stored with their length, so parameters with commas or quotes need no escaping.
+ * Programs are written before TypeInference, which runs again when they are loaded.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+final class Bytecode {
+
+	static final int MAGIC = 0x5443564D;
+	static final short VERSION = 1;
+
+	private static final int HEADER = 24;
+
+	/**
+	 * Writes the program (as returned by the Decoder) to a file.
+	 */
+	static void write(Program program, Path path) throws IOException {
+		ArrayList<String> strings = new ArrayList<>();
+		HashMap<String, Integer> index = new HashMap<>();
+		for (String s : program.strings) {
+			index.putIfAbsent(s, strings.size());
+			strings.add(s);
+		}
+		int slots = program.slots.length;
+		int[] slotSection = new int[slots * 4];
+		for (int slot = 0; slot < slots; slot++) {
+			Memory memory = program.memory;
+			slotSection[slot * 4] = string(program.slots[slot], strings, index);
+			slotSection[slot * 4 + 1] = string(program.types[slot], strings, index);
+			slotSection[slot * 4 + 2] = memory.types[slot];
+			switch (memory.types[slot]) {
+				case Type.FLOAT:
+					slotSection[slot * 4 + 3] = Float.floatToRawIntBits(memory.floats[slot]);
+					break;
+				case Type.STRING:
+					slotSection[slot * 4 + 3] = string((String) memory.refs[slot], strings, index);
+					break;
+				case Type.ARRAY:
+					slotSection[slot * 4 + 2] = Type.ARRAY | Type.elementType(memory.refs[slot]) << 8;
+					slotSection[slot * 4 + 3] = Type.length(memory.refs[slot]);
+					break;
+				default:
+					slotSection[slot * 4 + 3] = memory.ints[slot];
+			}
+		}
+		byte[][] encoded = new byte[strings.size()][];
+		int size = HEADER + slotSection.length * 4 + program.size() * 12;
+		for (int i = 0; i < encoded.length; i++) {
+			encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+			size += 4 + align(encoded[i].length);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+		buffer.putInt(program.size()).putInt(slots).putInt(encoded.length).putInt(program.entry);
+		for (byte[] bytes : encoded) {
+			buffer.putInt(bytes.length).put(bytes);
+			buffer.position(buffer.position() + align(bytes.length) - bytes.length);
+		}
+		IntBuffer ints = buffer.asIntBuffer();
+		ints.put(slotSection).put(program.opcodes).put(program.operands).put(program.operands2);
+		buffer.rewind();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Reads a program written by write. Files with another magic or version, with indexes, jump targets
+	 * or an entry out of range, or with counts and lengths the rest of the file cannot hold, are rejected
+	 * with an IOException (before anything of that size is allocated).
+	 */
+	static Program read(Path path) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER) {
+				throw new IOException("not a bytecode file: " + path);
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try {
+			return read(buffer);
+		} catch (RuntimeException e) {
+			throw new IOException("corrupted bytecode file: " + path + " (" + e + ")");
+		}
+	}
+
+	private static Program read(ByteBuffer buffer) throws IOException {
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException("not a bytecode file");
+		}
+		short version = buffer.getShort();
+		if (version != VERSION) {
+			throw new IOException("bytecode version " + version + " is not supported");
+		}
+		buffer.getShort();
+		int size = buffer.getInt();
+		int slotCount = buffer.getInt();
+		int stringCount = buffer.getInt();
+		int entry = buffer.getInt();
+		// every string takes 4 bytes at least, every slot 16 and every instruction 12
+		if (size < 0 || slotCount < 0 || stringCount < 0
+			|| stringCount * 4L + slotCount * 16L + size * 12L > buffer.remaining()) {
+			throw new IOException("corrupted bytecode file: " + size + " instructions, " + slotCount + " slots and "
+				+ stringCount + " strings do not fit in " + buffer.remaining() + " bytes");
+		}
+		if (entry < 0 || entry >= Math.max(1, size)) {
+			throw new IOException("entry " + entry + " is out of the program");
+		}
+		String[] strings = new String[stringCount];
+		for (int i = 0; i < stringCount; i++) {
+			int length = buffer.getInt();
+			if (length < 0 || length > buffer.remaining()) {
+				throw new IOException("corrupted bytecode file: string " + i + " of " + length + " bytes");
+			}
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+			buffer.position(buffer.position() + align(length) - length);
+			strings[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		IntBuffer ints = buffer.asIntBuffer();
+		String[] slots = new String[slotCount];
+		String[] types = new String[slotCount];
+		Memory memory = new Memory(slotCount);
+		for (int slot = 0; slot < slotCount; slot++) {
+			slots[slot] = strings[ints.get()];
+			types[slot] = strings[ints.get()];
+			int type = ints.get();
+			int value = ints.get();
+			memory.types[slot] = (byte) type;
+			switch (type & 0xff) {
+				case Type.INT:
+				case Type.BOOLEAN:
+					memory.ints[slot] = value;
+					break;
+				case Type.FLOAT:
+					memory.floats[slot] = Float.intBitsToFloat(value);
+					break;
+				case Type.STRING:
+					memory.refs[slot] = strings[value];
+					break;
+				case Type.ARRAY:
+					// the length is not in the file but in the declared type, such as int[10]
+					if (value != declaredLength(types[slot])) {
+						throw new IOException("corrupted bytecode file: array " + slots[slot] + " of " + value
+							+ " elements declared as " + types[slot]);
+					}
+					memory.refs[slot] = Type.newArray((byte) (type >> 8), value);
+					break;
+				default:
+					throw new IOException("unknown type " + type + " in slot " + slots[slot]);
+			}
+		}
+		int[] opcodes = new int[size];
+		int[] operands = new int[size];
+		int[] operands2 = new int[size];
+		ints.get(opcodes).get(operands).get(operands2);
+		for (int pc = 0; pc < size; pc++) {
+			check(opcodes[pc], operands[pc], operands2[pc], size, stringCount, memory, pc);
+		}
+		return new Program(opcodes, operands, operands2, strings, slots, types, memory, entry);
+	}
+
+	/**
+	 * Checks the operands of an instruction: indexes of strings and slots must exist and jumps must go to an
+	 * instruction of the program or just after its last one (the end of the program).
+	 */
+	private static void check(int opcode, int operand, int operand2, int size, int strings, Memory memory, int pc)
+		throws IOException {
+		int slots = memory.size();
+		boolean valid;
+		switch (opcode) {
+			case Opcode.LIT_STRING:
+			case Opcode.UNDEFINED:
+			case Opcode.ERROR:
+				valid = operand >= 0 && operand < strings;
+				break;
+			case Opcode.LOD:
+			case Opcode.STO:
+			case Opcode.STL:
+				valid = operand >= 0 && operand < slots && memory.types[operand] != Type.ARRAY;
+				break;
+			case Opcode.LDX_INT:
+			case Opcode.LDX_FLOAT:
+			case Opcode.LDX_BOOLEAN:
+			case Opcode.STX_INT:
+			case Opcode.STX_FLOAT:
+			case Opcode.STX_BOOLEAN:
+				valid = operand >= 0 && operand < slots && memory.types[operand] == Type.ARRAY
+					&& Type.elementType(memory.refs[operand]) == (opcode - Opcode.LDX_INT) % 3;
+				break;
+			case Opcode.JMP:
+			case Opcode.JMC_TRUE:
+			case Opcode.JMC_FALSE:
+				valid = operand >= 0 && operand <= size;
+				break;
+			case Opcode.JMC:
+				valid = operand >= 0 && operand <= size && operand2 >= 0 && operand2 < strings;
+				break;
+			default:
+				valid = opcode >= 0 && opcode < Opcode.FUSED;
+		}
+		if (!valid) {
+			throw new IOException("invalid instruction " + (pc + 1) + " (opcode " + opcode + ")");
+		}
+	}
+
+	/**
+	 * True when the file starts with the magic number of this format.
+	 */
+	static boolean isBytecode(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			while (magic.hasRemaining() && channel.read(magic) > 0) {
+			}
+			return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+		}
+	}
+
+	private static int string(String s, ArrayList<String> strings, HashMap<String, Integer> index) {
+		Integer i = index.get(s);
+		if (i == null) {
+			i = strings.size();
+			strings.add(s);
+			index.put(s, i);
+		}
+		return i;
+	}
+
+	/**
+	 * The length in a type such as int[10], or -1.
+	 */
+	private static int declaredLength(String type) {
+		int bracket = type.indexOf('[');
+		if (bracket == -1 || !type.endsWith("]")) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(type.substring(bracket + 1, type.length() - 1).trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static int align(int length) {
+		return (length + 3) & ~3;
+	}
+
+	private Bytecode() {
+	}
+
+}
@@ -0,0 +1,275 @@
+package javiergs.vm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Binary form of the state of a running program, so it can continue in another Interpreter
+ * (see Interpreter.checkpoint and Interpreter.restore).
+ * It keeps the state that changes while the program runs, not the program: the Interpreter that restores it
+ * must have loaded the same program, which is checked with a fingerprint of the decoded instructions.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ * header   magic "TCVC", version (short), fingerprint (long)
+ * state    pc, outcome (ordinal), executed instructions, running time (ns), screen offset (characters),
+ *          input position (values read from the InputSource)
+ * stack    size, then every value
+ * memory   size, then every value
+ * value    Type tag (byte), then the int (int and boolean), the raw float bits or the UTF-8 string with its length;
+ *          an array has the Type tag of its elements (byte), its length and every element (int, float bits or byte)
+ * </pre>
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+final class Checkpoint {
+
+	static final int MAGIC = 0x54435643;
+	static final short VERSION = 2;
+
+	final long fingerprint;
+	final int pc;
+	final Outcome outcome;
+	final long executed;
+	final long elapsed;
+	final long screen;
+	final long input;
+	final OperandStack stack;
+	final Memory memory;
+
+	Checkpoint(long fingerprint, int pc, Outcome outcome, long executed, long elapsed, long screen, long input,
+	           OperandStack stack, Memory memory) {
+		this.fingerprint = fingerprint;
+		this.pc = pc;
+		this.outcome = outcome;
+		this.executed = executed;
+		this.elapsed = elapsed;
+		this.screen = screen;
+		this.input = input;
+		this.stack = stack;
+		this.memory = memory;
+	}
+
+	byte[] toBytes() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + 8 * (stack.size + memory.size()));
+		try {
+			write(bytes);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	void write(OutputStream stream) throws IOException {
+		DataOutputStream out = new DataOutputStream(stream);
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeLong(fingerprint);
+		out.writeInt(pc);
+		out.writeByte(outcome.ordinal());
+		out.writeLong(executed);
+		out.writeLong(elapsed);
+		out.writeLong(screen);
+		out.writeLong(input);
+		out.writeInt(stack.size);
+		for (int i = 0; i < stack.size; i++) {
+			value(out, stack.types[i], stack.ints[i], stack.floats[i], stack.refs[i]);
+		}
+		out.writeInt(memory.size());
+		for (int slot = 0; slot < memory.size(); slot++) {
+			value(out, memory.types[slot], memory.ints[slot], memory.floats[slot], memory.refs[slot]);
+		}
+		out.flush();
+	}
+
+	/**
+	 * Reads a checkpoint written by write. Other magic numbers, versions or types are rejected with an IOException.
+	 */
+	static Checkpoint read(InputStream stream) throws IOException {
+		DataInputStream in = new DataInputStream(stream);
+		if (in.readInt() != MAGIC) {
+			throw new IOException("not a checkpoint");
+		}
+		short version = in.readShort();
+		if (version != VERSION) {
+			throw new IOException("checkpoint version " + version + " is not supported");
+		}
+		long fingerprint = in.readLong();
+		int pc = in.readInt();
+		int outcome = in.readUnsignedByte();
+		if (outcome >= Outcome.values().length) {
+			throw new IOException("unknown outcome " + outcome);
+		}
+		long executed = in.readLong();
+		long elapsed = in.readLong();
+		long screen = in.readLong();
+		long input = in.readLong();
+		if (input < 0) {
+			throw new IOException("negative input position");
+		}
+		int depth = in.readInt();
+		if (depth < 0) {
+			throw new IOException("negative register_zero size");
+		}
+		OperandStack stack = new OperandStack();
+		for (int i = 0; i < depth; i++) {
+			byte type = in.readByte();
+			switch (type) {
+				case Type.INT:
+					stack.pushInt(in.readInt());
+					break;
+				case Type.FLOAT:
+					stack.pushFloat(Float.intBitsToFloat(in.readInt()));
+					break;
+				case Type.BOOLEAN:
+					stack.pushBoolean(in.readInt() != 0);
+					break;
+				case Type.STRING:
+					stack.pushString(string(in));
+					break;
+				default:
+					throw new IOException("unknown type " + type + " in register_zero");
+			}
+		}
+		int size = in.readInt();
+		if (size < 0) {
+			throw new IOException("negative memory size");
+		}
+		Memory memory = new Memory(size);
+		for (int slot = 0; slot < size; slot++) {
+			byte type = in.readByte();
+			memory.types[slot] = type;
+			switch (type) {
+				case Type.INT:
+				case Type.BOOLEAN:
+					memory.ints[slot] = in.readInt();
+					break;
+				case Type.FLOAT:
+					memory.floats[slot] = Float.intBitsToFloat(in.readInt());
+					break;
+				case Type.STRING:
+					memory.refs[slot] = string(in);
+					break;
+				case Type.ARRAY:
+					memory.refs[slot] = array(in);
+					break;
+				default:
+					throw new IOException("unknown type " + type + " in slot " + slot);
+			}
+		}
+		return new Checkpoint(fingerprint, pc, Outcome.values()[outcome], executed, elapsed, screen, input, stack, memory);
+	}
+
+	/**
+	 * CRC-32 of the instructions and symbols of a decoded program, with its size in the high bits.
+	 */
+	static long fingerprint(Program program) {
+		CRC32 crc = new CRC32();
+		byte[] bytes = new byte[12];
+		for (int pc = 0; pc < program.size(); pc++) {
+			put(bytes, 0, program.opcodes[pc]);
+			put(bytes, 4, program.operands[pc]);
+			put(bytes, 8, program.operands2[pc]);
+			crc.update(bytes);
+		}
+		for (String s : program.slots) {
+			crc.update(s.getBytes(StandardCharsets.UTF_8));
+		}
+		for (String s : program.strings) {
+			crc.update(s.getBytes(StandardCharsets.UTF_8));
+		}
+		return (long) program.size() << 32 | crc.getValue();
+	}
+
+	private static void put(byte[] bytes, int at, int value) {
+		bytes[at] = (byte) (value >> 24);
+		bytes[at + 1] = (byte) (value >> 16);
+		bytes[at + 2] = (byte) (value >> 8);
+		bytes[at + 3] = (byte) value;
+	}
+
+	private static void value(DataOutputStream out, byte type, int i, float f, Object ref) throws IOException {
+		out.writeByte(type);
+		switch (type) {
+			case Type.FLOAT:
+				out.writeInt(Float.floatToRawIntBits(f));
+				break;
+			case Type.STRING:
+				byte[] bytes = String.valueOf(ref).getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+				break;
+			case Type.ARRAY:
+				array(out, ref);
+				break;
+			default:
+				out.writeInt(i);
+		}
+	}
+
+	private static void array(DataOutputStream out, Object array) throws IOException {
+		byte element = Type.elementType(array);
+		out.writeByte(element);
+		out.writeInt(Type.length(array));
+		if (element == Type.INT) {
+			for (int value : (int[]) array) {
+				out.writeInt(value);
+			}
+		} else if (element == Type.FLOAT) {
+			for (float value : (float[]) array) {
+				out.writeInt(Float.floatToRawIntBits(value));
+			}
+		} else {
+			for (boolean value : (boolean[]) array) {
+				out.writeBoolean(value);
+			}
+		}
+	}
+
+	private static Object array(DataInputStream in) throws IOException {
+		byte element = in.readByte();
+		int length = in.readInt();
+		if (length < 0 || element < Type.INT || element > Type.BOOLEAN) {
+			throw new IOException("invalid array of " + length + " elements of type " + element);
+		}
+		if (element == Type.INT) {
+			int[] array = new int[length];
+			for (int i = 0; i < length; i++) {
+				array[i] = in.readInt();
+			}
+			return array;
+		} else if (element == Type.FLOAT) {
+			float[] array = new float[length];
+			for (int i = 0; i < length; i++) {
+				array[i] = Float.intBitsToFloat(in.readInt());
+			}
+			return array;
+		}
+		boolean[] array = new boolean[length];
+		for (int i = 0; i < length; i++) {
+			array[i] = in.readBoolean();
+		}
+		return array;
+	}
+
+	private static String string(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			throw new IOException("negative string length");
+		}
+		byte[] bytes = in.readNBytes(length);
+		if (bytes.length != length) {
+			throw new IOException("truncated checkpoint");
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
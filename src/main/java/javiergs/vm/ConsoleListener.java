@@ -0,0 +1,57 @@
+package javiergs.vm;
+
+import java.io.*;
+
+/**
+ * Listener used when the Virtual Machine runs without a GUI.
+ * The screen goes to the standard output (buffered) and the console to the standard error.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public class ConsoleListener implements InterpreterListener {
+
+	private final Writer out;
+	private final PrintStream err;
+	private boolean errors = false;
+
+	public ConsoleListener() {
+		this(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)), 1 << 16), System.err);
+	}
+
+	public ConsoleListener(Writer out, PrintStream err) {
+		this.out = out;
+		this.err = err;
+	}
+
+	@Override
+	public void writeConsole(String msg) {
+		if (msg.startsWith("ERROR")) {
+			errors = true;
+		}
+		err.println(msg);
+	}
+
+	@Override
+	public void writeScreen(String msg) {
+		try {
+			out.write(msg);
+		} catch (IOException e) {
+			err.println("ERROR: writing to the screen.\n" + e);
+		}
+	}
+
+	@Override
+	public void stop() {
+		try {
+			out.flush();
+		} catch (IOException e) {
+			err.println("ERROR: writing to the screen.\n" + e);
+		}
+	}
+
+	public boolean hasErrors() {
+		return errors;
+	}
+
+}
@@ -0,0 +1,205 @@
+package javiergs.vm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.TreeSet;
+import java.util.Vector;
+
+/**
+ * Translates the instructions loaded from the intermediate code into a Program.
+ * Text is parsed here once, so the execution loop never trims, compares or parses strings.
+ * It also links the program: every symbol gets a slot in the memory array and every label
+ * used by JMP or JMC becomes the index of the instruction it points to.
+ * LDX and STX become an opcode for the type of the elements of their array.
+ * Instructions that would fail when executed become ERROR and keep the failure message.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class Decoder {
+
+	private int[] opcodes;
+	private int[] operands;
+	private int[] operands2;
+	private final ArrayList<String> strings = new ArrayList<>();
+	private final HashMap<String, Integer> stringIndex = new HashMap<>();
+	private final HashMap<String, Integer> slots = new HashMap<>();
+	private Hashtable<String, Vector<Symbol>> symbolTable;
+
+	Program decode(Vector<Instruction> instructions, Hashtable<String, Vector<Symbol>> symbolTable) {
+		this.symbolTable = symbolTable;
+		String[] names = new TreeSet<>(symbolTable.keySet()).toArray(new String[0]);
+		for (int i = 0; i < names.length; i++) {
+			slots.put(names[i], i);
+		}
+		int size = instructions.size();
+		opcodes = new int[size];
+		operands = new int[size];
+		operands2 = new int[size];
+		for (int i = 0; i < size; i++) {
+			Instruction instruction = instructions.get(i);
+			try {
+				decode(i, instruction.getName().trim().toUpperCase(),
+					instruction.getParameter1().trim(), instruction.getParameter2().trim());
+			} catch (Exception e) {
+				set(i, Opcode.ERROR, string(instruction.getLine() > 0 ? e + " (line " + instruction.getLine() + ")" : e.toString()), 0);
+			}
+		}
+		Memory memory = new Memory(names.length);
+		String[] types = new String[names.length];
+		for (int i = 0; i < names.length; i++) {
+			memory.set(i, symbolTable.get(names[i]).get(0));
+			types[i] = symbolTable.get(names[i]).get(0).getType();
+		}
+		int entry = 0;
+		if (symbolTable.get("#pc") != null) {
+			entry = Integer.parseInt(symbolTable.get("#pc").get(0).getValue().toString()) - 1;
+		}
+		return new Program(opcodes, operands, operands2, strings.toArray(new String[0]), names, types, memory, entry);
+	}
+
+	private void decode(int i, String cmd, String p1, String p2) {
+		switch (cmd) {
+			case "LIT":
+				literal(i, p1);
+				break;
+			case "LOD":
+				set(i, Opcode.LOD, scalar(p1), 0);
+				break;
+			case "STO":
+				set(i, Opcode.STO, scalar(p1), 0);
+				break;
+			case "STL":
+				set(i, Opcode.STL, scalar(p1), 0);
+				break;
+			case "LDX":
+				set(i, Opcode.LDX_INT + element(p1), slot(p1), 0);
+				break;
+			case "STX":
+				set(i, Opcode.STX_INT + element(p1), slot(p1), 0);
+				break;
+			case "JMP":
+				set(i, Opcode.JMP, target(p1), 0);
+				break;
+			case "JMC":
+				set(i, Opcode.JMC, target(p1), string(p2));
+				break;
+			case "OPR":
+				int opcode = Opcode.operator(Integer.parseInt(p1));
+				set(i, opcode, opcode == Opcode.UNDEFINED ? string(p1) : 0, 0);
+				break;
+			default:
+				// unknown instructions are skipped
+				set(i, Opcode.NOP, 0, 0);
+		}
+	}
+
+	/**
+	 * LIT keeps the type rules of the original loader: true and false are boolean, only digits is int,
+	 * anything Float can parse is float and everything else is a string.
+	 */
+	private void literal(int i, String p1) {
+		Object value = value(p1);
+		if (value instanceof Boolean) {
+			set(i, Opcode.LIT_BOOLEAN, (Boolean) value ? 1 : 0, 0);
+		} else if (value instanceof Integer) {
+			set(i, Opcode.LIT_INT, (Integer) value, 0);
+		} else if (value instanceof Float) {
+			set(i, Opcode.LIT_FLOAT, Float.floatToRawIntBits((Float) value), 0);
+		} else {
+			set(i, Opcode.LIT_STRING, string(p1), 0);
+		}
+	}
+
+	/**
+	 * Value of a LIT parameter (already trimmed): Boolean, Integer, Float or String.
+	 * Only digits that do not fit in an int throw NumberFormatException.
+	 */
+	static Object value(String p1) {
+		if (p1.equals("true") || p1.equals("false")) {
+			return p1.equals("true");
+		} else if (p1.matches("\\d+")) {
+			return Integer.parseInt(p1);
+		}
+		try {
+			return Float.parseFloat(p1);
+		} catch (NumberFormatException e) {
+			return p1;
+		}
+	}
+
+	/**
+	 * Slot of a variable that is not an array.
+	 */
+	private int scalar(String name) {
+		int slot = slot(name);
+		if (isArray(name)) {
+			throw new IllegalStateException(name + " is an array, use LDX and STX");
+		}
+		return slot;
+	}
+
+	/**
+	 * Type of the elements of an array.
+	 */
+	private int element(String name) {
+		slot(name);
+		if (!isArray(name)) {
+			throw new IllegalStateException(name + " is not an array");
+		}
+		return Type.elementType(symbolTable.get(name).get(0).getValue());
+	}
+
+	private boolean isArray(String name) {
+		Object value = symbolTable.get(name).get(0).getValue();
+		return value instanceof int[] || value instanceof float[] || value instanceof boolean[];
+	}
+
+	private int slot(String name) {
+		Integer slot = slots.get(name);
+		if (slot == null) {
+			throw new IllegalStateException("Undefined variable: " + name);
+		}
+		return slot;
+	}
+
+	/**
+	 * Instruction index for a jump parameter, either an instruction number or a label (a symbol whose name starts with #).
+	 * Labels are linked with the value they have when the program is loaded.
+	 * Every jump past the last instruction goes to the end of the program (size), where execution stops.
+	 */
+	private int target(String p1) {
+		int target;
+		if (p1.matches("\\d+")) {
+			target = Integer.parseInt(p1) - 1;
+		} else {
+			Vector<Symbol> label = p1.startsWith("#") ? symbolTable.get(p1) : null;
+			if (label == null) {
+				throw new IllegalStateException("Undefined label: " + p1);
+			}
+			target = Integer.parseInt(label.get(0).getValue().toString()) - 1;
+		}
+		if (target < 0) {
+			throw new IllegalStateException("Invalid jump target: " + p1);
+		}
+		return Math.min(target, opcodes.length);
+	}
+
+	private int string(String s) {
+		Integer index = stringIndex.get(s);
+		if (index == null) {
+			index = strings.size();
+			strings.add(s);
+			stringIndex.put(s, index);
+		}
+		return index;
+	}
+
+	private void set(int i, int opcode, int operand, int operand2) {
+		opcodes[i] = opcode;
+		operands[i] = operand;
+		operands2[i] = operand2;
+	}
+
+}
@@ -0,0 +1,27 @@
+package javiergs.vm;
+
+/**
+ * Receives every instruction the Interpreter executes, when one is set with Interpreter.setTracer.
+ * It is called from the execution loop before the instruction runs, so implementations must be cheap
+ * and must not allocate (see TraceBuffer).
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public interface ExecutionTracer {
+
+	/**
+	 * @param pc     index of the instruction (0 is the first one)
+	 * @param opcode opcode of the decoded program
+	 * @param depth  values in register_zero before the instruction
+	 * @param slot   memory slot read or written by the instruction (LOD and STO), or -1
+	 */
+	void record(int pc, int opcode, int depth, int slot);
+
+	/**
+	 * Called when the Interpreter stops executing (the program ended, or a step or a slice of a run is over).
+	 */
+	default void pause() {
+	}
+
+}
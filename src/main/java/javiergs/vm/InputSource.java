@@ -0,0 +1,187 @@
+package javiergs.vm;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Input of a program (OPR 22 to 25), set with Interpreter.setInput: standard input, a file or a string.
+ * The input is a sequence of tokens separated by white space, read through a buffer of its own
+ * so every value costs no call to the Reader; numbers are parsed from the token without making a String.
+ * Reading past the end or a token of the wrong type throws an exception, which ends the program with an error.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public final class InputSource implements AutoCloseable {
+
+	private static final int BUFFER = 1 << 13;
+
+	private final Reader in;
+	private final char[] buffer;
+	private int position;
+	private int limit;
+	private final StringBuilder token = new StringBuilder();
+	// tokens read so far, for error messages
+	private long count;
+
+	public InputSource(Reader in) {
+		this(in, BUFFER);
+	}
+
+	/**
+	 * @param in     the input, read buffer characters at a time
+	 * @param buffer characters read at once
+	 */
+	public InputSource(Reader in, int buffer) {
+		this.in = in;
+		this.buffer = new char[Math.max(buffer, 16)];
+	}
+
+	public static InputSource stdin() {
+		return new InputSource(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+	}
+
+	public static InputSource of(Path path) throws IOException {
+		return new InputSource(Files.newBufferedReader(path, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Input kept in memory, such as a data set loaded once and given to many runs.
+	 */
+	public static InputSource of(String text) {
+		return new InputSource(new StringReader(text), Math.min(Math.max(text.length(), 16), BUFFER));
+	}
+
+	public int nextInt() {
+		next();
+		try {
+			return Integer.parseInt(token, 0, token.length(), 10);
+		} catch (NumberFormatException e) {
+			throw mismatch("int");
+		}
+	}
+
+	public float nextFloat() {
+		next();
+		try {
+			return Float.parseFloat(token.toString());
+		} catch (NumberFormatException e) {
+			throw mismatch("float");
+		}
+	}
+
+	/**
+	 * True or false, in any case.
+	 */
+	public boolean nextBoolean() {
+		next();
+		if (equals("true")) {
+			return true;
+		} else if (equals("false")) {
+			return false;
+		}
+		throw mismatch("boolean");
+	}
+
+	public String nextString() {
+		next();
+		return token.toString();
+	}
+
+	/**
+	 * Reads and drops the next values, to continue where a program restored from a checkpoint stopped.
+	 */
+	public void skip(long values) {
+		for (long i = 0; i < values; i++) {
+			next();
+		}
+	}
+
+	/**
+	 * Values read so far, whatever their type (see Checkpoint).
+	 */
+	public long position() {
+		return count;
+	}
+
+	/**
+	 * True when there is at least one more token.
+	 */
+	public boolean hasNext() {
+		return skipSpaces();
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Reads the next token into token.
+	 */
+	private void next() {
+		if (!skipSpaces()) {
+			throw new IllegalStateException("the input ended after " + count + " values");
+		}
+		token.setLength(0);
+		do {
+			char c = buffer[position];
+			if (Character.isWhitespace(c)) {
+				break;
+			}
+			token.append(c);
+			position++;
+		} while (position < limit || fill());
+		count++;
+	}
+
+	/**
+	 * Moves to the next character that is not white space; false at the end of the input.
+	 */
+	private boolean skipSpaces() {
+		while (position < limit || fill()) {
+			if (!Character.isWhitespace(buffer[position])) {
+				return true;
+			}
+			position++;
+		}
+		return false;
+	}
+
+	private boolean fill() {
+		try {
+			int read;
+			do {
+				read = in.read(buffer, 0, buffer.length);
+			} while (read == 0);
+			position = 0;
+			limit = Math.max(read, 0);
+			return read > 0;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private boolean equals(String word) {
+		if (token.length() != word.length()) {
+			return false;
+		}
+		for (int i = 0; i < word.length(); i++) {
+			if (Character.toLowerCase(token.charAt(i)) != word.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private IllegalArgumentException mismatch(String type) {
+		return new IllegalArgumentException("value " + count + " of the input is not " + type + ": " + token);
+	}
+
+}
@@ -11,6 +11,7 @@ public class Instruction {
 	private String name;
 	private String parameter1;
 	private String parameter2;
+	private int line;
 	
 	public Instruction(String name, String parameter1, String parameter2) {
 		this.name = name;
@@ -45,4 +46,12 @@ public class Instruction {
 		this.parameter2 = parameter2;
 	}
 	
+	public int getLine() {
+		return line;
+	}
+	
+	public void setLine(int line) {
+		this.line = line;
+	}
+	
 }
\ No newline at end of file
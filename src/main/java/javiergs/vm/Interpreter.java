@@ -1,153 +1,183 @@
 package javiergs.vm;
 
-import java.io.IOException;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 /**
  * Virtual Machine class used to execute the intermediate code.
- * It has a GUI to show the execution of the code including symbol table, instructions and register.
+ * It has a GUI to show the execution of the code including symbol table, instructions and register,
+ * or it runs headless (no GUI) reporting to an InterpreterListener.
  *
  * @author javiergs
  * @version 1.0
  */
 public class Interpreter {
 	
+	// instructions executed between two checks of the clock in runFor
+	private static final int SLICE = 1 << 14;
+	// records kept by the tracer of the command line (-trace)
+	private static final int TRACE_CAPACITY = 1 << 16;
+	// backward jumps taken by the compiled code before it returns to check the clock or the tracer
+	private static final int JIT_BUDGET = 1 << 16;
+	// values of register_zero shown when a limit ends the program
+	private static final int SHOWN = 16;
+	// instructions between two checkpoints of the command line (-checkpoint) and time between two checks
+	private static final long CHECKPOINT_EVERY = 10_000_000L;
+	private static final long CHECKPOINT_CHECK = 10_000_000L;
+	// characters the WriterSink of the command line (-out) keeps before writing them
+	private static final int OUTPUT_BUFFER = 1 << 16;
+	
 	private final Hashtable<String, Vector<Symbol>> symbolTable;
 	private final Vector<Instruction> instructions;
-	private final Stack<Symbol> register_zero;
-	private final InterpreterUI gui;
+	private final OperandStack register_zero;
+	private final InterpreterListener listener;
+	private Program decoded;
+	private Program program;
+	private Program fused;
+	private TypeInference types;
+	private ExecutionTracer tracer;
+	private boolean optimize = true;
+	private int jitThreshold = 100_000;
+	private Jit jit;
+	private boolean jitTried;
+	private long interpreted;
+	private long executed;
+	private long instructionLimit;
+	private long timeLimit;
+	private int stackLimit;
+	// time spent running since the last reset, up to the start of the current run
+	private long elapsed;
+	private long runStart;
+	private volatile boolean cancelled;
+	private Outcome outcome = Outcome.RUNNING;
+	// characters written to the screen since the last reset
+	private long screenOffset;
+	// where OPR 20 and 21 write instead of the listener, when set
+	private OutputSink output;
+	// where OPR 22 to 25 read from
+	private InputSource input;
+	private long fingerprint;
+	private Memory memory;
+	private Memory shown;
 	private boolean exit = false;
 	private int pc;
 	
+	/**
+	 * Loads the intermediate code from the text of the editor panel.
+	 */
 	public void init(String text) {
-		symbolTable.clear();
-		instructions.clear();
-		register_zero.clear();
-		exit = false;
-		// loading
-		StringTokenizer st = new StringTokenizer(text, "\n");
-		gui.writeConsole("* Reading file from the editor panel...");
-		// read symbol table
-		String line = st.nextToken();
-		while (line != null && !line.trim().equals("@")) {
-			if (line.charAt(0) == '#') {
-				gui.writeConsole("* Getting labels... ");
-				insert_symbol_table_label(line);
-			} else {
-				gui.writeConsole("* Getting variables... ");
-				insert_symbol_table_var(line);
-			}
-			line = st.nextToken();
-		}
-		// read instructions
-		gui.writeConsole("* Loading instructions... ");
-		while (st.hasMoreElements()) {
-			line = st.nextToken();
-			if (!line.trim().equals("")) {
-				if (!insert_instruction(line)) {
-					gui.writeConsole("- Error in instruction line... ");
-				}
-			}
-		}
-		gui.writeConsole("* Intermediate code loaded.");
-		// show
-		show();
-		if (symbolTable.get("#pc") != null) {
-			pc = Integer.parseInt(symbolTable.get("#pc").get(0).getValue().toString()) - 1;
-		} else {
-			pc = 0;
+		listener.writeConsole("* Reading file from the editor panel...");
+		try {
+			load(new StringReader(text));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		gui.writePC(pc);
 	}
 	
-	private Symbol newSymbolForType(String type) {
-		switch (type) {
-			case "int":
-				return new Symbol(type, "global", new Integer(0));
-			case "float":
-				return new Symbol(type, "global", new Float(0));
-			case "boolean":
-				return new Symbol(type, "global", new Boolean("false"));
-			default:
-				return new Symbol(type, "global", "");
+	/**
+	 * Loads the intermediate code from a file, reading it in one pass.
+	 * Files written by save are mapped and run without parsing any text.
+	 */
+	public void load(Path path) throws IOException {
+		listener.writeConsole("* Reading " + path + "...");
+		if (Bytecode.isBytecode(path)) {
+			load(Bytecode.read(path));
+			return;
+		}
+		try (InputStream in = Files.newInputStream(path)) {
+			load(new InputStreamReader(in, StandardCharsets.UTF_8));
 		}
 	}
 	
-	private Symbol newSymbolForTypeAndValue(String type, String value) {
-		switch (type) {
-			case "int":
-				return new Symbol(type, "global", new Integer(value));
-			case "float":
-				return new Symbol(type, "global", new Float(value));
-			case "boolean":
-				return new Symbol(type, "global", new Boolean(value));
-			case "char":
-				return new Symbol(type, "global", "" + value);
-			case "string":
-				return new Symbol(type, "global", "" + value);
-			default:
-				gui.writeConsole("ERROR: type <" + type + "> not recognized.");
-				break;
-		}
-		return null;
+	public void load(InputStream in) throws IOException {
+		load(new InputStreamReader(in, StandardCharsets.UTF_8));
 	}
 	
-	private void insert_symbol_table_var(String line) {
-		try {
-			int firstComma = line.indexOf(",");
-			int secondComma = line.indexOf(",", firstComma + 1);
-			String symbolName = line.substring(0, firstComma).trim();
-			String symbolType = line.substring(firstComma + 1, secondComma).trim();
-			Vector<Symbol> value = new Vector<Symbol>();
-			value.add(newSymbolForType(symbolType));
-			symbolTable.put(symbolName, value);
-		} catch (Exception e) {
-			gui.writeConsole("ERROR: trying to insert a variable into the symbol table.\n" + e);
-		}
+	public void load(ReadableByteChannel channel) throws IOException {
+		load(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), -1));
 	}
 	
-	private void insert_symbol_table_label(String line) {
-		try {
-			int firstComma = line.indexOf(",");
-			int secondComma = line.indexOf(",", firstComma + 1);
-			String symbolName = line.substring(0, firstComma).trim();
-			String symbolType = line.substring(firstComma + 1, secondComma).trim();
-			String symbolValue = line.substring(secondComma + 1).trim();
-			Vector<Symbol> item = new Vector<Symbol>();
-			item.add(newSymbolForTypeAndValue("int", symbolValue));
-			symbolTable.put(symbolName, item);
-		} catch (Exception e) {
-			gui.writeConsole("ERROR: trying to insert a label into the symbol table.\n" + e);
+	private void load(Reader reader) throws IOException {
+		symbolTable.clear();
+		instructions.clear();
+		new ProgramLoader(symbolTable, instructions, listener).load(reader);
+		if (optimize) {
+			int size = instructions.size();
+			int removed = new PeepholeOptimizer().optimize(instructions, symbolTable);
+			listener.writeConsole("* Peephole optimizer: " + removed + " of " + size + " instructions removed.");
 		}
+		if (listener.showsCode()) {
+			show();
+		}
+		prepare(new Decoder().decode(instructions, symbolTable));
 	}
 	
-	private boolean insert_instruction(String line) {
-		// BUG: si el primer parametro es string y tiene comas falla :(
-		try {
-			Instruction i = new Instruction();
-			int pos;
-			// instruction
-			pos = line.indexOf(' ');
-			if (pos == -1) {
-				return false;
+	private void load(Program bytecode) {
+		symbolTable.clear();
+		instructions.clear();
+		listener.writeConsole("* Bytecode loaded: " + bytecode.slots.length + " symbols, "
+			+ bytecode.size() + " instructions.");
+		if (listener.showsCode()) {
+			for (int slot = 0; slot < bytecode.slots.length; slot++) {
+				Vector<Symbol> item = new Vector<Symbol>(1);
+				item.add(bytecode.symbol(slot));
+				symbolTable.put(bytecode.slots[slot], item);
 			}
-			i.setName(line.substring(0, pos).trim());
-			line = line.substring(pos + 1);
-			// first parameter
-			pos = line.indexOf(',');
-			if (pos == -1) {
-				return false;
+			for (int i = 0; i < bytecode.size(); i++) {
+				instructions.add(bytecode.instruction(i));
 			}
-			String p1 = line.substring(0, pos).trim();
-			i.setParameter1(p1);
-			line = line.substring(pos + 1).trim();
-			// second parameter
-			i.setParameter2(line);
-			instructions.add(i);
-		} catch (Exception e) {
-			gui.writeConsole("ERROR: trying to insert a label into the symbol table.\n" + e);
+			show();
 		}
-		return true;
+		prepare(bytecode);
+	}
+	
+	/**
+	 * Specializes and fuses a decoded program and puts it at its first instruction.
+	 */
+	private void prepare(Program decoded) {
+		this.decoded = decoded;
+		fingerprint = Checkpoint.fingerprint(decoded);
+		types = new TypeInference(decoded);
+		program = types.specialize();
+		Superinstructions superinstructions = new Superinstructions(program, types);
+		fused = superinstructions.fuse();
+		listener.writeConsole("* Superinstructions: " + superinstructions.report());
+		jit = null;
+		jitTried = false;
+		interpreted = 0;
+		reset();
+		listener.writePC(pc);
+	}
+	
+	/**
+	 * Writes the loaded program to a file in the binary format of Bytecode.
+	 */
+	public void save(Path path) throws IOException {
+		Bytecode.write(decoded, path);
+		listener.writeConsole("* Bytecode written to " + path);
+	}
+	
+	/**
+	 * Puts the loaded program back at its first instruction with the initial memory and an empty register_zero.
+	 */
+	public void reset() {
+		register_zero.clear();
+		memory = program.memory.copy();
+		shown = program.memory.copy();
+		pc = program.entry;
+		executed = 0;
+		elapsed = 0;
+		screenOffset = 0;
+		cancelled = false;
+		exit = program.size() == 0;
+		outcome = exit ? Outcome.FINISHED : Outcome.RUNNING;
 	}
 	
 	private void show() {
@@ -156,321 +186,965 @@ public class Interpreter {
 		while (items.hasMoreElements()) {
 			String key = (String) items.nextElement();
 			Symbol symbol = symbolTable.get(key).get(0);
-			gui.writeRam(key, symbol.getType(), symbol.getValue().toString());
+			listener.writeRam(key, symbol.getType(), symbol.getValue().toString());
 		}
 		// instructions
 		for (int i = 0; i < instructions.size(); i++) {
 			String cmd = instructions.get(i).getName();
 			String p1 = instructions.get(i).getParameter1();
 			String p2 = instructions.get(i).getParameter2();
-			gui.writeCode(String.format("%04d", i + 1), cmd, p1, p2);
+			listener.writeCode(String.format("%04d", i + 1), cmd, p1, p2);
 		}
 		
 	}
 	
-	private void execution_loop() {
+	/**
+	 * Executes up to steps instructions of the decoded program or until the program ends.
+	 * Superinstructions are used unless it runs a single step or there is a tracer.
+	 */
+	private void execute(int steps) {
+		if (exit) {
+			return;
+		}
+		final int[] plain = program.opcodes;
+		final ExecutionTracer tracer = this.tracer;
+		final int[] opcodes = tracer == null && steps > 1 ? fused.opcodes : plain;
+		final int[] operands = program.operands;
+		final int[] operands2 = program.operands2;
+		final String[] strings = program.strings;
+		final OperandStack stack = register_zero;
+		final Memory memory = this.memory;
+		final int size = opcodes.length;
+		int pc = this.pc;
+		final int budget = steps;
 		try {
-			String cmd = instructions.get(pc).getName().trim();
-			String p1 = instructions.get(pc).getParameter1().trim();
-			String p2 = instructions.get(pc).getParameter2().trim();
-			
-			if (cmd.toUpperCase().equals("LIT")) {
-				// verificar type
-				if (p1.equals("true"))
-					register_zero.push(newSymbolForTypeAndValue("boolean", "true"));
-				else if (p1.equals("false"))
-					register_zero.push(newSymbolForTypeAndValue("boolean", "false"));
-				else if (p1.matches("\\d+")) {
-					int i = Integer.parseInt(p1);
-					register_zero.push(newSymbolForTypeAndValue("int", p1));
-				} else {
-					try {
-						float f = Float.parseFloat(p1);
-						register_zero.push(newSymbolForTypeAndValue("float", p1));
-					} catch (Exception ef) {
-						register_zero.push(newSymbolForTypeAndValue("string", p1));
-					}
-				}
-				gui.writeRegistry(pc + 1, p1);
-			} else if (cmd.toUpperCase().equals("LOD")) {
-				Symbol value = symbolTable.get(p1).get(0);
-				register_zero.push(value);
-				gui.writeRegistry(pc + 1, value.getValue().toString());
-				
-			} else if (cmd.toUpperCase().equals("STO")) {
-				Symbol value = register_zero.pop();
-				gui.deleteRegistry();
-				Symbol s = symbolTable.get(p1).get(0);
-				s.setValue(value.getValue());
-				gui.updateRam(p1, value.getValue().toString());
-				
-			} else if (cmd.toUpperCase().equals("JMP")) {
-				if (p1.matches("\\d+")) {
-					pc = Integer.parseInt(p1) - 2;
-				} else {
-					//its a label
-					if (!p1.trim().equals(" ")) {
-						String v1 = symbolTable.get(p1).get(0).getValue().toString();
-						pc = Integer.parseInt(v1) - 2;
-					} else {
-						gui.writeConsole("\tUndefined label: " + p1);
-					}
+			loop:
+			while (steps > 0) {
+				steps--;
+				int next = pc + 1;
+				int opcode = opcodes[pc];
+				if (tracer != null) {
+					tracer.record(pc, opcode, stack.size, opcode == Opcode.LOD || opcode == Opcode.STO || opcode == Opcode.STL ? operands[pc] : -1);
 				}
-				
-			} else if (cmd.toUpperCase().equals("JMC")) {
-				
-				String value = register_zero.pop().getValue().toString().trim();
-				
-				gui.deleteRegistry();
-				String param = p2;
-				//System.out.println(">> " + value + "::" +p2 +"-");
-				if (value.equals(p2)) {
-					//System.out.println("A");
-					if (p1.matches("\\d+")) {
-						System.out.println("B");
-						pc = Integer.parseInt(p1) - 2;
-					} else {
-						System.out.println("C");
-						//its a label
-						if (!p1.trim().equals(" ")) {
-							System.out.println("D");
-							String v1 = symbolTable.get(p1).get(0).getValue().toString();
-							pc = Integer.parseInt(v1) - 2;
-						} else {
-							gui.writeConsole("\tUndefined label: " + p1);
+				switch (opcode) {
+					case Opcode.LIT_INT:
+						stack.pushInt(operands[pc]);
+						break;
+					case Opcode.LIT_FLOAT:
+						stack.pushFloat(Float.intBitsToFloat(operands[pc]));
+						break;
+					case Opcode.LIT_BOOLEAN:
+						stack.pushBoolean(operands[pc] != 0);
+						break;
+					case Opcode.LIT_STRING:
+						stack.pushString(strings[operands[pc]]);
+						break;
+					case Opcode.LOD:
+						stack.load(memory, operands[pc]);
+						break;
+					case Opcode.STO:
+						stack.store(memory, operands[pc]);
+						break;
+					case Opcode.STL:
+						stack.storeKeep(memory, operands[pc]);
+						break;
+					case Opcode.JMP:
+						next = operands[pc];
+						break;
+					case Opcode.JMC:
+						if (stack.popAsString().trim().equals(strings[operands2[pc]])) {
+							next = operands[pc];
 						}
-					}
-				}
-				
-			} else if (cmd.toUpperCase().equals("OPR")) {
-				Symbol value1, value2, result;
-				switch (Integer.parseInt(p1)) {
-					case 0:
+						break;
+					case Opcode.EXIT:
 						exit = true;
+						break loop;
+					case Opcode.NOP:
 						break;
-					case 1:
-						break;
-					case 2:
-						value2 = register_zero.pop();
-						value1 = register_zero.pop();
-						result = calculate(value1.getValue(), value2.getValue(), "+");
-						register_zero.push(result);
-						gui.deleteRegistry();
-						gui.deleteRegistry();
-						gui.writeRegistry(pc + 1, "" + result.getValue());
-						break;
-					case 3:
-						value2 = register_zero.pop();
-						value1 = register_zero.pop();
-						result = calculate(value1.getValue(), value2.getValue(), "-");
-						register_zero.push(result);
-						gui.deleteRegistry();
-						gui.deleteRegistry();
-						gui.writeRegistry(pc + 1, "" + result.getValue());
-						break;
-					case 4:
-						value2 = register_zero.pop();
-						value1 = register_zero.pop();
-						result = calculate(value1.getValue(), value2.getValue(), "*");
-						register_zero.push(result);
-						gui.deleteRegistry();
-						gui.deleteRegistry();
-						gui.writeRegistry(pc + 1, "" + result.getValue());
-						break;
-					case 5:
-						value2 = register_zero.pop();
-						value1 = register_zero.pop();
-						result = calculate(value1.getValue(), value2.getValue(), "/");
-						register_zero.push(result);
-						gui.deleteRegistry();
-						gui.deleteRegistry();
-						gui.writeRegistry(pc + 1, "" + result.getValue());
-						break;
-					
-					case 8: // OR
-						value2 = register_zero.pop();
-						value1 = register_zero.pop();
-						Boolean v1or = Boolean.parseBoolean(value1.getValue().toString());
-						Boolean v2or = Boolean.parseBoolean(value2.getValue().toString());
-						gui.deleteRegistry();
-						gui.deleteRegistry();
-						if (v1or || v2or) {
-							register_zero.push(newSymbolForTypeAndValue("boolean", "true"));
-							gui.writeRegistry(pc + 1, "true");
-						} else {
-							register_zero.push(newSymbolForTypeAndValue("boolean", "false"));
-							gui.writeRegistry(pc + 1, "false");
-						}
+					case Opcode.ADD:
+					case Opcode.SUB:
+					case Opcode.MUL:
+					case Opcode.DIV:
+						calculate(opcode);
 						break;
-					
-					case 9: // AND
-						value2 = register_zero.pop();
-						value1 = register_zero.pop();
-						Boolean v1and = Boolean.parseBoolean(value1.getValue().toString());
-						Boolean v2and = Boolean.parseBoolean(value2.getValue().toString());
-						gui.deleteRegistry();
-						gui.deleteRegistry();
-						if (v1and && v2and) {
-							register_zero.push(newSymbolForTypeAndValue("boolean", "true"));
-							gui.writeRegistry(pc + 1, "true");
-						} else {
-							register_zero.push(newSymbolForTypeAndValue("boolean", "false"));
-							gui.writeRegistry(pc + 1, "false");
-						}
+					case Opcode.OR: {
+						boolean b = stack.popAsBoolean();
+						boolean a = stack.popAsBoolean();
+						stack.pushBoolean(a || b);
 						break;
-					
-					case 10: // NOT
-						
-						value1 = register_zero.pop();
-						Boolean v1not = Boolean.parseBoolean(value1.getValue().toString());
-						gui.deleteRegistry();
-						if (!v1not) {
-							register_zero.push(newSymbolForTypeAndValue("boolean", "true"));
-							gui.writeRegistry(pc + 1, "true");
-						} else {
-							register_zero.push(newSymbolForTypeAndValue("boolean", "false"));
-							gui.writeRegistry(pc + 1, "false");
-						}
+					}
+					case Opcode.AND: {
+						boolean b = stack.popAsBoolean();
+						boolean a = stack.popAsBoolean();
+						stack.pushBoolean(a && b);
 						break;
-					
-					case 11: // >
-						value2 = register_zero.pop();
-						value1 = register_zero.pop();
-						Float v1 = Float.parseFloat(value1.getValue().toString());
-						Float v2 = Float.parseFloat(value2.getValue().toString());
-						gui.deleteRegistry();
-						gui.deleteRegistry();
-						if (v1 > v2) {
-							register_zero.push(newSymbolForTypeAndValue("boolean", "true"));
-							gui.writeRegistry(pc + 1, "true");
-						} else {
-							register_zero.push(newSymbolForTypeAndValue("boolean", "false"));
-							gui.writeRegistry(pc + 1, "false");
-						}
+					}
+					case Opcode.NOT:
+						stack.pushBoolean(!stack.popAsBoolean());
+						break;
+					case Opcode.GT:
+						stack.pushBoolean(stack.popGreater());
+						break;
+					case Opcode.LT:
+						stack.pushBoolean(stack.popLess());
 						break;
-					
-					case 12:  // <
-						value2 = register_zero.pop();
-						value1 = register_zero.pop();
-						Float v1a = Float.parseFloat(value1.getValue().toString());
-						Float v2a = Float.parseFloat(value2.getValue().toString());
-						gui.deleteRegistry();
-						gui.deleteRegistry();
-						if (v1a < v2a) {
-							register_zero.push(newSymbolForTypeAndValue("boolean", "true"));
-							gui.writeRegistry(pc + 1, "true");
-						} else {
-							register_zero.push(newSymbolForTypeAndValue("boolean", "false"));
-							gui.writeRegistry(pc + 1, "false");
+					case Opcode.EQ:
+						stack.pushBoolean(stack.popEquals());
+						break;
+					case Opcode.NE:
+						stack.pushBoolean(!stack.popEquals());
+						break;
+					case Opcode.JMC_TRUE:
+						if (stack.popBoolean()) {
+							next = operands[pc];
 						}
 						break;
-					
-					case 15:
-						String s2 = register_zero.pop().getValue().toString();
-						String s1 = register_zero.pop().getValue().toString();
-						gui.deleteRegistry();
-						gui.deleteRegistry();
-						if (s1.equals(s2)) {
-							register_zero.push(newSymbolForTypeAndValue("boolean", "true"));
-							gui.writeRegistry(pc, "true");
-						} else {
-							register_zero.push(newSymbolForTypeAndValue("boolean", "false"));
-							gui.writeRegistry(pc, "false");
+					case Opcode.JMC_FALSE:
+						if (!stack.popBoolean()) {
+							next = operands[pc];
 						}
 						break;
-					
-					case 16:
-						String s2a = register_zero.pop().getValue().toString();
-						String s1a = register_zero.pop().getValue().toString();
-						gui.deleteRegistry();
-						gui.deleteRegistry();
-						if (!s1a.equals(s2a)) {
-							register_zero.push(newSymbolForTypeAndValue("boolean", "true"));
-							gui.writeRegistry(pc, "true");
-						} else {
-							register_zero.push(newSymbolForTypeAndValue("boolean", "false"));
-							gui.writeRegistry(pc, "false");
+					case Opcode.OR_BOOLEAN: {
+						boolean b = stack.popBoolean();
+						boolean a = stack.popBoolean();
+						stack.pushBoolean(a || b);
+						break;
+					}
+					case Opcode.AND_BOOLEAN: {
+						boolean b = stack.popBoolean();
+						boolean a = stack.popBoolean();
+						stack.pushBoolean(a && b);
+						break;
+					}
+					case Opcode.NOT_BOOLEAN:
+						stack.pushBoolean(!stack.popBoolean());
+						break;
+					case Opcode.GT_INT: {
+						int b = stack.popInt();
+						int a = stack.popInt();
+						stack.pushBoolean(a > b);
+						break;
+					}
+					case Opcode.GT_FLOAT: {
+						float b = stack.popFloat();
+						float a = stack.popFloat();
+						stack.pushBoolean(a > b);
+						break;
+					}
+					case Opcode.LT_INT: {
+						int b = stack.popInt();
+						int a = stack.popInt();
+						stack.pushBoolean(a < b);
+						break;
+					}
+					case Opcode.LT_FLOAT: {
+						float b = stack.popFloat();
+						float a = stack.popFloat();
+						stack.pushBoolean(a < b);
+						break;
+					}
+					case Opcode.EQ_INT:
+					case Opcode.EQ_BOOLEAN:
+						stack.pushBoolean(stack.popInt() == stack.popInt());
+						break;
+					case Opcode.EQ_FLOAT:
+						stack.pushBoolean(Float.floatToIntBits(stack.popFloat()) == Float.floatToIntBits(stack.popFloat()));
+						break;
+					case Opcode.EQ_STRING:
+						stack.pushBoolean(stack.popString().equals(stack.popString()));
+						break;
+					case Opcode.NE_INT:
+					case Opcode.NE_BOOLEAN:
+						stack.pushBoolean(stack.popInt() != stack.popInt());
+						break;
+					case Opcode.NE_FLOAT:
+						stack.pushBoolean(Float.floatToIntBits(stack.popFloat()) != Float.floatToIntBits(stack.popFloat()));
+						break;
+					case Opcode.NE_STRING:
+						stack.pushBoolean(!stack.popString().equals(stack.popString()));
+						break;
+					case Opcode.ARITH_SLOT_CONST: {
+						int slot = operands[pc + 3];
+						memory.ints[slot] = Superinstructions.arithmetic(plain[pc + 2], memory.ints[operands[pc]], operands[pc + 1]);
+						memory.types[slot] = Type.INT;
+						next = pc + 4;
+						// it runs the three instructions after it too
+						steps -= 3;
+						break;
+					}
+					case Opcode.ARITH_SLOT_SLOT: {
+						int slot = operands[pc + 3];
+						memory.ints[slot] = Superinstructions.arithmetic(plain[pc + 2], memory.ints[operands[pc]],
+							memory.ints[operands[pc + 1]]);
+						memory.types[slot] = Type.INT;
+						next = pc + 4;
+						steps -= 3;
+						break;
+					}
+					case Opcode.BRANCH_SLOT_CONST:
+						next = Superinstructions.compare(plain[pc + 2], memory.ints[operands[pc]], operands[pc + 1])
+							== (plain[pc + 3] == Opcode.JMC_TRUE) ? operands[pc + 3] : pc + 4;
+						steps -= 3;
+						break;
+					case Opcode.BRANCH_SLOT_SLOT:
+						next = Superinstructions.compare(plain[pc + 2], memory.ints[operands[pc]], memory.ints[operands[pc + 1]])
+							== (plain[pc + 3] == Opcode.JMC_TRUE) ? operands[pc + 3] : pc + 4;
+						steps -= 3;
+						break;
+					case Opcode.PRINT:
+						print(" " + stack.popAsString());
+						break;
+					case Opcode.PRINTLN:
+						print(" " + stack.popAsString() + "\n");
+						break;
+					case Opcode.READ_INT:
+						stack.pushInt(input().nextInt());
+						break;
+					case Opcode.READ_FLOAT:
+						stack.pushFloat(input().nextFloat());
+						break;
+					case Opcode.READ_STRING:
+						stack.pushString(input().nextString());
+						break;
+					case Opcode.READ_BOOLEAN:
+						stack.pushBoolean(input().nextBoolean());
+						break;
+					case Opcode.LDX_INT:
+						stack.expect(Type.INT, "an array index");
+						stack.pushInt(((int[]) memory.refs[operands[pc]])[stack.popInt()]);
+						break;
+					case Opcode.LDX_FLOAT:
+						stack.expect(Type.INT, "an array index");
+						stack.pushFloat(((float[]) memory.refs[operands[pc]])[stack.popInt()]);
+						break;
+					case Opcode.LDX_BOOLEAN:
+						stack.expect(Type.INT, "an array index");
+						stack.pushBoolean(((boolean[]) memory.refs[operands[pc]])[stack.popInt()]);
+						break;
+					case Opcode.STX_INT: {
+						stack.expect(Type.INT, "an element of " + program.slots[operands[pc]]);
+						int value = stack.popInt();
+						stack.expect(Type.INT, "an array index");
+						((int[]) memory.refs[operands[pc]])[stack.popInt()] = value;
+						break;
+					}
+					case Opcode.STX_FLOAT: {
+						if (stack.types[stack.size - 1] != Type.INT) {
+							stack.expect(Type.FLOAT, "an element of " + program.slots[operands[pc]]);
 						}
+						float value = stack.popAsFloat();
+						stack.expect(Type.INT, "an array index");
+						((float[]) memory.refs[operands[pc]])[stack.popInt()] = value;
 						break;
-					case 20:
-						gui.writeScreen(" " + register_zero.pop().getValue());
-						gui.deleteRegistry();
+					}
+					case Opcode.STX_BOOLEAN: {
+						stack.expect(Type.BOOLEAN, "an element of " + program.slots[operands[pc]]);
+						boolean value = stack.popBoolean();
+						stack.expect(Type.INT, "an array index");
+						((boolean[]) memory.refs[operands[pc]])[stack.popInt()] = value;
 						break;
-					case 21:
-						gui.writeScreen(" " + register_zero.pop().getValue() + "\n");
-						gui.deleteRegistry();
+					}
+					case Opcode.UNDEFINED:
+						print("\tUndefined operator: " + strings[operands[pc]]);
 						break;
-					default:
-						gui.writeScreen("\tUndefined operator: " + p1);
+					case Opcode.ERROR:
+						listener.writeConsole("ERROR:\n" + strings[operands[pc]]);
+						outcome = Outcome.ERROR;
+						exit = true;
+						break loop;
 				}
-			}
-			if (!exit == true && pc + 1 < instructions.size()) {
-				pc++;
-			} else {
-				exit = true;
+				if (next >= size) {
+					exit = true;
+					break;
+				}
+				pc = next;
 			}
 		} catch (Exception e) {
-			gui.writeConsole("ERROR:\n" + e);
-		}
-	}
-	
-	private Symbol calculate(Object v1, Object v2, String operator) {
-		if (operator.equals("+") || operator.equals("-") || operator.equals("*") ||
-			operator.equals("/")) {
-			if (v1.getClass() == String.class || v2.getClass() == String.class) {
-				// only +
-				return newSymbolForTypeAndValue("string", v1.toString() + v2.toString());
-			} else if (v1.getClass() == Float.class || v2.getClass() == Float.class) {
-				float f1 = Float.parseFloat(v1.toString());
-				float f2 = Float.parseFloat(v2.toString());
-				if (operator.equals("+")) return newSymbolForTypeAndValue("float", "" + (f1 + f2));
-				else if (operator.equals("-")) return newSymbolForTypeAndValue("float", "" + (f1 - f2));
-				else if (operator.equals("*")) return newSymbolForTypeAndValue("float", "" + (f1 * f2));
-				else if (operator.equals("/")) return newSymbolForTypeAndValue("float", "" + (f1 / f2));
-			} else {
-				int f1 = Integer.parseInt(v1.toString());
-				int f2 = Integer.parseInt(v2.toString());
-				if (operator.equals("+")) return newSymbolForTypeAndValue("int", "" + (f1 + f2));
-				else if (operator.equals("-")) return newSymbolForTypeAndValue("int", "" + (f1 - f2));
-				else if (operator.equals("*")) return newSymbolForTypeAndValue("int", "" + (f1 * f2));
-				else if (operator.equals("/")) return newSymbolForTypeAndValue("int", "" + (f1 / f2));
+			listener.writeConsole("ERROR:\n" + e);
+			outcome = e instanceof StackLimitException ? Outcome.STACK_LIMIT : Outcome.ERROR;
+			exit = true;
+		} finally {
+			this.pc = pc;
+			executed += budget - steps;
+			if (exit && outcome == Outcome.RUNNING) {
+				outcome = Outcome.FINISHED;
+			}
+			if (tracer != null) {
+				tracer.pause();
+			}
+		}
+	}
+	
+	/**
+	 * Arithmetic for OPR 2 to 5. A string operand concatenates the text of both values (for every operator),
+	 * a float operand makes it a float operation, otherwise it is an int operation.
+	 */
+	private void calculate(int opcode) {
+		final OperandStack stack = register_zero;
+		byte type2 = stack.type(0);
+		byte type1 = stack.type(1);
+		if (type1 == Type.STRING || type2 == Type.STRING) {
+			String s2 = stack.popAsString();
+			String s1 = stack.popAsString();
+			stack.pushString(s1 + s2);
+		} else if (type1 == Type.FLOAT || type2 == Type.FLOAT) {
+			float f2 = stack.popAsFloat();
+			float f1 = stack.popAsFloat();
+			switch (opcode) {
+				case Opcode.ADD:
+					stack.pushFloat(f1 + f2);
+					break;
+				case Opcode.SUB:
+					stack.pushFloat(f1 - f2);
+					break;
+				case Opcode.MUL:
+					stack.pushFloat(f1 * f2);
+					break;
+				default:
+					stack.pushFloat(f1 / f2);
+			}
+		} else {
+			// booleans fail here the same way Integer.parseInt fails on them
+			int i2 = type2 == Type.INT ? stack.popInt() : Integer.parseInt(stack.popAsString());
+			int i1 = type1 == Type.INT ? stack.popInt() : Integer.parseInt(stack.popAsString());
+			switch (opcode) {
+				case Opcode.ADD:
+					stack.pushInt(i1 + i2);
+					break;
+				case Opcode.SUB:
+					stack.pushInt(i1 - i2);
+					break;
+				case Opcode.MUL:
+					stack.pushInt(i1 * i2);
+					break;
+				default:
+					stack.pushInt(i1 / i2);
 			}
 		}
-		return newSymbolForType("string");
+	}
+	
+	/**
+	 * Writes the output of the program (OPR 20 and 21) to the screen.
+	 */
+	void print(String text) {
+		screenOffset += text.length();
+		if (output == null) {
+			listener.writeScreen(text);
+		} else {
+			output.write(text);
+		}
+	}
+	
+	/**
+	 * The input of the program (OPR 22 to 25).
+	 */
+	InputSource input() {
+		if (input == null) {
+			throw new IllegalStateException("the program reads input and there is none");
+		}
+		return input;
+	}
+	
+	/**
+	 * The array in a memory slot, for the compiled program.
+	 */
+	Object array(int slot) {
+		return memory.refs[slot];
+	}
+	
+	/**
+	 * Passes the output kept by the OutputSink on when the program ends or a checkpoint is taken.
+	 */
+	private void flushOutput() {
+		if (output == null) {
+			return;
+		}
+		try {
+			output.flush();
+		} catch (RuntimeException e) {
+			outcome = Outcome.ERROR;
+			listener.writeConsole("ERROR: writing the output.\n" + e);
+		}
+	}
+	
+	/**
+	 * Executes one instruction and reports the changes on register_zero and RAM to the listener.
+	 */
+	private void step() {
+		int at = pc;
+		int opcode = program.opcodes[at];
+		int depth = register_zero.size();
+		execute(1);
+		int kept = Math.max(0, Math.min(depth - Opcode.POPS[opcode], register_zero.size()));
+		for (int i = kept; i < depth; i++) {
+			listener.deleteRegistry();
+		}
+		for (int i = kept; i < register_zero.size(); i++) {
+			listener.writeRegistry(at + 1, register_zero.toString(i));
+		}
+		if (opcode == Opcode.STO || opcode == Opcode.STL || (opcode >= Opcode.STX_INT && opcode <= Opcode.STX_BOOLEAN)) {
+			int slot = program.operands[at];
+			listener.updateRam(program.slots[slot], memory.toString(slot));
+		}
+	}
+	
+	/**
+	 * Reports the whole register_zero and RAM to the listener, after running many instructions at once.
+	 */
+	private void refresh(int depth) {
+		for (int i = 0; i < depth; i++) {
+			listener.deleteRegistry();
+		}
+		for (int i = 0; i < register_zero.size(); i++) {
+			listener.writeRegistry(pc + 1, register_zero.toString(i));
+		}
+		for (int slot = 0; slot < memory.size(); slot++) {
+			listener.updateRam(program.slots[slot], memory.toString(slot));
+		}
 	}
 	
 	public void go(String s) {
 		if (s.equals("step")) {
 			if (!exit) {
-				execution_loop();
+				step();
 			}
 			if (exit) {
-				gui.stop();
+				flushOutput();
+				listener.stop();
 			}
-			gui.writePC(pc);
+			listener.writePC(pc);
 		} else if (s.equals("all")) {
-			
+			int depth = register_zero.size();
+			start();
 			while (!exit) {
-				execution_loop();
-				if (exit) {
-					gui.stop();
-				}
-				gui.writePC(pc);
+				slice();
+			}
+			refresh(depth);
+			flushOutput();
+			listener.stop();
+			listener.writePC(pc);
+		}
+	}
+	
+	/**
+	 * Runs the loaded program for about the given time, or until it ends, without reporting each step.
+	 * It returns true when the program ended.
+	 */
+	public boolean runFor(long nanos) {
+		long deadline = start() + nanos;
+		do {
+			slice();
+		} while (!exit && System.nanoTime() - deadline < 0);
+		elapsed += System.nanoTime() - runStart;
+		if (exit) {
+			flushOutput();
+		}
+		return exit;
+	}
+	
+	/**
+	 * The current state of the machine with the RAM cells changed since the previous snapshot
+	 * (every cell when full is true).
+	 */
+	Snapshot snapshot(boolean full) {
+		String[] registry = new String[register_zero.size()];
+		for (int i = 0; i < registry.length; i++) {
+			registry[i] = register_zero.toString(i);
+		}
+		ArrayList<String> names = new ArrayList<>();
+		ArrayList<String> values = new ArrayList<>();
+		for (int slot = 0; slot < memory.size(); slot++) {
+			if (full || changed(slot)) {
+				names.add(program.slots[slot]);
+				values.add(memory.toString(slot));
+				shown.types[slot] = memory.types[slot];
+				shown.ints[slot] = memory.ints[slot];
+				shown.floats[slot] = memory.floats[slot];
+				shown.refs[slot] = memory.types[slot] == Type.ARRAY ? Type.copyArray(memory.refs[slot]) : memory.refs[slot];
+			}
+		}
+		return new Snapshot(pc, registry, names.toArray(new String[0]), values.toArray(new String[0]), exit);
+	}
+	
+	private boolean changed(int slot) {
+		return shown.types[slot] != memory.types[slot] || shown.ints[slot] != memory.ints[slot]
+			|| Float.floatToIntBits(shown.floats[slot]) != Float.floatToIntBits(memory.floats[slot])
+			|| !Objects.deepEquals(shown.refs[slot], memory.refs[slot]);
+	}
+	
+	/**
+	 * Runs the loaded program to completion without reporting each step.
+	 */
+	public void run() {
+		start();
+		while (!exit) {
+			slice();
+		}
+		flushOutput();
+		listener.stop();
+	}
+	
+	private long start() {
+		runStart = System.nanoTime();
+		return runStart;
+	}
+	
+	/**
+	 * Runs the compiled program until it returns, when there is one and it can start at pc;
+	 * otherwise it interprets a slice of instructions (a single one while it walks to an instruction
+	 * where the compiled program can start) and compiles the program once enough were interpreted.
+	 */
+	private void slice() {
+		if (limited()) {
+			return;
+		}
+		if (!jitTried && tracer == null && jitThreshold >= 0 && interpreted >= jitThreshold) {
+			compile();
+		}
+		if (jit != null && tracer == null && jit.maxDepth() <= stackLimit()) {
+			if (register_zero.size() == 0 && jit.isEntry(pc)) {
+				runCompiled();
+			} else {
+				execute(1);
+			}
+			return;
+		}
+		int steps = instructionLimit > 0 ? (int) Math.min(SLICE, instructionLimit - executed) : SLICE;
+		execute(steps);
+		interpreted += steps;
+	}
+	
+	/**
+	 * Ends the program when it was cancelled or it is over its instruction or time limit.
+	 * Compiled code returns here every JIT_BUDGET backward jumps at most; since no more than program.size()
+	 * instructions run between two of them, the budget keeps it under the instruction limit but for one pass over the program.
+	 */
+	private boolean limited() {
+		Outcome limit = null;
+		String reason = null;
+		if (cancelled) {
+			limit = Outcome.CANCELLED;
+			reason = "cancelled";
+		} else if (instructionLimit > 0 && executed >= instructionLimit) {
+			limit = Outcome.INSTRUCTION_LIMIT;
+			reason = "instruction limit of " + instructionLimit + " reached";
+		} else if (timeLimit > 0 && elapsed + System.nanoTime() - runStart >= timeLimit) {
+			limit = Outcome.TIME_LIMIT;
+			reason = String.format("time limit of %.3f ms reached", timeLimit / 1e6);
+		}
+		if (limit == null) {
+			return false;
+		}
+		int size = register_zero.size();
+		StringBuilder registry = new StringBuilder(size > SHOWN ? "..." : "");
+		for (int i = Math.max(0, size - SHOWN); i < size; i++) {
+			registry.append(registry.length() == 0 ? "" : ", ").append(register_zero.toString(i));
+		}
+		listener.writeConsole("ERROR: " + reason + " at " + String.format("%04d", pc + 1) + " after " + executed
+			+ " instructions, register_zero (" + size + " values): [" + registry + "]");
+		outcome = limit;
+		exit = true;
+		return true;
+	}
+	
+	private void compile() {
+		jitTried = true;
+		try {
+			jit = Jit.compile(program, types);
+			listener.writeConsole("* JIT: " + program.size() + " instructions compiled into " + jit.codeSize()
+				+ " bytes of JVM code.");
+		} catch (UnsupportedOperationException e) {
+			listener.writeConsole("* JIT: the program stays interpreted, " + e.getMessage() + ".");
+		}
+	}
+	
+	private void runCompiled() {
+		try {
+			int budget = instructionLimit > 0
+				? (int) Math.max(1, Math.min(JIT_BUDGET, (instructionLimit - executed) / program.size())) : JIT_BUDGET;
+			int next = jit.run(pc, memory, budget, this);
+			executed += jit.executed();
+			if (next >= 0) {
+				pc = next;
+			} else {
+				pc = -next - 1;
+				outcome = Outcome.FINISHED;
+				exit = true;
+			}
+		} catch (Throwable e) {
+			executed += jit.executed();
+			listener.writeConsole("ERROR:\n" + e);
+			outcome = Outcome.ERROR;
+			exit = true;
+		}
+	}
+	
+	/**
+	 * True when the slot keeps an array in both memories, of the same type and length, or in none of them.
+	 */
+	private static boolean sameArray(Memory a, Memory b, int slot) {
+		if (a.types[slot] != Type.ARRAY || b.types[slot] != Type.ARRAY) {
+			return a.types[slot] != Type.ARRAY && b.types[slot] != Type.ARRAY;
+		}
+		return Type.elementType(a.refs[slot]) == Type.elementType(b.refs[slot])
+			&& Type.length(a.refs[slot]) == Type.length(b.refs[slot]);
+	}
+	
+	public boolean isFinished() {
+		return exit;
+	}
+	
+	/**
+	 * The state of the running program (pc, register_zero, memory, instructions executed, running time,
+	 * screen offset and values read from the input) in the binary form of Checkpoint. It must not be called while the program runs
+	 * in another thread.
+	 */
+	public byte[] checkpoint() {
+		flushOutput();
+		return new Checkpoint(fingerprint, pc, outcome, executed, elapsed, screenOffset,
+			input == null ? 0 : input.position(), register_zero, memory).toBytes();
+	}
+	
+	/**
+	 * Continues the loaded program from a checkpoint taken by an Interpreter that loaded the same program.
+	 * The screen output before the checkpoint is not written again; getScreenOffset says how much of it there was.
+	 * The input must be the one the program read from, set with setInput, at its start or where the checkpoint
+	 * was taken: the values read before the checkpoint are skipped.
+	 */
+	public void restore(byte[] bytes) throws IOException {
+		if (program == null) {
+			throw new IOException("there is no program to restore the checkpoint into");
+		}
+		Checkpoint checkpoint = Checkpoint.read(new ByteArrayInputStream(bytes));
+		if (checkpoint.fingerprint != fingerprint || checkpoint.memory.size() != program.slots.length) {
+			throw new IOException("the checkpoint was taken from another program");
+		}
+		for (int slot = 0; slot < program.slots.length; slot++) {
+			if (!sameArray(program.memory, checkpoint.memory, slot)) {
+				throw new IOException("the checkpoint has another value than an array of the same type and length in "
+					+ program.slots[slot]);
 			}
-			
 		}
+		if (checkpoint.pc < 0 || checkpoint.pc >= Math.max(1, program.size())) {
+			throw new IOException("the checkpoint is at instruction " + (checkpoint.pc + 1) + ", out of the program");
+		}
+		skipInput(checkpoint.input);
+		register_zero.clear();
+		try {
+			register_zero.pushAll(checkpoint.stack);
+		} catch (StackLimitException e) {
+			throw new IOException("the checkpoint has more values in register_zero than its limit", e);
+		}
+		memory = checkpoint.memory;
+		shown = program.memory.copy();
+		pc = checkpoint.pc;
+		outcome = checkpoint.outcome;
+		exit = outcome != Outcome.RUNNING;
+		executed = checkpoint.executed;
+		interpreted = checkpoint.executed;
+		elapsed = checkpoint.elapsed;
+		screenOffset = checkpoint.screen;
+		cancelled = false;
+		listener.writeConsole("* Checkpoint restored at " + String.format("%04d", pc + 1) + " after " + executed
+			+ " instructions.");
+		listener.writePC(pc);
+	}
+	
+	private void skipInput(long position) throws IOException {
+		long read = input == null ? 0 : input.position();
+		if (position == read) {
+			return;
+		}
+		if (input == null || read > position) {
+			throw new IOException("the checkpoint was taken after " + position + " values of input, "
+				+ (input == null ? "there is no input" : "the input is after " + read));
+		}
+		try {
+			input.skip(position - read);
+		} catch (IllegalStateException e) {
+			throw new IOException("the checkpoint was taken after " + position + " values of input, "
+				+ "but the input ended before", e);
+		}
+	}
+	
+	/**
+	 * Characters written to the screen since the program was loaded or reset (including the ones before a checkpoint
+	 * it was restored from).
+	 */
+	public long getScreenOffset() {
+		return screenOffset;
+	}
+	
+	/**
+	 * How the program ended, or RUNNING.
+	 */
+	public Outcome getOutcome() {
+		return outcome;
+	}
+	
+	/**
+	 * Stops the running program at its next check (every few thousand instructions); it can be called from any thread.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+	
+	/**
+	 * Ends the program after about this many instructions, 0 for no limit.
+	 */
+	public void setInstructionLimit(long instructionLimit) {
+		this.instructionLimit = instructionLimit;
+	}
+	
+	/**
+	 * Ends the program after it ran for about this many nanoseconds (in total since it was loaded or reset),
+	 * 0 for no limit.
+	 */
+	public void setTimeLimit(long timeLimit) {
+		this.timeLimit = timeLimit;
+	}
+	
+	/**
+	 * Sends the output of the program (OPR 20 and 21) to the sink instead of InterpreterListener.writeScreen,
+	 * null to go back to the listener. The sink is flushed when the program ends, not closed.
+	 */
+	public void setOutput(OutputSink output) {
+		this.output = output;
+	}
+	
+	/**
+	 * Where OPR 22 to 25 (read an int, a float, a string or a boolean) take their values from.
+	 * The source is not rewound by reset, so a program can run again over the rest of the input.
+	 */
+	public void setInput(InputSource input) {
+		this.input = input;
+	}
+	
+	/**
+	 * Ends the program when register_zero would keep more than this many values, 0 for no limit.
+	 * Throws an IllegalStateException when register_zero already keeps more.
+	 */
+	public void setStackLimit(int stackLimit) {
+		this.stackLimit = stackLimit;
+		register_zero.setLimit(stackLimit());
+	}
+	
+	private int stackLimit() {
+		return stackLimit > 0 ? stackLimit : Integer.MAX_VALUE;
+	}
+	
+	/**
+	 * Instructions executed since the program was loaded or reset (superinstructions count as the instructions they replace).
+	 */
+	public long getExecuted() {
+		return executed;
+	}
+	
+	/**
+	 * Turns the PeepholeOptimizer on or off for the programs loaded from now on. It is on by default,
+	 * and off in the GUI unless Debug &gt; Optimize is checked, so students step through the code they wrote.
+	 */
+	public void setOptimize(boolean optimize) {
+		this.optimize = optimize;
+	}
+	
+	/**
+	 * Sets how many instructions are interpreted before the program is compiled to JVM code (see Jit),
+	 * 0 to compile it as soon as it runs or a negative number to never compile it. It is 100000 by default.
+	 */
+	public void setJitThreshold(int jitThreshold) {
+		this.jitThreshold = jitThreshold;
+	}
+	
+	/**
+	 * Sets the tracer that receives every executed instruction, or null to run without tracing.
+	 */
+	public void setTracer(ExecutionTracer tracer) {
+		this.tracer = tracer;
+	}
+	
+	public ExecutionTracer getTracer() {
+		return tracer;
+	}
+	
+	/**
+	 * The report of the tracer when it is a Profiler: time and executions by opcode, instruction and loop.
+	 */
+	public String profileReport() {
+		if (!(tracer instanceof Profiler) || program == null) {
+			return "There is no profile, load the program with profiling on.";
+		}
+		return ((Profiler) tracer).report(program);
+	}
+	
+	/**
+	 * Writes the records of the tracer to a file, when the tracer is a TraceBuffer.
+	 */
+	public void dumpTrace(Path path) throws IOException {
+		if (!(tracer instanceof TraceBuffer)) {
+			listener.writeConsole("ERROR: there is no trace buffer to write.");
+			return;
+		}
+		try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			((TraceBuffer) tracer).write(out, program == null ? new String[0] : program.slots);
+		}
+		listener.writeConsole("* Trace written to " + path);
+	}
+	
+	public Interpreter(InterpreterListener listener) {
+		symbolTable = new Hashtable<String, Vector<Symbol>>();
+		instructions = new Vector<Instruction>();
+		register_zero = new OperandStack();
+		this.listener = listener == null ? InterpreterListener.NONE : listener;
 	}
 	
 	public Interpreter() {
 		symbolTable = new Hashtable<String, Vector<Symbol>>();
 		instructions = new Vector<Instruction>();
-		register_zero = new Stack<>();
-		gui = new InterpreterUI("CSE340 - Virtual Machine", this);
+		register_zero = new OperandStack();
+		InterpreterUI gui = new InterpreterUI("CSE340 - Virtual Machine", this);
+		listener = gui;
 		gui.setVisible(true);
 	}
 	
+	/**
+	 * Without arguments it opens the GUI.
+	 * With a file name it loads the program (intermediate code or bytecode) from the file and runs it headless.
+	 * With -c input output it writes the intermediate code of input as bytecode into output.
+	 * With -trace output before the file name it keeps the last instructions executed in a TraceBuffer
+	 * (one of every n with -sample n) and writes them to output when the program ends, fails or is interrupted.
+	 * With -profile before the file name it writes a Profiler report to the console when the program ends.
+	 * With -noopt before the file name the program runs as it was written, without the PeepholeOptimizer.
+	 * With -jit n before the file name the program is compiled to JVM code after n instructions
+	 * (-1 never compiles it).
+	 * With -limit n, -timeout ms or -stack n before the file name the program ends after n instructions,
+	 * after ms milliseconds or when register_zero would keep more than n values.
+	 * With -checkpoint output before the file name it writes a Checkpoint to output every 10 million instructions
+	 * (every n with -every n) and when the program ends; with -resume input it continues from a checkpoint.
+	 * With -out output before the file name the output of the program goes to the file through a WriterSink,
+	 * passed on when the buffer is full or the program ends (-flush line or -flush always for sooner).
+	 * The program reads its input from standard input, or from a file with -in input.
+	 */
 	public static void main(String[] args) throws IOException {
-		Interpreter m = new Interpreter();
+		if (args.length == 0) {
+			Interpreter m = new Interpreter();
+			return;
+		}
+		ConsoleListener console = new ConsoleListener();
+		Interpreter m = new Interpreter(console);
+		if (args[0].equals("-c") && args.length == 3) {
+			m.load(Paths.get(args[1]));
+			if (console.hasErrors()) {
+				System.exit(1);
+			}
+			m.save(Paths.get(args[2]));
+			return;
+		}
+		Path trace = null;
+		Path checkpoint = null;
+		Path resume = null;
+		Path out = null;
+		Path in = null;
+		OutputSink.Flush flush = OutputSink.Flush.END;
+		long every = CHECKPOINT_EVERY;
+		boolean profile = false;
+		int sampling = 1;
+		int i = 0;
+		for (; i < args.length - 1 && args[i].startsWith("-"); i++) {
+			if (args[i].equals("-trace")) {
+				trace = Paths.get(args[++i]);
+			} else if (args[i].equals("-sample")) {
+				sampling = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-profile")) {
+				profile = true;
+			} else if (args[i].equals("-noopt")) {
+				m.setOptimize(false);
+			} else if (args[i].equals("-jit")) {
+				m.setJitThreshold(Integer.parseInt(args[++i]));
+			} else if (args[i].equals("-limit")) {
+				m.setInstructionLimit(Long.parseLong(args[++i]));
+			} else if (args[i].equals("-timeout")) {
+				m.setTimeLimit(Long.parseLong(args[++i]) * 1_000_000L);
+			} else if (args[i].equals("-stack")) {
+				m.setStackLimit(Integer.parseInt(args[++i]));
+			} else if (args[i].equals("-checkpoint")) {
+				checkpoint = Paths.get(args[++i]);
+			} else if (args[i].equals("-every")) {
+				every = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-resume")) {
+				resume = Paths.get(args[++i]);
+			} else if (args[i].equals("-in")) {
+				in = Paths.get(args[++i]);
+			} else if (args[i].equals("-out")) {
+				out = Paths.get(args[++i]);
+			} else if (args[i].equals("-flush")) {
+				flush = OutputSink.Flush.valueOf(args[++i].toUpperCase(Locale.ROOT));
+			}
+		}
+		if (profile && trace != null) {
+			console.writeConsole("ERROR: -profile and -trace cannot be used together.");
+			System.exit(1);
+		}
+		if (profile) {
+			m.setTracer(new Profiler());
+		}
+		if (trace != null) {
+			Path output = trace;
+			m.setTracer(new TraceBuffer(TRACE_CAPACITY, sampling));
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					m.dumpTrace(output);
+				} catch (IOException e) {
+					console.writeConsole("ERROR: writing the trace.\n" + e);
+				}
+			}));
+		}
+		m.setInput(in == null ? InputSource.stdin() : InputSource.of(in));
+		OutputSink sink = null;
+		if (out != null) {
+			sink = new WriterSink(Files.newBufferedWriter(out, StandardCharsets.UTF_8), OUTPUT_BUFFER, flush);
+			m.setOutput(sink);
+		}
+		m.load(Paths.get(args[i]));
+		if (resume != null) {
+			try {
+				m.restore(Files.readAllBytes(resume));
+			} catch (IOException e) {
+				console.writeConsole("ERROR: restoring " + resume + ", " + e.getMessage() + ".");
+				System.exit(1);
+			}
+		}
+		if (checkpoint == null) {
+			m.run();
+		} else {
+			long next = m.getExecuted() + every;
+			while (!m.runFor(CHECKPOINT_CHECK)) {
+				if (m.getExecuted() >= next) {
+					writeCheckpoint(m, checkpoint);
+					next = m.getExecuted() + every;
+				}
+			}
+			writeCheckpoint(m, checkpoint);
+			console.stop();
+		}
+		if (sink != null) {
+			sink.close();
+		}
+		if (profile) {
+			console.writeConsole(m.profileReport());
+		}
+		if (console.hasErrors()) {
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Replaces the checkpoint file in one move, so a crash never leaves half of it.
+	 */
+	private static void writeCheckpoint(Interpreter m, Path path) throws IOException {
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		Files.write(temporary, m.checkpoint());
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 	}
 	
 }
\ No newline at end of file
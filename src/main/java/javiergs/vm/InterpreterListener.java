@@ -0,0 +1,51 @@
+package javiergs.vm;
+
+/**
+ * Observer for the Virtual Machine.
+ * The Interpreter reports loading, execution and output through this interface,
+ * so it can run with a GUI (InterpreterUI) or without one (batch runs).
+ * Every method does nothing by default.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public interface InterpreterListener {
+
+	InterpreterListener NONE = new InterpreterListener() {
+	};
+
+	default void writeConsole(String msg) {
+	}
+
+	default void writeScreen(String msg) {
+	}
+
+	/**
+	 * True when the listener shows the loaded program (writeRam and writeCode for every symbol and instruction).
+	 */
+	default boolean showsCode() {
+		return false;
+	}
+
+	default void writeRam(String name, String type, String value) {
+	}
+
+	default void writeCode(String n, String name, String parameter1, String parameter2) {
+	}
+
+	default void writeRegistry(int n, String value) {
+	}
+
+	default void deleteRegistry() {
+	}
+
+	default void updateRam(String name, String value) {
+	}
+
+	default void writePC(int pc) {
+	}
+
+	default void stop() {
+	}
+
+}
@@ -9,19 +9,34 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
  * User Interface for the Virtual Machine
- * It shows the code, the console, the screen, the registry and the RAM
+ * It shows the code, the console, the screen, the registry and the RAM.
+ * "run all" runs the machine on a background thread and shows a Snapshot of it about 30 times per second;
+ * output written meanwhile is kept and appended once per frame.
+ * Programs are loaded as they were written, so the code shown is the code the compiler emitted;
+ * Debug &gt; Optimize loads them through the PeepholeOptimizer, and the code shown is then the optimized one.
  *
  * @author javiergs
  * @version 1.0
  */
-public class InterpreterUI extends JFrame implements ActionListener {
+public class InterpreterUI extends JFrame implements ActionListener, InterpreterListener {
+	
+	private static final long FRAME = 1_000_000_000L / 30;
 	
 	private final Interpreter vm;
+	private final HashMap<String, Integer> ramRows = new HashMap<>();
+	private final StringBuilder pendingConsole = new StringBuilder();
+	private final StringBuilder pendingScreen = new StringBuilder();
+	private volatile boolean pause;
+	private boolean running;
 	private JTextArea console;
 	private JTextArea screen;
+	private JTextArea profile;
 	public JTextArea editor;
 	private JTable ram;
 	private JTable code;
@@ -29,6 +44,8 @@ public class InterpreterUI extends JFrame implements ActionListener {
 	private JTextField pc = new JTextField("", 5);
 	private JMenuItem menuOpen = new JMenuItem("Open ...");
 	private JMenuItem menuRun = new JMenuItem("Load");
+	private JCheckBoxMenuItem menuProfile = new JCheckBoxMenuItem("Profile");
+	private JCheckBoxMenuItem menuOptimize = new JCheckBoxMenuItem("Optimize");
 	private JButton playStep = new JButton("run one step");
 	private JButton playAll = new JButton("run all");
 	private JTabbedPane tabbedPane = new JTabbedPane();
@@ -57,6 +74,8 @@ public class InterpreterUI extends JFrame implements ActionListener {
 		this.menuRun.addActionListener(this);
 		menuFile.add(menuOpen);
 		menuRun.add(this.menuRun);
+		menuRun.add(menuProfile);
+		menuRun.add(menuOptimize);
 		menuBar.add(menuFile);
 		menuBar.add(menuRun);
 		setJMenuBar(menuBar);
@@ -191,9 +210,15 @@ public class InterpreterUI extends JFrame implements ActionListener {
 		editorPanel.setBorder(panelTitle);
 		JScrollPane scrollEditor = new JScrollPane(editor);
 		editorPanel.add(scrollEditor);
+		// profile
+		profile = new JTextArea();
+		profile.setEditable(false);
+		profile.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		JScrollPane scrollProfile = new JScrollPane(profile);
 		// tabs
 		tabbedPane.addTab("Editor", editorPanel);
 		tabbedPane.addTab("Dashboard", vmPanel);
+		tabbedPane.addTab("Profile", scrollProfile);
 		tabbedPane.setSelectedIndex(0);
 		//main
 		setLayout(new GridLayout(1, 1));
@@ -201,28 +226,25 @@ public class InterpreterUI extends JFrame implements ActionListener {
 	}
 	
 	private boolean loadFile(String file) throws FileNotFoundException, IOException {
-		String line;
 		BufferedReader br = new BufferedReader(new FileReader(file));
 		writeConsole("Reading " + file);
-		line = br.readLine();
-		while (line != null) {
-			writeEditor(line);
-			line = br.readLine();
-		}
+		editor.read(br, file);
 		writeConsole("File loaded.");
 		br.close();
 		return true;
 	}
 	
+	public boolean showsCode() {
+		return true;
+	}
+	
 	public void updateRam(String p1, String value) {
-		for (int i = 0; i < ram.getModel().getRowCount(); i++) {
-			if (p1.equals(ram.getModel().getValueAt(i, 0))) {
-				ram.getModel().setValueAt(value, i, 2);
-				int pos = ram.getRowSorter().convertRowIndexToView(i);
-				ram.setRowSelectionInterval(pos, pos);
-			}
+		Integer i = ramRows.get(p1);
+		if (i != null) {
+			ram.getModel().setValueAt(value, i, 2);
+			int pos = ram.getRowSorter().convertRowIndexToView(i);
+			ram.setRowSelectionInterval(pos, pos);
 		}
-		
 	}
 	
 	public void writePC(int msg) {
@@ -231,14 +253,27 @@ public class InterpreterUI extends JFrame implements ActionListener {
 	}
 	
 	public void writeConsole(String msg) {
-		console.append(msg + "\n");
+		if (SwingUtilities.isEventDispatchThread()) {
+			console.append(msg + "\n");
+		} else {
+			synchronized (pendingConsole) {
+				pendingConsole.append(msg).append('\n');
+			}
+		}
 	}
 	
 	public void writeScreen(String msg) {
-		screen.append(msg);
+		if (SwingUtilities.isEventDispatchThread()) {
+			screen.append(msg);
+		} else {
+			synchronized (pendingScreen) {
+				pendingScreen.append(msg);
+			}
+		}
 	}
 	
 	public void writeRam(String a, String b, String c) {
+		ramRows.put(a, ram.getModel().getRowCount());
 		((DefaultTableModel) ram.getModel()).addRow(new Object[]{a, b, c});
 	}
 	
@@ -250,10 +285,6 @@ public class InterpreterUI extends JFrame implements ActionListener {
 		((DefaultTableModel) registry.getModel()).addRow(new Object[]{String.format("%04d", n), a});
 	}
 	
-	private void writeEditor(String msg) {
-		editor.append(msg + "\n");
-	}
-	
 	public void deleteRegistry() {
 		int size = ((DefaultTableModel) registry.getModel()).getRowCount();
 		((DefaultTableModel) registry.getModel()).removeRow(size - 1);
@@ -263,6 +294,90 @@ public class InterpreterUI extends JFrame implements ActionListener {
 		playStep.setEnabled(false);
 		playAll.setEnabled(false);
 		code.getSelectionModel().clearSelection();
+		if (vm.getTracer() instanceof Profiler) {
+			profile.setText(vm.profileReport());
+			profile.setCaretPosition(0);
+		}
+	}
+	
+	/**
+	 * Runs the program on a SwingWorker until it ends or "stop" is pressed.
+	 */
+	private void runAll() {
+		running = true;
+		pause = false;
+		playStep.setEnabled(false);
+		playAll.setText("stop");
+		menuOpen.setEnabled(false);
+		menuRun.setEnabled(false);
+		new SwingWorker<Snapshot, Snapshot>() {
+			@Override
+			protected Snapshot doInBackground() {
+				while (!pause && !vm.runFor(FRAME)) {
+					publish(vm.snapshot(false));
+				}
+				return vm.snapshot(true);
+			}
+			
+			@Override
+			protected void process(List<Snapshot> snapshots) {
+				// when the run is over done() shows the whole final state
+				if (!isDone()) {
+					for (Snapshot snapshot : snapshots) {
+						show(snapshot);
+					}
+				}
+				flushOutput();
+			}
+			
+			@Override
+			protected void done() {
+				running = false;
+				flushOutput();
+				playAll.setText("run all");
+				playStep.setEnabled(true);
+				menuOpen.setEnabled(true);
+				menuRun.setEnabled(true);
+				try {
+					Snapshot snapshot = get();
+					show(snapshot);
+					if (snapshot.finished) {
+						stop();
+					}
+				} catch (InterruptedException | ExecutionException e) {
+					writeConsole(e.toString());
+				}
+			}
+		}.execute();
+	}
+	
+	private void show(Snapshot snapshot) {
+		for (int i = 0; i < snapshot.names.length; i++) {
+			Integer row = ramRows.get(snapshot.names[i]);
+			if (row != null) {
+				ram.getModel().setValueAt(snapshot.values[i], row, 2);
+			}
+		}
+		DefaultTableModel model = (DefaultTableModel) registry.getModel();
+		model.setRowCount(0);
+		for (String value : snapshot.registry) {
+			model.addRow(new Object[]{String.format("%04d", snapshot.pc + 1), value});
+		}
+		pc.setText(String.format("%04d", snapshot.pc + 1));
+		if (snapshot.pc < code.getRowCount()) {
+			code.setRowSelectionInterval(snapshot.pc, snapshot.pc);
+		}
+	}
+	
+	private void flushOutput() {
+		synchronized (pendingConsole) {
+			console.append(pendingConsole.toString());
+			pendingConsole.setLength(0);
+		}
+		synchronized (pendingScreen) {
+			screen.append(pendingScreen.toString());
+			pendingScreen.setLength(0);
+		}
 	}
 	
 	public void clearDashboard() {
@@ -270,18 +385,11 @@ public class InterpreterUI extends JFrame implements ActionListener {
 		screen.setText("");
 		playStep.setEnabled(true);
 		playAll.setEnabled(true);
-		int ta = registry.getModel().getRowCount();
-		for (int i = 0; i < ta; i++) {
-			((DefaultTableModel) registry.getModel()).removeRow(0);
-		}
-		int tb = ram.getModel().getRowCount();
-		for (int i = 0; i < tb; i++) {
-			((DefaultTableModel) ram.getModel()).removeRow(0);
-		}
-		int tc = code.getModel().getRowCount();
-		for (int i = 0; i < tc; i++) {
-			((DefaultTableModel) code.getModel()).removeRow(0);
-		}
+		((DefaultTableModel) registry.getModel()).setRowCount(0);
+		((DefaultTableModel) ram.getModel()).setRowCount(0);
+		((DefaultTableModel) code.getModel()).setRowCount(0);
+		ramRows.clear();
+		profile.setText("");
 	}
 	
 	@Override
@@ -305,12 +413,18 @@ public class InterpreterUI extends JFrame implements ActionListener {
 			}
 		} else if (menuRun.equals(e.getSource())) {
 			clearDashboard();
+			vm.setTracer(menuProfile.isSelected() ? new Profiler() : null);
+			vm.setOptimize(menuOptimize.isSelected());
 			vm.init(editor.getText());
 			tabbedPane.setSelectedIndex(1);
 		} else if (playStep.equals(e.getSource())) {
 			vm.go("step");
 		} else if (playAll.equals(e.getSource())) {
-			vm.go("all");
+			if (running) {
+				pause = true;
+			} else {
+				runAll();
+			}
 		}
 	}
 	
@@ -0,0 +1,794 @@
+package javiergs.vm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Template compiler from a specialized Program to a JVM class, so HotSpot compiles the program
+ * instead of the Interpreter dispatching it instruction by instruction.
+ * Every instruction becomes a fixed sequence of JVM instructions: variables live in JVM locals,
+ * register_zero is the JVM operand stack and JMP and JMC are JVM branches.
+ * Arrays are JVM arrays too, taken from memory into locals when the method starts and changed in place.
+ * The class is written by hand (version 49, so it needs no stack map frames) and defined as a hidden class
+ * in this package.
+ * <p>
+ * The generated method is
+ * {@code static int run(int pc, int[] ints, float[] floats, int budget, Interpreter, long[] executed)}.
+ * It starts at any instruction where register_zero is empty, counts down budget on every backward jump and,
+ * when it reaches zero, returns the instruction to resume at. When the program ends it returns -(pc + 1).
+ * Variables are copied back to memory, and the instructions executed to executed[0], whenever it returns or throws
+ * (they are counted by basic block, so an instruction that throws counts the rest of its block).
+ * <p>
+ * Only programs where TypeInference knows a single type (int, float or boolean) for every value and every
+ * variable are compiled; strings, generic JMC, errors and undefined operators keep the whole program
+ * in the Interpreter.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+final class Jit {
+
+	private static final int INT = 1 << Type.INT;
+	private static final int FLOAT = 1 << Type.FLOAT;
+	private static final int BOOLEAN = 1 << Type.BOOLEAN;
+
+	private static final String CLASS = "javiergs/vm/JitProgram";
+	// JVM array class, load and store (iaload, faload, baload, iastore, fastore, bastore) by Type tag
+	private static final String[] ARRAY_DESCRIPTORS = {"[I", "[F", "[Z"};
+	private static final int[] ARRAY_LOADS = {0x2e, 0x30, 0x33};
+	private static final int[] ARRAY_STORES = {0x4f, 0x51, 0x54};
+	private static final String DESCRIPTOR = "(I[I[FILjaviergs/vm/Interpreter;[J)I";
+	// locals of the generated method
+	private static final int PC = 0;
+	private static final int INTS = 1;
+	private static final int FLOATS = 2;
+	private static final int BUDGET = 3;
+	private static final int INTERPRETER = 4;
+	private static final int EXECUTED = 5;
+	private static final int RESULT = 6;
+	// a long, two locals
+	private static final int COUNT = 7;
+	private static final int VARIABLES = 9;
+
+	private final Program program;
+	private final TypeInference types;
+	private final boolean[] entries;
+	private final long[] executed = new long[1];
+	private MethodHandle run;
+	private int codeSize;
+	private int maxDepth;
+
+	// class writer state
+	private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private final DataOutputStream constants = new DataOutputStream(pool);
+	private final HashMap<String, Integer> constantIndex = new HashMap<>();
+	private int constantCount = 1;
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	private final ArrayList<Integer> labels = new ArrayList<>();
+	private final ArrayList<int[]> fixups = new ArrayList<>();
+
+	private Jit(Program program, TypeInference types) {
+		this.program = program;
+		this.types = types;
+		entries = new boolean[program.size()];
+	}
+
+	/**
+	 * Compiles a program specialized by types.
+	 *
+	 * @throws UnsupportedOperationException with the reason when the program cannot be compiled
+	 */
+	static Jit compile(Program program, TypeInference types) {
+		Jit jit = new Jit(program, types);
+		byte[] classFile = jit.generate();
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+			jit.run = lookup.findStatic(lookup.lookupClass(), "run", MethodType.methodType(int.class, int.class,
+				int[].class, float[].class, int.class, Interpreter.class, long[].class));
+		} catch (ReflectiveOperationException | LinkageError e) {
+			throw new UnsupportedOperationException("the generated class was rejected: " + e);
+		}
+		return jit;
+	}
+
+	/**
+	 * True when the compiled code can start at instruction pc (register_zero must be empty).
+	 */
+	boolean isEntry(int pc) {
+		return pc >= 0 && pc < entries.length && entries[pc];
+	}
+
+	int run(int pc, Memory memory, int budget, Interpreter interpreter) throws Throwable {
+		executed[0] = 0;
+		return (int) run.invokeExact(pc, memory.ints, memory.floats, budget, interpreter, executed);
+	}
+
+	/**
+	 * Instructions executed by the last run.
+	 */
+	long executed() {
+		return executed[0];
+	}
+
+	/**
+	 * Most values register_zero keeps in the compiled code.
+	 */
+	int maxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * Bytes of JVM code generated.
+	 */
+	int codeSize() {
+		return codeSize;
+	}
+
+	/**
+	 * Called by the generated code for OPR 20 and 21.
+	 */
+	static void print(String text, Interpreter interpreter, boolean line) {
+		interpreter.print(line ? " " + text + "\n" : " " + text);
+	}
+
+	/**
+	 * Called by the generated code for OPR 22, 23 and 25.
+	 */
+	static int readInt(Interpreter interpreter) {
+		return interpreter.input().nextInt();
+	}
+
+	static float readFloat(Interpreter interpreter) {
+		return interpreter.input().nextFloat();
+	}
+
+	static boolean readBoolean(Interpreter interpreter) {
+		return interpreter.input().nextBoolean();
+	}
+
+	/**
+	 * Called by the generated code to take the arrays it uses from memory.
+	 */
+	static Object array(Interpreter interpreter, int slot) {
+		return interpreter.array(slot);
+	}
+
+	// code generation
+
+	private byte[] generate() {
+		int size = program.size();
+		if (!types.infer()) {
+			throw new UnsupportedOperationException("register_zero has a different size on two paths");
+		}
+		int slots = program.slots.length;
+		int[] variables = new int[slots];
+		boolean[] used = new boolean[slots];
+		boolean[] arrays = new boolean[slots];
+		for (int pc = 0; pc < size; pc++) {
+			int[] stack = types.stackAt(pc);
+			if (stack == null) {
+				continue;
+			}
+			maxDepth = Math.max(maxDepth, depthAfter(pc, stack.length));
+			for (int type : stack) {
+				single(type, pc);
+			}
+			int opcode = program.opcodes[pc];
+			if (opcode == Opcode.LOD || opcode == Opcode.STO || opcode == Opcode.STL) {
+				int slot = program.operands[pc];
+				variables[slot] = single(types.variable(slot), pc);
+				used[slot] = true;
+			} else if (opcode >= Opcode.LDX_INT && opcode <= Opcode.STX_BOOLEAN) {
+				arrays[program.operands[pc]] = true;
+			}
+			entries[pc] = stack.length == 0;
+		}
+		int[] pcLabels = new int[size];
+		for (int pc = 0; pc < size; pc++) {
+			pcLabels[pc] = label();
+		}
+		int writeBack = label();
+		int body = label();
+		// prologue: variables from memory into locals
+		for (int slot = 0; slot < slots; slot++) {
+			if (used[slot]) {
+				boolean isFloat = variables[slot] == FLOAT;
+				local(0x19, isFloat ? FLOATS : INTS);
+				pushInt(slot);
+				code(isFloat ? 0x30 : 0x2e);
+				local(isFloat ? 0x38 : 0x36, VARIABLES + slot);
+			} else if (arrays[slot]) {
+				local(0x19, INTERPRETER);
+				pushInt(slot);
+				invoke("javiergs/vm/Jit", "array", "(Ljaviergs/vm/Interpreter;I)Ljava/lang/Object;");
+				int type = classRef(ARRAY_DESCRIPTORS[Type.elementType(program.memory.refs[slot])]);
+				code(0xc0);
+				code(type >> 8);
+				code(type);
+				local(0x3a, VARIABLES + slot);
+			}
+		}
+		code(0x02);
+		local(0x36, RESULT);
+		code(0x09);
+		local(0x37, COUNT);
+		int tryStart = mark(body);
+		// entry
+		local(0x15, PC);
+		int entryCount = 0;
+		for (boolean entry : entries) {
+			entryCount += entry ? 1 : 0;
+		}
+		int exitDefault = label();
+		int switchAt = bytes.size();
+		code(0xab);
+		while (bytes.size() % 4 != 0) {
+			code(0);
+		}
+		switchBranch(switchAt, exitDefault);
+		int4(entryCount);
+		for (int pc = 0; pc < size; pc++) {
+			if (entries[pc]) {
+				int4(pc);
+				switchBranch(switchAt, pcLabels[pc]);
+			}
+		}
+		// instructions
+		boolean[] leaders = leaders();
+		ArrayList<int[]> stubs = new ArrayList<>();
+		for (int pc = 0; pc < size; pc++) {
+			int[] stack = types.stackAt(pc);
+			if (stack == null) {
+				continue;
+			}
+			if (stack.length < Opcode.POPS[program.opcodes[pc]]) {
+				throw unsupported("empty register_zero", pc);
+			}
+			mark(pcLabels[pc]);
+			if (leaders[pc]) {
+				count(pc, leaders);
+			}
+			int top = stack.length > 0 ? stack[stack.length - 1] : 0;
+			int second = stack.length > 1 ? stack[stack.length - 2] : 0;
+			int operand = program.operands[pc];
+			boolean fallsThrough = true;
+			switch (program.opcodes[pc]) {
+				case Opcode.LIT_INT:
+					pushInt(operand);
+					break;
+				case Opcode.LIT_FLOAT:
+					pushFloat(operand);
+					break;
+				case Opcode.LIT_BOOLEAN:
+					pushInt(operand != 0 ? 1 : 0);
+					break;
+				case Opcode.LOD:
+					local(variables[operand] == FLOAT ? 0x17 : 0x15, VARIABLES + operand);
+					break;
+				case Opcode.STL:
+					code(0x59);
+					store(variables, operand, top, pc);
+					break;
+				case Opcode.STO:
+					store(variables, operand, top, pc);
+					break;
+				case Opcode.JMP:
+					branch(0xa7, target(pc, operand, stack.length, pcLabels, stubs));
+					fallsThrough = false;
+					break;
+				case Opcode.JMC_TRUE:
+					branch(0x9a, target(pc, operand, stack.length - 1, pcLabels, stubs));
+					break;
+				case Opcode.JMC_FALSE:
+					branch(0x99, target(pc, operand, stack.length - 1, pcLabels, stubs));
+					break;
+				case Opcode.EXIT:
+					if (stack.length != 0) {
+						throw unsupported("values left in register_zero", pc);
+					}
+					pushInt(-(pc + 1));
+					local(0x36, RESULT);
+					branch(0xa7, writeBack);
+					fallsThrough = false;
+					break;
+				case Opcode.NOP:
+					break;
+				case Opcode.ADD:
+				case Opcode.SUB:
+				case Opcode.MUL:
+				case Opcode.DIV:
+					arithmetic(program.opcodes[pc] - Opcode.ADD, second, top, pc);
+					break;
+				case Opcode.OR_BOOLEAN:
+					code(0x80);
+					break;
+				case Opcode.AND_BOOLEAN:
+					code(0x7e);
+					break;
+				case Opcode.NOT_BOOLEAN:
+					code(0x04);
+					code(0x82);
+					break;
+				case Opcode.GT_INT:
+					compare(-1, 0xa4);
+					break;
+				case Opcode.LT_INT:
+					compare(-1, 0xa2);
+					break;
+				case Opcode.EQ_INT:
+				case Opcode.EQ_BOOLEAN:
+					compare(-1, 0xa0);
+					break;
+				case Opcode.NE_INT:
+				case Opcode.NE_BOOLEAN:
+					compare(-1, 0x9f);
+					break;
+				case Opcode.GT_FLOAT:
+					compare(0x95, 0x9e);
+					break;
+				case Opcode.LT_FLOAT:
+					compare(0x96, 0x9c);
+					break;
+				case Opcode.EQ_FLOAT:
+				case Opcode.NE_FLOAT:
+					invoke("java/lang/Float", "floatToIntBits", "(F)I");
+					code(0x5f);
+					invoke("java/lang/Float", "floatToIntBits", "(F)I");
+					compare(-1, program.opcodes[pc] == Opcode.EQ_FLOAT ? 0xa0 : 0x9f);
+					break;
+				case Opcode.PRINT:
+				case Opcode.PRINTLN:
+					invoke("java/lang/String", "valueOf", top == FLOAT ? "(F)Ljava/lang/String;"
+						: top == BOOLEAN ? "(Z)Ljava/lang/String;" : "(I)Ljava/lang/String;");
+					local(0x19, INTERPRETER);
+					pushInt(program.opcodes[pc] == Opcode.PRINTLN ? 1 : 0);
+					invoke("javiergs/vm/Jit", "print", "(Ljava/lang/String;Ljaviergs/vm/Interpreter;Z)V");
+					break;
+				case Opcode.READ_INT:
+					local(0x19, INTERPRETER);
+					invoke("javiergs/vm/Jit", "readInt", "(Ljaviergs/vm/Interpreter;)I");
+					break;
+				case Opcode.READ_FLOAT:
+					local(0x19, INTERPRETER);
+					invoke("javiergs/vm/Jit", "readFloat", "(Ljaviergs/vm/Interpreter;)F");
+					break;
+				case Opcode.READ_BOOLEAN:
+					local(0x19, INTERPRETER);
+					invoke("javiergs/vm/Jit", "readBoolean", "(Ljaviergs/vm/Interpreter;)Z");
+					break;
+				case Opcode.LDX_INT:
+				case Opcode.LDX_FLOAT:
+				case Opcode.LDX_BOOLEAN:
+					if (top != INT) {
+						throw unsupported("array index that is not an int", pc);
+					}
+					local(0x19, VARIABLES + operand);
+					code(0x5f);
+					code(ARRAY_LOADS[program.opcodes[pc] - Opcode.LDX_INT]);
+					break;
+				case Opcode.STX_INT:
+				case Opcode.STX_FLOAT:
+				case Opcode.STX_BOOLEAN: {
+					int element = program.opcodes[pc] - Opcode.STX_INT;
+					if (second != INT) {
+						throw unsupported("array index that is not an int", pc);
+					}
+					if (element == Type.FLOAT && top == INT) {
+						code(0x86);
+					} else if (top != 1 << element) {
+						throw unsupported("STX of another type", pc);
+					}
+					// array under the index and the value: aload, dup_x2, pop
+					local(0x19, VARIABLES + operand);
+					code(0x5b);
+					code(0x57);
+					code(ARRAY_STORES[element]);
+					break;
+				}
+				default:
+					throw unsupported(Opcode.NAMES[program.opcodes[pc]], pc);
+			}
+			if (fallsThrough && pc + 1 >= size) {
+				// the last instruction ends the program
+				branch(0xa7, target(pc, size, depthAfter(pc, stack.length), pcLabels, stubs));
+			}
+		}
+		// backward jumps and exits
+		for (int[] stub : stubs) {
+			mark(stub[0]);
+			if (stub[2] >= 0) {
+				code(0x84);
+				code(BUDGET);
+				code(0xff);
+				local(0x15, BUDGET);
+				branch(0x9d, pcLabels[stub[2]]);
+				pushInt(stub[2]);
+			} else {
+				pushInt(stub[1]);
+			}
+			local(0x36, RESULT);
+			branch(0xa7, writeBack);
+		}
+		mark(exitDefault);
+		pushInt(-1);
+		local(0x36, RESULT);
+		int tryEnd = bytes.size();
+		mark(writeBack);
+		writeBack(used, variables);
+		local(0x15, RESULT);
+		code(0xac);
+		int handler = bytes.size();
+		writeBack(used, variables);
+		code(0xbf);
+		codeSize = bytes.size();
+		if (codeSize > Short.MAX_VALUE) {
+			throw new UnsupportedOperationException("the program needs more than " + Short.MAX_VALUE + " bytes of JVM code");
+		}
+		byte[] code = bytes.toByteArray();
+		for (int[] fixup : fixups) {
+			int offset = labels.get(fixup[2]) - fixup[0];
+			if (fixup[3] == 4) {
+				code[fixup[1]] = (byte) (offset >> 24);
+				code[fixup[1] + 1] = (byte) (offset >> 16);
+				code[fixup[1] + 2] = (byte) (offset >> 8);
+				code[fixup[1] + 3] = (byte) offset;
+			} else {
+				code[fixup[1]] = (byte) (offset >> 8);
+				code[fixup[1] + 1] = (byte) offset;
+			}
+		}
+		return classFile(code, maxDepth + 4, VARIABLES + slots, tryStart, tryEnd, handler);
+	}
+
+	/**
+	 * First instructions of the basic blocks: where the compiled code can start, jump targets
+	 * and the instructions after a jump or the end of the program.
+	 */
+	private boolean[] leaders() {
+		int size = program.size();
+		boolean[] leaders = entries.clone();
+		for (int pc = 0; pc < size; pc++) {
+			int opcode = program.opcodes[pc];
+			if (opcode == Opcode.JMP || opcode == Opcode.JMC_TRUE || opcode == Opcode.JMC_FALSE || opcode == Opcode.EXIT) {
+				if (pc + 1 < size) {
+					leaders[pc + 1] = true;
+				}
+				int target = program.operands[pc];
+				if (opcode != Opcode.EXIT && target >= 0 && target < size) {
+					leaders[target] = true;
+				}
+			}
+		}
+		return leaders;
+	}
+
+	/**
+	 * Adds the length of the basic block that starts at pc to the count of executed instructions.
+	 */
+	private void count(int pc, boolean[] leaders) {
+		int length = 1;
+		while (pc + length < leaders.length && !leaders[pc + length]) {
+			length++;
+		}
+		local(0x16, COUNT);
+		pushInt(length);
+		code(0x85);
+		code(0x61);
+		local(0x37, COUNT);
+	}
+
+	/**
+	 * Values in register_zero after instruction pc, for the ones that can be the last instruction.
+	 */
+	private int depthAfter(int pc, int depth) {
+		int opcode = program.opcodes[pc];
+		boolean pushes = opcode <= Opcode.LOD || opcode == Opcode.STL || (opcode >= Opcode.ADD && opcode <= Opcode.NE)
+			|| (opcode >= Opcode.OR_BOOLEAN && opcode <= Opcode.NE_STRING)
+			|| (opcode >= Opcode.READ_INT && opcode <= Opcode.LDX_BOOLEAN);
+		return depth - Opcode.POPS[opcode] + (pushes ? 1 : 0);
+	}
+
+	/**
+	 * Label a jump from pc goes to: the instruction itself when it is forward, a stub that counts down the budget
+	 * when it is backward and a stub that returns when it is out of the program.
+	 */
+	private int target(int pc, int target, int depth, int[] pcLabels, ArrayList<int[]> stubs) {
+		if (target < 0) {
+			throw unsupported("jump to instruction " + (target + 1), pc);
+		}
+		if (target >= program.size()) {
+			if (depth != 0) {
+				throw unsupported("values left in register_zero", pc);
+			}
+			int stub = label();
+			stubs.add(new int[]{stub, -(pc + 1), -1});
+			return stub;
+		}
+		if (target > pc) {
+			return pcLabels[target];
+		}
+		if (!entries[target]) {
+			throw unsupported("backward jump with values in register_zero", pc);
+		}
+		int stub = label();
+		stubs.add(new int[]{stub, 0, target});
+		return stub;
+	}
+
+	private void arithmetic(int operation, int first, int second, int pc) {
+		if (first == INT && second == INT) {
+			code(0x60 + operation * 4);
+		} else if ((first == INT || first == FLOAT) && (second == INT || second == FLOAT)) {
+			if (second == INT) {
+				code(0x86);
+			}
+			if (first == INT) {
+				code(0x5f);
+				code(0x86);
+				code(0x5f);
+			}
+			code(0x62 + operation * 4);
+		} else {
+			throw unsupported("OPR " + (operation + 2) + " with strings or booleans", pc);
+		}
+	}
+
+	/**
+	 * Pushes 1 when the comparison is true: an optional fcmp instruction and the branch that skips to 0.
+	 */
+	private void compare(int fcmp, int branchIfFalse) {
+		if (fcmp != -1) {
+			code(fcmp);
+		}
+		int no = label();
+		int end = label();
+		branch(branchIfFalse, no);
+		code(0x04);
+		branch(0xa7, end);
+		mark(no);
+		code(0x03);
+		mark(end);
+	}
+
+	private void writeBack(boolean[] used, int[] variables) {
+		local(0x19, EXECUTED);
+		code(0x03);
+		local(0x16, COUNT);
+		code(0x50);
+		for (int slot = 0; slot < used.length; slot++) {
+			if (used[slot]) {
+				boolean isFloat = variables[slot] == FLOAT;
+				local(0x19, isFloat ? FLOATS : INTS);
+				pushInt(slot);
+				local(isFloat ? 0x17 : 0x15, VARIABLES + slot);
+				code(isFloat ? 0x51 : 0x4f);
+			}
+		}
+	}
+
+	private int single(int type, int pc) {
+		if (type != INT && type != FLOAT && type != BOOLEAN) {
+			throw unsupported(type == 0 ? "unknown types" : "strings or mixed types", pc);
+		}
+		return type;
+	}
+
+	private static UnsupportedOperationException unsupported(String what, int pc) {
+		return new UnsupportedOperationException(what + " at instruction " + (pc + 1));
+	}
+
+	// JVM instructions
+
+	private void code(int b) {
+		bytes.write(b);
+	}
+
+	private void int4(int value) {
+		code(value >>> 24);
+		code(value >>> 16);
+		code(value >>> 8);
+		code(value);
+	}
+
+	private void pushInt(int value) {
+		if (value >= -1 && value <= 5) {
+			code(0x03 + value);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			code(0x10);
+			code(value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			code(0x11);
+			code(value >> 8);
+			code(value);
+		} else {
+			ldc(constant(3, value));
+		}
+	}
+
+	private void pushFloat(int bits) {
+		if (bits == Float.floatToRawIntBits(0f)) {
+			code(0x0b);
+		} else if (bits == Float.floatToRawIntBits(1f)) {
+			code(0x0c);
+		} else if (bits == Float.floatToRawIntBits(2f)) {
+			code(0x0d);
+		} else {
+			ldc(constant(4, bits));
+		}
+	}
+
+	private void ldc(int index) {
+		if (index < 256) {
+			code(0x12);
+			code(index);
+		} else {
+			code(0x13);
+			code(index >> 8);
+			code(index);
+		}
+	}
+
+	/**
+	 * istore or fstore of the value on top (of type top) into the local of a variable.
+	 */
+	private void store(int[] variables, int slot, int top, int pc) {
+		if (top != variables[slot]) {
+			throw unsupported("STO of another type", pc);
+		}
+		local(variables[slot] == FLOAT ? 0x38 : 0x36, VARIABLES + slot);
+	}
+
+	/**
+	 * iload, fload, aload, istore, fstore or astore of a local, with the wide prefix when it needs it.
+	 */
+	private void local(int opcode, int index) {
+		if (index < 256) {
+			code(opcode);
+			code(index);
+		} else {
+			code(0xc4);
+			code(opcode);
+			code(index >> 8);
+			code(index);
+		}
+	}
+
+	private void invoke(String owner, String name, String descriptor) {
+		int index = methodRef(owner, name, descriptor);
+		code(0xb8);
+		code(index >> 8);
+		code(index);
+	}
+
+	private int label() {
+		labels.add(-1);
+		return labels.size() - 1;
+	}
+
+	private int mark(int label) {
+		labels.set(label, bytes.size());
+		return bytes.size();
+	}
+
+	private void branch(int opcode, int label) {
+		fixups.add(new int[]{bytes.size(), bytes.size() + 1, label, 2});
+		code(opcode);
+		code(0);
+		code(0);
+	}
+
+	private void switchBranch(int switchAt, int label) {
+		fixups.add(new int[]{switchAt, bytes.size(), label, 4});
+		int4(0);
+	}
+
+	// class file
+
+	private int constant(int tag, int value) {
+		String key = tag + ":" + value;
+		Integer index = constantIndex.get(key);
+		if (index == null) {
+			try {
+				constants.writeByte(tag);
+				constants.writeInt(value);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			index = constantCount++;
+			constantIndex.put(key, index);
+		}
+		return index;
+	}
+
+	private int utf8(String text) {
+		String key = "1:" + text;
+		Integer index = constantIndex.get(key);
+		if (index == null) {
+			try {
+				constants.writeByte(1);
+				constants.writeUTF(text);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			index = constantCount++;
+			constantIndex.put(key, index);
+		}
+		return index;
+	}
+
+	private int reference(int tag, int first, int second) {
+		String key = tag + ":" + first + ":" + second;
+		Integer index = constantIndex.get(key);
+		if (index == null) {
+			try {
+				constants.writeByte(tag);
+				constants.writeShort(first);
+				if (second >= 0) {
+					constants.writeShort(second);
+				}
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			index = constantCount++;
+			constantIndex.put(key, index);
+		}
+		return index;
+	}
+
+	private int classRef(String name) {
+		return reference(7, utf8(name), -1);
+	}
+
+	private int methodRef(String owner, String name, String descriptor) {
+		return reference(10, classRef(owner), reference(12, utf8(name), utf8(descriptor)));
+	}
+
+	private byte[] classFile(byte[] code, int maxStack, int maxLocals, int tryStart, int tryEnd, int handler) {
+		int thisClass = classRef(CLASS);
+		int superClass = classRef("java/lang/Object");
+		int name = utf8("run");
+		int descriptor = utf8(DESCRIPTOR);
+		int codeName = utf8("Code");
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(file)) {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(49);
+			out.writeShort(constantCount);
+			pool.writeTo(out);
+			out.writeShort(0x0001 | 0x0010 | 0x0020);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0);
+			out.writeShort(0);
+			out.writeShort(1);
+			out.writeShort(0x0001 | 0x0008);
+			out.writeShort(name);
+			out.writeShort(descriptor);
+			out.writeShort(1);
+			out.writeShort(codeName);
+			out.writeInt(2 + 2 + 4 + code.length + 2 + 8 + 2);
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(code.length);
+			out.write(code);
+			out.writeShort(1);
+			out.writeShort(tryStart);
+			out.writeShort(tryEnd);
+			out.writeShort(handler);
+			out.writeShort(0);
+			out.writeShort(0);
+			out.writeShort(0);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return file.toByteArray();
+	}
+
+}
@@ -0,0 +1,70 @@
+package javiergs.vm;
+
+/**
+ * Memory of the Virtual Machine, one slot per symbol of the Program.
+ * Values are kept in primitive lanes (see Type), so storing a number does not allocate.
+ * Array slots keep their elements in one primitive array each.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+final class Memory {
+
+	final byte[] types;
+	final int[] ints;
+	final float[] floats;
+	final Object[] refs;
+
+	Memory(int size) {
+		types = new byte[size];
+		ints = new int[size];
+		floats = new float[size];
+		refs = new Object[size];
+	}
+
+	/**
+	 * Initializes a slot with the value of a symbol from the symbol table.
+	 */
+	void set(int slot, Symbol symbol) {
+		Object value = symbol.getValue();
+		if (value instanceof Integer) {
+			types[slot] = Type.INT;
+			ints[slot] = (Integer) value;
+		} else if (value instanceof Float) {
+			types[slot] = Type.FLOAT;
+			floats[slot] = (Float) value;
+		} else if (value instanceof Boolean) {
+			types[slot] = Type.BOOLEAN;
+			ints[slot] = (Boolean) value ? 1 : 0;
+		} else if (value instanceof int[] || value instanceof float[] || value instanceof boolean[]) {
+			types[slot] = Type.ARRAY;
+			refs[slot] = Type.copyArray(value);
+		} else {
+			types[slot] = Type.STRING;
+			refs[slot] = String.valueOf(value);
+		}
+	}
+
+	Memory copy() {
+		Memory copy = new Memory(size());
+		System.arraycopy(types, 0, copy.types, 0, types.length);
+		System.arraycopy(ints, 0, copy.ints, 0, ints.length);
+		System.arraycopy(floats, 0, copy.floats, 0, floats.length);
+		System.arraycopy(refs, 0, copy.refs, 0, refs.length);
+		for (int slot = 0; slot < types.length; slot++) {
+			if (types[slot] == Type.ARRAY) {
+				copy.refs[slot] = Type.copyArray(refs[slot]);
+			}
+		}
+		return copy;
+	}
+
+	String toString(int slot) {
+		return Type.toString(types[slot], ints[slot], floats[slot], refs[slot]);
+	}
+
+	int size() {
+		return types.length;
+	}
+
+}
@@ -0,0 +1,200 @@
+package javiergs.vm;
+
+/**
+ * Opcodes of the decoded program.
+ * Every OPR sub-operation gets its own opcode so the execution loop needs a single switch.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+final class Opcode {
+
+	static final int LIT_INT = 0;
+	static final int LIT_FLOAT = 1;
+	static final int LIT_BOOLEAN = 2;
+	static final int LIT_STRING = 3;
+	static final int LOD = 4;
+	static final int STO = 5;
+	static final int JMP = 6;
+	static final int JMC = 7;
+	static final int EXIT = 8;
+	static final int NOP = 9;
+	static final int ADD = 10;
+	static final int SUB = 11;
+	static final int MUL = 12;
+	static final int DIV = 13;
+	static final int OR = 14;
+	static final int AND = 15;
+	static final int NOT = 16;
+	static final int GT = 17;
+	static final int LT = 18;
+	static final int EQ = 19;
+	static final int NE = 20;
+	static final int PRINT = 21;
+	static final int PRINTLN = 22;
+	static final int UNDEFINED = 23;
+	static final int ERROR = 24;
+	// specialized by TypeInference when the types of the operands are known
+	static final int JMC_TRUE = 25;
+	static final int JMC_FALSE = 26;
+	static final int OR_BOOLEAN = 27;
+	static final int AND_BOOLEAN = 28;
+	static final int NOT_BOOLEAN = 29;
+	static final int GT_INT = 30;
+	static final int GT_FLOAT = 31;
+	static final int LT_INT = 32;
+	static final int LT_FLOAT = 33;
+	static final int EQ_INT = 34;
+	static final int EQ_FLOAT = 35;
+	static final int EQ_BOOLEAN = 36;
+	static final int EQ_STRING = 37;
+	static final int NE_INT = 38;
+	static final int NE_FLOAT = 39;
+	static final int NE_BOOLEAN = 40;
+	static final int NE_STRING = 41;
+	// written by PeepholeOptimizer: STO that keeps the value in register_zero (STO x followed by LOD x)
+	static final int STL = 42;
+	// read the next value of the input (OPR 22 to 25)
+	static final int READ_INT = 43;
+	static final int READ_FLOAT = 44;
+	static final int READ_STRING = 45;
+	static final int READ_BOOLEAN = 46;
+	// load and store an element of an array (LDX and STX) for each type of element, in the order of the Type tags
+	static final int LDX_INT = 47;
+	static final int LDX_FLOAT = 48;
+	static final int LDX_BOOLEAN = 49;
+	static final int STX_INT = 50;
+	static final int STX_FLOAT = 51;
+	static final int STX_BOOLEAN = 52;
+	// written by Superinstructions over four instructions (LOD, LOD or LIT, OPR, STO or JMC);
+	// they read the operands of the instructions they replace, which stay in the program after them
+	static final int ARITH_SLOT_CONST = 53;
+	static final int ARITH_SLOT_SLOT = 54;
+	static final int BRANCH_SLOT_CONST = 55;
+	static final int BRANCH_SLOT_SLOT = 56;
+
+	static final int FUSED = ARITH_SLOT_CONST;
+	static final int COUNT = 57;
+
+	// instruction of the intermediate code each opcode comes from
+	static final String[] NAMES = new String[COUNT];
+	// values taken from register_zero by each opcode
+	static final int[] POPS = new int[COUNT];
+
+	static {
+		define(LIT_INT, "LIT", 0);
+		define(LIT_FLOAT, "LIT", 0);
+		define(LIT_BOOLEAN, "LIT", 0);
+		define(LIT_STRING, "LIT", 0);
+		define(LOD, "LOD", 0);
+		define(STO, "STO", 1);
+		define(JMP, "JMP", 0);
+		define(JMC, "JMC", 1);
+		define(EXIT, "OPR 0", 0);
+		define(NOP, "OPR 1", 0);
+		define(ADD, "OPR 2", 2);
+		define(SUB, "OPR 3", 2);
+		define(MUL, "OPR 4", 2);
+		define(DIV, "OPR 5", 2);
+		define(OR, "OPR 8", 2);
+		define(AND, "OPR 9", 2);
+		define(NOT, "OPR 10", 1);
+		define(GT, "OPR 11", 2);
+		define(LT, "OPR 12", 2);
+		define(EQ, "OPR 15", 2);
+		define(NE, "OPR 16", 2);
+		define(PRINT, "OPR 20", 1);
+		define(PRINTLN, "OPR 21", 1);
+		define(UNDEFINED, "OPR ?", 0);
+		define(ERROR, "ERROR", 0);
+		define(JMC_TRUE, "JMC", 1);
+		define(JMC_FALSE, "JMC", 1);
+		define(OR_BOOLEAN, "OPR 8", 2);
+		define(AND_BOOLEAN, "OPR 9", 2);
+		define(NOT_BOOLEAN, "OPR 10", 1);
+		define(GT_INT, "OPR 11", 2);
+		define(GT_FLOAT, "OPR 11", 2);
+		define(LT_INT, "OPR 12", 2);
+		define(LT_FLOAT, "OPR 12", 2);
+		define(EQ_INT, "OPR 15", 2);
+		define(EQ_FLOAT, "OPR 15", 2);
+		define(EQ_BOOLEAN, "OPR 15", 2);
+		define(EQ_STRING, "OPR 15", 2);
+		define(NE_INT, "OPR 16", 2);
+		define(NE_FLOAT, "OPR 16", 2);
+		define(NE_BOOLEAN, "OPR 16", 2);
+		define(NE_STRING, "OPR 16", 2);
+		define(STL, "STL", 1);
+		define(READ_INT, "OPR 22", 0);
+		define(READ_FLOAT, "OPR 23", 0);
+		define(READ_STRING, "OPR 24", 0);
+		define(READ_BOOLEAN, "OPR 25", 0);
+		define(LDX_INT, "LDX", 1);
+		define(LDX_FLOAT, "LDX", 1);
+		define(LDX_BOOLEAN, "LDX", 1);
+		define(STX_INT, "STX", 2);
+		define(STX_FLOAT, "STX", 2);
+		define(STX_BOOLEAN, "STX", 2);
+		define(ARITH_SLOT_CONST, "LOD LIT OPR STO", 0);
+		define(ARITH_SLOT_SLOT, "LOD LOD OPR STO", 0);
+		define(BRANCH_SLOT_CONST, "LOD LIT OPR JMC", 0);
+		define(BRANCH_SLOT_SLOT, "LOD LOD OPR JMC", 0);
+	}
+
+	private static void define(int opcode, String name, int pops) {
+		NAMES[opcode] = name;
+		POPS[opcode] = pops;
+	}
+
+	/**
+	 * Opcode for an OPR sub-operation, or UNDEFINED.
+	 */
+	static int operator(int n) {
+		switch (n) {
+			case 0:
+				return EXIT;
+			case 1:
+				return NOP;
+			case 2:
+				return ADD;
+			case 3:
+				return SUB;
+			case 4:
+				return MUL;
+			case 5:
+				return DIV;
+			case 8:
+				return OR;
+			case 9:
+				return AND;
+			case 10:
+				return NOT;
+			case 11:
+				return GT;
+			case 12:
+				return LT;
+			case 15:
+				return EQ;
+			case 16:
+				return NE;
+			case 20:
+				return PRINT;
+			case 21:
+				return PRINTLN;
+			case 22:
+				return READ_INT;
+			case 23:
+				return READ_FLOAT;
+			case 24:
+				return READ_STRING;
+			case 25:
+				return READ_BOOLEAN;
+			default:
+				return UNDEFINED;
+		}
+	}
+
+	private Opcode() {
+	}
+
+}
@@ -0,0 +1,284 @@
+package javiergs.vm;
+
+import java.util.Arrays;
+
+/**
+ * Operand stack of the Virtual Machine (register_zero).
+ * Values are kept in primitive lanes (see Type), so pushing and popping int, float and boolean
+ * values does not allocate; only strings and arrays use the reference lane, and a reference is cleared
+ * when its value leaves the stack, so popped values can be collected.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+final class OperandStack {
+
+	byte[] types = new byte[16];
+	int[] ints = new int[16];
+	float[] floats = new float[16];
+	Object[] refs = new Object[16];
+	int size;
+	// most values it can keep, checked only when the arrays are full
+	private int limit = Integer.MAX_VALUE;
+
+	void pushInt(int value) {
+		if (size == types.length) {
+			grow();
+		}
+		types[size] = Type.INT;
+		ints[size++] = value;
+	}
+
+	void pushFloat(float value) {
+		if (size == types.length) {
+			grow();
+		}
+		types[size] = Type.FLOAT;
+		floats[size++] = value;
+	}
+
+	void pushBoolean(boolean value) {
+		if (size == types.length) {
+			grow();
+		}
+		types[size] = Type.BOOLEAN;
+		ints[size++] = value ? 1 : 0;
+	}
+
+	void pushString(String value) {
+		if (size == types.length) {
+			grow();
+		}
+		types[size] = Type.STRING;
+		refs[size++] = value;
+	}
+
+	/**
+	 * Pushes a copy of a memory slot.
+	 */
+	void load(Memory memory, int slot) {
+		if (size == types.length) {
+			grow();
+		}
+		types[size] = memory.types[slot];
+		ints[size] = memory.ints[slot];
+		floats[size] = memory.floats[slot];
+		refs[size++] = memory.refs[slot];
+	}
+
+	/**
+	 * Pops the top value into a memory slot.
+	 */
+	void store(Memory memory, int slot) {
+		int top = --size;
+		memory.types[slot] = types[top];
+		memory.ints[slot] = ints[top];
+		memory.floats[slot] = floats[top];
+		memory.refs[slot] = refs[top];
+		refs[top] = null;
+	}
+
+	/**
+	 * Copies the top value into a memory slot and keeps it.
+	 */
+	void storeKeep(Memory memory, int slot) {
+		int top = size - 1;
+		memory.types[slot] = types[top];
+		memory.ints[slot] = ints[top];
+		memory.floats[slot] = floats[top];
+		memory.refs[slot] = refs[top];
+	}
+
+	/**
+	 * Type of the value at the given depth, 0 is the top.
+	 */
+	byte type(int depth) {
+		return types[size - 1 - depth];
+	}
+
+	// pops of a value whose type is already known
+
+	int popInt() {
+		return ints[--size];
+	}
+
+	float popFloat() {
+		return floats[--size];
+	}
+
+	boolean popBoolean() {
+		return ints[--size] != 0;
+	}
+
+	String popString() {
+		String value = (String) refs[--size];
+		refs[size] = null;
+		return value;
+	}
+
+	/**
+	 * Throws an IllegalStateException when the top value is not of the given type
+	 * (for the index and the value of LDX and STX, which do not convert).
+	 */
+	void expect(byte type, String what) {
+		int top = size - 1;
+		if (types[top] != type) {
+			throw new IllegalStateException(what + " must be " + Type.NAMES[type] + ", found " + Type.NAMES[types[top]]
+				+ " " + toString(top));
+		}
+	}
+
+	// pops converting any value the way the original VM did it over the text of the value
+
+	/**
+	 * The top value as a float, with the conversion of Float.parseFloat over its text.
+	 */
+	float popAsFloat() {
+		int top = --size;
+		switch (types[top]) {
+			case Type.INT:
+				return ints[top];
+			case Type.FLOAT:
+				return floats[top];
+			default:
+				float value = Float.parseFloat(toString(top));
+				refs[top] = null;
+				return value;
+		}
+	}
+
+	/**
+	 * The top value as a boolean, with the conversion of Boolean.parseBoolean over its text.
+	 */
+	boolean popAsBoolean() {
+		int top = --size;
+		switch (types[top]) {
+			case Type.BOOLEAN:
+				return ints[top] != 0;
+			case Type.STRING:
+				boolean value = Boolean.parseBoolean((String) refs[top]);
+				refs[top] = null;
+				return value;
+			default:
+				return false;
+		}
+	}
+
+	String popAsString() {
+		int top = --size;
+		String value = toString(top);
+		refs[top] = null;
+		return value;
+	}
+
+	/**
+	 * Pops two values and compares them with &gt;, as ints when both are ints and as floats otherwise.
+	 */
+	boolean popGreater() {
+		if (types[size - 1] == Type.INT && types[size - 2] == Type.INT) {
+			size -= 2;
+			return ints[size] > ints[size + 1];
+		}
+		float b = popAsFloat();
+		float a = popAsFloat();
+		return a > b;
+	}
+
+	/**
+	 * Pops two values and compares them with &lt;, as ints when both are ints and as floats otherwise.
+	 */
+	boolean popLess() {
+		if (types[size - 1] == Type.INT && types[size - 2] == Type.INT) {
+			size -= 2;
+			return ints[size] < ints[size + 1];
+		}
+		float b = popAsFloat();
+		float a = popAsFloat();
+		return a < b;
+	}
+
+	/**
+	 * Pops two values and tells if their text is the same; values of the same type are compared
+	 * without building the text (floats by bits, which gives the same answer as Float.toString).
+	 */
+	boolean popEquals() {
+		int b = size - 1;
+		int a = size - 2;
+		size -= 2;
+		boolean equals;
+		if (types[a] != types[b]) {
+			equals = toString(a).equals(toString(b));
+		} else {
+			switch (types[a]) {
+				case Type.FLOAT:
+					equals = Float.floatToIntBits(floats[a]) == Float.floatToIntBits(floats[b]);
+					break;
+				case Type.STRING:
+					equals = refs[a].equals(refs[b]);
+					break;
+				default:
+					equals = ints[a] == ints[b];
+			}
+		}
+		refs[a] = null;
+		refs[b] = null;
+		return equals;
+	}
+
+	/**
+	 * Pushes copies of all the values of another stack, from the bottom to the top.
+	 */
+	void pushAll(OperandStack other) {
+		for (int i = 0; i < other.size; i++) {
+			if (size == types.length) {
+				grow();
+			}
+			types[size] = other.types[i];
+			ints[size] = other.ints[i];
+			floats[size] = other.floats[i];
+			refs[size++] = other.refs[i];
+		}
+	}
+
+	String toString(int index) {
+		return Type.toString(types[index], ints[index], floats[index], refs[index]);
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		size = 0;
+		Arrays.fill(refs, null);
+	}
+
+	/**
+	 * Sets the most values it can keep; pushing one more throws a StackLimitException, and so does
+	 * a limit below the values it keeps now.
+	 */
+	void setLimit(int limit) {
+		if (size > limit) {
+			throw new StackLimitException(limit);
+		}
+		this.limit = limit;
+		if (types.length > limit) {
+			resize(limit);
+		}
+	}
+
+	private void grow() {
+		if (types.length >= limit) {
+			throw new StackLimitException(limit);
+		}
+		resize((int) Math.min(Math.max((long) types.length * 2, 16), limit));
+	}
+
+	private void resize(int capacity) {
+		types = Arrays.copyOf(types, capacity);
+		ints = Arrays.copyOf(ints, capacity);
+		floats = Arrays.copyOf(floats, capacity);
+		refs = Arrays.copyOf(refs, capacity);
+	}
+
+}
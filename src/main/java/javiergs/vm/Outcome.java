@@ -0,0 +1,23 @@
+package javiergs.vm;
+
+/**
+ * How the execution of a program ended (see Interpreter.getOutcome).
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public enum Outcome {
+
+	// not ended yet
+	RUNNING,
+	// OPR 0 or the end of the program
+	FINISHED,
+	// an ERROR instruction or a failed operation
+	ERROR,
+	INSTRUCTION_LIMIT,
+	TIME_LIMIT,
+	STACK_LIMIT,
+	// Interpreter.cancel was called
+	CANCELLED
+
+}
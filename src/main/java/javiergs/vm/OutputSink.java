@@ -0,0 +1,45 @@
+package javiergs.vm;
+
+/**
+ * Destination of the output of a program (OPR 20 and 21), set with Interpreter.setOutput
+ * instead of sending every value to InterpreterListener.writeScreen.
+ * Sinks buffer the output and decide when it reaches its destination with a Flush policy;
+ * the Interpreter flushes them when the program ends.
+ * Errors are thrown as unchecked exceptions and end the program like any other failed instruction.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public interface OutputSink {
+
+	/**
+	 * When buffered output is passed on, besides when the buffer is full and when the program ends.
+	 */
+	enum Flush {
+		// only when the buffer is full or the program ends
+		END,
+		// after every new line
+		LINE,
+		// after every value
+		ALWAYS
+	}
+
+	void write(String text);
+
+	void flush();
+
+	/**
+	 * Flushes the sink and releases what it holds; it does nothing else by default.
+	 */
+	default void close() {
+		flush();
+	}
+
+	/**
+	 * True when the text must be passed on now under the policy.
+	 */
+	static boolean due(Flush flush, String text) {
+		return flush == Flush.ALWAYS || (flush == Flush.LINE && text.indexOf('\n') >= 0);
+	}
+
+}
@@ -0,0 +1,305 @@
+package javiergs.vm;
+
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Rewrites the loaded instructions before they are decoded, removing the waste the compiler leaves:
+ * <ul>
+ * <li>OPR 1 (no operation) and JMP to the next instruction are removed</li>
+ * <li>STO x followed by LOD x becomes STL x (store and keep the value in register_zero)</li>
+ * <li>LIT a, LIT b, OPR 2 to 5 becomes one LIT with the result, when it can be computed without errors
+ * and the result reads back as the same literal</li>
+ * <li>OPR 10 (NOT) between an instruction that always pushes a boolean and JMC is removed,
+ * flipping the condition of the JMC</li>
+ * <li>JMP and JMC to a JMP go directly to its target</li>
+ * </ul>
+ * Instructions that are the target of a jump or a label are never merged into the one before them.
+ * Labels (including #pc) and jump parameters are renumbered after the removed instructions;
+ * a jump keeps its label when the label still points to its target.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class PeepholeOptimizer {
+
+	private Instruction[] code;
+	private int[] targets;
+	private boolean[] removed;
+	private boolean[] targeted;
+	private int size;
+
+	/**
+	 * Optimizes the instructions in place and returns how many were removed.
+	 */
+	int optimize(Vector<Instruction> instructions, Hashtable<String, Vector<Symbol>> symbolTable) {
+		size = instructions.size();
+		code = instructions.toArray(new Instruction[0]);
+		targets = new int[size];
+		removed = new boolean[size + 1];
+		targeted = new boolean[size + 1];
+		for (int i = 0; i < size; i++) {
+			targets[i] = isJump(i) ? target(code[i].getParameter1().trim(), symbolTable) : -1;
+			if (targets[i] >= 0 && targets[i] <= size) {
+				targeted[targets[i]] = true;
+			}
+		}
+		for (Map.Entry<String, Vector<Symbol>> entry : symbolTable.entrySet()) {
+			int label = label(entry.getKey(), entry.getValue());
+			if (label >= 0 && label <= size) {
+				targeted[label] = true;
+			}
+		}
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 0; i < size; i++) {
+				if (!removed[i]) {
+					changed |= rewrite(i);
+				}
+			}
+		}
+		// renumbering
+		int[] renumbered = new int[size + 1];
+		int kept = 0;
+		for (int i = 0; i <= size; i++) {
+			renumbered[i] = kept;
+			if (i < size && !removed[i]) {
+				kept++;
+			}
+		}
+		Hashtable<String, Integer> labels = new Hashtable<>();
+		for (Map.Entry<String, Vector<Symbol>> entry : symbolTable.entrySet()) {
+			int label = label(entry.getKey(), entry.getValue());
+			if (label >= 0 && label <= size) {
+				Symbol symbol = entry.getValue().get(0);
+				symbol.setValue(renumbered[label] + 1);
+				labels.put(entry.getKey(), renumbered[label]);
+			}
+		}
+		instructions.clear();
+		for (int i = 0; i < size; i++) {
+			if (removed[i]) {
+				continue;
+			}
+			if (targets[i] >= 0 && targets[i] <= size) {
+				String parameter = code[i].getParameter1().trim();
+				Integer label = labels.get(parameter);
+				if (label == null || label != renumbered[targets[i]]) {
+					code[i] = copy(code[i], code[i].getName(), Integer.toString(renumbered[targets[i]] + 1),
+						code[i].getParameter2());
+				}
+			}
+			instructions.add(code[i]);
+		}
+		return size - kept;
+	}
+
+	/**
+	 * Applies the first rule that matches at instruction i.
+	 */
+	private boolean rewrite(int i) {
+		String name = name(i);
+		if (name.equals("OPR") && parameter(i).equals("1")) {
+			remove(i);
+			return true;
+		}
+		if (isJump(i) && targets[i] >= 0) {
+			int target = next(targets[i] - 1);
+			int hops = 0;
+			while (target < size && name(target).equals("JMP") && targets[target] >= 0 && hops++ < size) {
+				target = next(targets[target] - 1);
+			}
+			// more hops than instructions is a loop of jumps, it is left as it is
+			if (hops <= size && target != next(targets[i] - 1)) {
+				targets[i] = target;
+				if (target <= size) {
+					targeted[target] = true;
+				}
+				return true;
+			}
+			if (name.equals("JMP") && target == next(i)) {
+				remove(i);
+				return true;
+			}
+		}
+		int j = next(i);
+		if (j >= size || targeted[j]) {
+			return false;
+		}
+		if (name.equals("STO") && name(j).equals("LOD") && parameter(i).equals(parameter(j))) {
+			code[i] = copy(code[i], "STL", code[i].getParameter1(), code[i].getParameter2());
+			remove(j);
+			return true;
+		}
+		int k = next(j);
+		if (k >= size || targeted[k]) {
+			return false;
+		}
+		if (name.equals("LIT") && name(j).equals("LIT") && name(k).equals("OPR")) {
+			String result = fold(parameter(i), parameter(j), parameter(k));
+			if (result != null) {
+				code[i] = copy(code[i], "LIT", result, "0");
+				remove(j);
+				remove(k);
+				return true;
+			}
+		}
+		if (isBoolean(i) && name(j).equals("OPR") && parameter(j).equals("10") && name(k).equals("JMC")) {
+			String condition = code[k].getParameter2().trim();
+			if (condition.equals("true") || condition.equals("false")) {
+				code[k] = copy(code[k], code[k].getName(), code[k].getParameter1(),
+					condition.equals("true") ? "false" : "true");
+				remove(j);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Text of the LIT with the result of OPR n over two literals, or null when it cannot be folded.
+	 * It follows Interpreter.calculate: strings concatenate, a float makes it a float operation,
+	 * booleans and division by zero fail at runtime and are left alone.
+	 */
+	private static String fold(String p1, String p2, String operator) {
+		Object a;
+		Object b;
+		try {
+			a = Decoder.value(p1);
+			b = Decoder.value(p2);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		Object result;
+		if (!operator.matches("[2-5]")) {
+			return null;
+		} else if (a instanceof String || b instanceof String) {
+			result = a.toString() + b;
+		} else if (a instanceof Boolean || b instanceof Boolean) {
+			return null;
+		} else if (a instanceof Float || b instanceof Float) {
+			float x = ((Number) a).floatValue();
+			float y = ((Number) b).floatValue();
+			switch (operator) {
+				case "2":
+					result = x + y;
+					break;
+				case "3":
+					result = x - y;
+					break;
+				case "4":
+					result = x * y;
+					break;
+				default:
+					result = x / y;
+			}
+		} else {
+			int x = (Integer) a;
+			int y = (Integer) b;
+			switch (operator) {
+				case "2":
+					result = x + y;
+					break;
+				case "3":
+					result = x - y;
+					break;
+				case "4":
+					result = x * y;
+					break;
+				default:
+					if (y == 0) {
+						return null;
+					}
+					result = x / y;
+			}
+		}
+		String text = result.toString();
+		try {
+			Object read = Decoder.value(text);
+			boolean same = read.getClass() == result.getClass() && (result instanceof Float
+				? Float.floatToIntBits((Float) read) == Float.floatToIntBits((Float) result) : read.equals(result));
+			return same && text.trim().equals(text) ? text : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * True when instruction i always pushes a boolean: LIT true or false, OPR 8 to 12, 15, 16 and 25.
+	 */
+	private boolean isBoolean(int i) {
+		String name = name(i);
+		String parameter = parameter(i);
+		if (name.equals("LIT")) {
+			return parameter.equals("true") || parameter.equals("false");
+		}
+		return name.equals("OPR") && parameter.matches("8|9|10|11|12|15|16|25");
+	}
+
+	private boolean isJump(int i) {
+		String name = name(i);
+		return name.equals("JMP") || name.equals("JMC");
+	}
+
+	/**
+	 * Instruction index a jump parameter points to, the way the Decoder links it, or -1.
+	 */
+	private static int target(String p1, Hashtable<String, Vector<Symbol>> symbolTable) {
+		if (p1.matches("\\d+")) {
+			try {
+				return Integer.parseInt(p1) - 1;
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+		Vector<Symbol> symbol = symbolTable.get(p1);
+		return symbol != null ? label(p1, symbol) : -1;
+	}
+
+	/**
+	 * Instruction index of a label (a symbol whose name starts with #), or -1.
+	 */
+	private static int label(String name, Vector<Symbol> symbol) {
+		if (name.startsWith("#") && symbol.get(0).getValue() instanceof Integer) {
+			return (Integer) symbol.get(0).getValue() - 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * First instruction after i that was not removed (size at the end).
+	 */
+	private int next(int i) {
+		do {
+			i++;
+		} while (i < size && removed[i]);
+		return i;
+	}
+
+	/**
+	 * Removes instruction i; jumps to it go to the next instruction.
+	 */
+	private void remove(int i) {
+		removed[i] = true;
+		if (targeted[i]) {
+			targeted[next(i)] = true;
+		}
+	}
+
+	private String name(int i) {
+		return code[i].getName().trim().toUpperCase();
+	}
+
+	private String parameter(int i) {
+		return code[i].getParameter1().trim();
+	}
+
+	private static Instruction copy(Instruction instruction, String name, String parameter1, String parameter2) {
+		Instruction copy = new Instruction(name, parameter1, parameter2);
+		copy.setLine(instruction.getLine());
+		return copy;
+	}
+
+}
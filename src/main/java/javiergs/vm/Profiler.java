@@ -0,0 +1,194 @@
+package javiergs.vm;
+
+import java.util.Arrays;
+
+/**
+ * ExecutionTracer that counts the executions of every instruction and the time spent on it
+ * (from the moment it starts until the next instruction starts, measured with System.nanoTime).
+ * The report sums them by opcode (every OPR sub-operation apart) and ranks the hot instructions
+ * and the hot loops, a loop being a JMP or JMC that jumps backwards together with the instructions
+ * between its target and itself.
+ * Times include the cost of measuring, so they are meant to compare instructions, not to be added up.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public final class Profiler implements ExecutionTracer {
+
+	private static final int TOP = 10;
+
+	private long[] counts = new long[256];
+	private long[] nanos = new long[256];
+	private int last = -1;
+	private long started;
+
+	@Override
+	public void record(int pc, int opcode, int depth, int slot) {
+		long now = System.nanoTime();
+		if (last >= 0) {
+			nanos[last] += now - started;
+		}
+		if (pc >= counts.length) {
+			counts = Arrays.copyOf(counts, Math.max(pc + 1, counts.length * 2));
+			nanos = Arrays.copyOf(nanos, counts.length);
+		}
+		counts[pc]++;
+		last = pc;
+		started = now;
+	}
+
+	@Override
+	public void pause() {
+		if (last >= 0) {
+			nanos[last] += System.nanoTime() - started;
+			last = -1;
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(counts, 0);
+		Arrays.fill(nanos, 0);
+		last = -1;
+	}
+
+	long count(int pc) {
+		return pc < counts.length ? counts[pc] : 0;
+	}
+
+	long nanos(int pc) {
+		return pc < nanos.length ? nanos[pc] : 0;
+	}
+
+	String report(Program program) {
+		int size = program.size();
+		long totalCount = 0;
+		long totalNanos = 0;
+		long[] opcodeCounts = new long[Opcode.COUNT];
+		long[] opcodeNanos = new long[Opcode.COUNT];
+		for (int pc = 0; pc < size; pc++) {
+			totalCount += count(pc);
+			totalNanos += nanos(pc);
+			int opcode = base(program.opcodes[pc]);
+			opcodeCounts[opcode] += count(pc);
+			opcodeNanos[opcode] += nanos(pc);
+		}
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("Profile: %d instructions executed in %.3f ms%n", totalCount, totalNanos / 1e6));
+		// by opcode
+		report.append(String.format("%nBy opcode:%n%-10s %14s %7s %12s %7s%n", "opcode", "count", "%", "ms", "%"));
+		Integer[] opcodes = sorted(Opcode.COUNT, opcodeNanos);
+		for (int opcode : opcodes) {
+			if (opcodeCounts[opcode] > 0) {
+				report.append(String.format("%-10s %14d %7.2f %12.3f %7.2f%n", Opcode.NAMES[opcode], opcodeCounts[opcode],
+					percent(opcodeCounts[opcode], totalCount), opcodeNanos[opcode] / 1e6, percent(opcodeNanos[opcode], totalNanos)));
+			}
+		}
+		// by instruction
+		report.append(String.format("%nHot instructions:%n%-4s %-24s %14s %12s %7s%n", "#", "instruction", "count", "ms", "%"));
+		long[] instructionNanos = new long[size];
+		for (int pc = 0; pc < size; pc++) {
+			instructionNanos[pc] = nanos(pc);
+		}
+		Integer[] instructions = sorted(size, instructionNanos);
+		for (int i = 0; i < Math.min(TOP, size) && count(instructions[i]) > 0; i++) {
+			int pc = instructions[i];
+			report.append(String.format("%04d %-24s %14d %12.3f %7.2f%n", pc + 1, text(program, pc), count(pc),
+				nanos(pc) / 1e6, percent(nanos(pc), totalNanos)));
+		}
+		// by loop
+		report.append(String.format("%nHot loops (back-edges of JMP and JMC):%n%-9s %14s %14s %12s %7s%n",
+			"body", "iterations", "instructions", "ms", "%"));
+		int[] edges = new int[size];
+		long[] loopNanos = new long[size];
+		int loops = 0;
+		for (int pc = 0; pc < size; pc++) {
+			if (isJump(program.opcodes[pc]) && program.operands[pc] <= pc && program.operands[pc] >= 0 && count(pc) > 0) {
+				for (int i = program.operands[pc]; i <= pc; i++) {
+					loopNanos[loops] += nanos(i);
+				}
+				edges[loops++] = pc;
+			}
+		}
+		Integer[] ranked = sorted(loops, loopNanos);
+		for (int i = 0; i < Math.min(TOP, loops); i++) {
+			int pc = edges[ranked[i]];
+			int target = program.operands[pc];
+			long executed = 0;
+			for (int j = target; j <= pc; j++) {
+				executed += count(j);
+			}
+			report.append(String.format("%04d-%04d %14d %14d %12.3f %7.2f%n", target + 1, pc + 1,
+				count(target), executed, loopNanos[ranked[i]] / 1e6, percent(loopNanos[ranked[i]], totalNanos)));
+		}
+		if (loops == 0) {
+			report.append("(none)\n");
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Specialized opcodes are reported with the opcode they come from.
+	 */
+	private static int base(int opcode) {
+		switch (opcode) {
+			case Opcode.JMC_TRUE:
+			case Opcode.JMC_FALSE:
+				return Opcode.JMC;
+			case Opcode.OR_BOOLEAN:
+				return Opcode.OR;
+			case Opcode.AND_BOOLEAN:
+				return Opcode.AND;
+			case Opcode.NOT_BOOLEAN:
+				return Opcode.NOT;
+			case Opcode.GT_INT:
+			case Opcode.GT_FLOAT:
+				return Opcode.GT;
+			case Opcode.LT_INT:
+			case Opcode.LT_FLOAT:
+				return Opcode.LT;
+			case Opcode.EQ_INT:
+			case Opcode.EQ_FLOAT:
+			case Opcode.EQ_BOOLEAN:
+			case Opcode.EQ_STRING:
+				return Opcode.EQ;
+			case Opcode.NE_INT:
+			case Opcode.NE_FLOAT:
+			case Opcode.NE_BOOLEAN:
+			case Opcode.NE_STRING:
+				return Opcode.NE;
+			case Opcode.LIT_FLOAT:
+			case Opcode.LIT_BOOLEAN:
+			case Opcode.LIT_STRING:
+				return Opcode.LIT_INT;
+			default:
+				return opcode;
+		}
+	}
+
+	private static boolean isJump(int opcode) {
+		return opcode == Opcode.JMP || base(opcode) == Opcode.JMC;
+	}
+
+	private static String text(Program program, int pc) {
+		Instruction instruction = program.instruction(pc);
+		String text = instruction.getName() + " " + instruction.getParameter1() + ", " + instruction.getParameter2();
+		return text.length() > 24 ? text.substring(0, 21) + "..." : text;
+	}
+
+	/**
+	 * Indexes from 0 to size - 1, from the highest value to the lowest.
+	 */
+	private static Integer[] sorted(int size, long[] values) {
+		Integer[] indexes = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			indexes[i] = i;
+		}
+		Arrays.sort(indexes, (a, b) -> Long.compare(values[b], values[a]));
+		return indexes;
+	}
+
+	private static double percent(long part, long total) {
+		return total == 0 ? 0 : 100.0 * part / total;
+	}
+
+}
@@ -0,0 +1,118 @@
+package javiergs.vm;
+
+/**
+ * Decoded form of the intermediate code.
+ * Instruction i is opcodes[i] with its parameters in operands[i] and operands2[i];
+ * jump targets are instruction indexes, variables are indexes into slots (the memory layout),
+ * int, boolean and float literals are stored in the operand itself (floats as raw bits)
+ * and text parameters are indexes into strings.
+ * Every slot has a name, the type declared in the symbol table and an initial value in memory;
+ * entry is the first instruction (#pc).
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+final class Program {
+
+	final int[] opcodes;
+	final int[] operands;
+	final int[] operands2;
+	final String[] strings;
+	final String[] slots;
+	final String[] types;
+	final Memory memory;
+	final int entry;
+
+	Program(int[] opcodes, int[] operands, int[] operands2, String[] strings, String[] slots, String[] types,
+					Memory memory, int entry) {
+		this.opcodes = opcodes;
+		this.operands = operands;
+		this.operands2 = operands2;
+		this.strings = strings;
+		this.slots = slots;
+		this.types = types;
+		this.memory = memory;
+		this.entry = entry;
+	}
+
+	int size() {
+		return opcodes.length;
+	}
+
+	/**
+	 * The same program with other opcodes (same length).
+	 */
+	Program withOpcodes(int[] opcodes) {
+		return new Program(opcodes, operands, operands2, strings, slots, types, memory, entry);
+	}
+
+	/**
+	 * The symbol table entry of a slot with its initial value.
+	 */
+	Symbol symbol(int slot) {
+		switch (memory.types[slot]) {
+			case Type.INT:
+				return new Symbol(types[slot], "global", memory.ints[slot]);
+			case Type.FLOAT:
+				return new Symbol(types[slot], "global", memory.floats[slot]);
+			case Type.BOOLEAN:
+				return new Symbol(types[slot], "global", memory.ints[slot] != 0);
+			case Type.ARRAY:
+				return new Symbol(types[slot], "global", Type.copyArray(memory.refs[slot]));
+			default:
+				return new Symbol(types[slot], "global", memory.refs[slot]);
+		}
+	}
+
+	/**
+	 * Intermediate code for instruction pc, for programs that were not loaded from text.
+	 * Jump targets use a label with that value when there is one.
+	 */
+	Instruction instruction(int pc) {
+		int operand = operands[pc];
+		switch (opcodes[pc]) {
+			case Opcode.LIT_INT:
+				return new Instruction("LIT", Integer.toString(operand), "0");
+			case Opcode.LIT_FLOAT:
+				return new Instruction("LIT", Float.toString(Float.intBitsToFloat(operand)), "0");
+			case Opcode.LIT_BOOLEAN:
+				return new Instruction("LIT", operand != 0 ? "true" : "false", "0");
+			case Opcode.LIT_STRING:
+				return new Instruction("LIT", strings[operand], "0");
+			case Opcode.LOD:
+			case Opcode.STO:
+			case Opcode.STL:
+			case Opcode.LDX_INT:
+			case Opcode.LDX_FLOAT:
+			case Opcode.LDX_BOOLEAN:
+			case Opcode.STX_INT:
+			case Opcode.STX_FLOAT:
+			case Opcode.STX_BOOLEAN:
+				return new Instruction(Opcode.NAMES[opcodes[pc]], slots[operand], "0");
+			case Opcode.JMP:
+				return new Instruction("JMP", target(operand), "0");
+			case Opcode.JMC:
+			case Opcode.JMC_TRUE:
+			case Opcode.JMC_FALSE:
+				return new Instruction("JMC", target(operand), strings[operands2[pc]]);
+			case Opcode.UNDEFINED:
+				return new Instruction("OPR", strings[operand], "0");
+			case Opcode.ERROR:
+				return new Instruction("ERROR", strings[operand], "0");
+			default:
+				String name = Opcode.NAMES[opcodes[pc]];
+				return new Instruction("OPR", name.substring(name.indexOf(' ') + 1), "0");
+		}
+	}
+
+	private String target(int pc) {
+		for (int slot = 0; slot < slots.length; slot++) {
+			if (slots[slot].startsWith("#") && !slots[slot].equals("#pc")
+				&& memory.types[slot] == Type.INT && memory.ints[slot] == pc + 1) {
+				return slots[slot];
+			}
+		}
+		return Integer.toString(pc + 1);
+	}
+
+}
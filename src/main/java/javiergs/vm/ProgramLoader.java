@@ -0,0 +1,226 @@
+package javiergs.vm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Reads intermediate code in one pass and fills the symbol table and the instruction list.
+ * The input is read line by line from a Reader, so a program never has to be in memory as a single String.
+ * Errors are reported with the line number where they are found.
+ * <p>
+ * Format: symbol table lines (variables "name, type, scope, value" and labels "#name, int, value"),
+ * a line with "@" and then one instruction per line ("NAME parameter1, parameter2").
+ * An array is a variable whose type is int, float or boolean followed by its length, such as "a, int[10], global, 0";
+ * its elements start at zero (or false) and are read and written with LDX and STX.
+ * A parameter1 starting with a quote ends at the first comma after its last quote, so strings may have commas.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class ProgramLoader {
+
+	private static final String[] MNEMONICS = {"LIT", "LOD", "STO", "JMP", "JMC", "OPR", "LDX", "STX",
+		"lit", "lod", "sto", "jmp", "jmc", "opr", "ldx", "stx"};
+
+	private final Hashtable<String, Vector<Symbol>> symbolTable;
+	private final Vector<Instruction> instructions;
+	private final InterpreterListener listener;
+	private int line;
+	private int errors;
+
+	ProgramLoader(Hashtable<String, Vector<Symbol>> symbolTable, Vector<Instruction> instructions,
+								InterpreterListener listener) {
+		this.symbolTable = symbolTable;
+		this.instructions = instructions;
+		this.listener = listener;
+	}
+
+	/**
+	 * Reads the whole program and returns the number of lines with errors.
+	 */
+	int load(Reader reader) throws IOException {
+		BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16);
+		boolean header = true;
+		String text;
+		listener.writeConsole("* Getting labels and variables... ");
+		while ((text = in.readLine()) != null) {
+			line++;
+			if (isBlank(text)) {
+				continue;
+			}
+			if (!header) {
+				insertInstruction(text);
+			} else if (text.trim().equals("@")) {
+				header = false;
+				listener.writeConsole("* Loading instructions... ");
+			} else if (text.charAt(0) == '#') {
+				insertLabel(text);
+			} else {
+				insertVariable(text);
+			}
+		}
+		if (header) {
+			error("missing @ after the symbol table");
+		}
+		listener.writeConsole("* Intermediate code loaded: " + symbolTable.size() + " symbols, "
+			+ instructions.size() + " instructions.");
+		return errors;
+	}
+
+	private void insertVariable(String text) {
+		int firstComma = text.indexOf(',');
+		int secondComma = text.indexOf(',', firstComma + 1);
+		if (firstComma == -1 || secondComma == -1) {
+			error("a variable needs a name, a type and a scope");
+			return;
+		}
+		String name = text.substring(0, firstComma).trim();
+		String type = text.substring(firstComma + 1, secondComma).trim();
+		Symbol symbol = type.endsWith("]") ? newArray(name, type) : newSymbolForType(type);
+		if (symbol == null) {
+			return;
+		}
+		Vector<Symbol> value = new Vector<Symbol>(1);
+		value.add(symbol);
+		symbolTable.put(name, value);
+	}
+
+	private void insertLabel(String text) {
+		int firstComma = text.indexOf(',');
+		int secondComma = text.indexOf(',', firstComma + 1);
+		if (firstComma == -1 || secondComma == -1) {
+			error("a label needs a name, a type and a value");
+			return;
+		}
+		String name = text.substring(0, firstComma).trim();
+		String value = text.substring(secondComma + 1).trim();
+		try {
+			Vector<Symbol> item = new Vector<Symbol>(1);
+			item.add(new Symbol("int", "global", Integer.valueOf(value)));
+			symbolTable.put(name, item);
+		} catch (NumberFormatException e) {
+			error("label " + name + " needs an instruction number, found <" + value + ">");
+		}
+	}
+
+	private void insertInstruction(String text) {
+		int start = 0;
+		while (text.charAt(start) <= ' ') {
+			start++;
+		}
+		int space = text.indexOf(' ', start);
+		if (space == -1) {
+			error("instruction without parameters");
+			return;
+		}
+		int first = space + 1;
+		while (first < text.length() && text.charAt(first) == ' ') {
+			first++;
+		}
+		int from = first;
+		if (first < text.length() && text.charAt(first) == '"') {
+			from = text.lastIndexOf('"');
+		}
+		int comma = text.indexOf(',', from);
+		if (comma == -1) {
+			error("instruction needs two parameters separated by a comma");
+			return;
+		}
+		Instruction instruction = new Instruction(mnemonic(text, start, space), text.substring(first, comma).trim(),
+			parameter2(text, comma + 1));
+		instruction.setLine(line);
+		instructions.add(instruction);
+	}
+
+	/**
+	 * The instruction name; the usual ones are shared instead of copied for every line.
+	 */
+	private static String mnemonic(String text, int start, int end) {
+		if (end - start == 3) {
+			for (String mnemonic : MNEMONICS) {
+				if (text.startsWith(mnemonic, start)) {
+					return mnemonic;
+				}
+			}
+		}
+		return text.substring(start, end);
+	}
+
+	private static String parameter2(String text, int start) {
+		int end = text.length();
+		while (start < end && text.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && text.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		if (end - start == 1 && text.charAt(start) == '0') {
+			return "0";
+		}
+		return text.substring(start, end);
+	}
+
+	private Symbol newSymbolForType(String type) {
+		switch (type) {
+			case "int":
+				return new Symbol(type, "global", 0);
+			case "float":
+				return new Symbol(type, "global", 0f);
+			case "boolean":
+				return new Symbol(type, "global", false);
+			default:
+				return new Symbol(type, "global", "");
+		}
+	}
+
+	/**
+	 * Symbol of an array such as int[10], or null after reporting the error.
+	 */
+	private Symbol newArray(String name, String type) {
+		int bracket = type.indexOf('[');
+		String element = bracket == -1 ? type : type.substring(0, bracket).trim();
+		byte tag;
+		switch (element) {
+			case "int":
+				tag = Type.INT;
+				break;
+			case "float":
+				tag = Type.FLOAT;
+				break;
+			case "boolean":
+				tag = Type.BOOLEAN;
+				break;
+			default:
+				error("array " + name + " needs int, float or boolean elements, found <" + type + ">");
+				return null;
+		}
+		try {
+			int length = Integer.parseInt(type.substring(bracket + 1, type.length() - 1).trim());
+			if (length >= 0) {
+				return new Symbol(type, "global", Type.newArray(tag, length));
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		error("array " + name + " needs a length, found <" + type + ">");
+		return null;
+	}
+
+	private static boolean isBlank(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void error(String msg) {
+		errors++;
+		listener.writeConsole("ERROR: line " + line + ": " + msg);
+	}
+
+}
@@ -0,0 +1,28 @@
+package javiergs.vm;
+
+/**
+ * State of the Virtual Machine taken between two slices of a run (see Interpreter.snapshot).
+ * It has the program counter, the whole register_zero and only the RAM cells that changed
+ * since the previous snapshot, so a GUI can show a long run a few times per second.
+ * It is immutable, so it can be taken by a background thread and shown by the event thread.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+final class Snapshot {
+
+	final int pc;
+	final String[] registry;
+	final String[] names;
+	final String[] values;
+	final boolean finished;
+
+	Snapshot(int pc, String[] registry, String[] names, String[] values, boolean finished) {
+		this.pc = pc;
+		this.registry = registry;
+		this.names = names;
+		this.values = values;
+		this.finished = finished;
+	}
+
+}
@@ -0,0 +1,18 @@
+package javiergs.vm;
+
+/**
+ * Thrown by OperandStack when register_zero would keep more values than its limit,
+ * so the Interpreter can end the program with Outcome.STACK_LIMIT and not with Outcome.ERROR.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+final class StackLimitException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	StackLimitException(int limit) {
+		super("register_zero is full (" + limit + " values)");
+	}
+
+}
@@ -0,0 +1,142 @@
+package javiergs.vm;
+
+/**
+ * Fuses frequent sequences of four instructions of a specialized Program into one superinstruction
+ * over int variables (see TypeInference):
+ * <pre>
+ * LOD a, LIT n, OPR 2 to 5, STO c       ARITH_SLOT_CONST    c = a op n
+ * LOD a, LOD b, OPR 2 to 5, STO c       ARITH_SLOT_SLOT     c = a op b
+ * LOD a, LIT n, OPR 11 12 15 16, JMC    BRANCH_SLOT_CONST   jump if (a cmp n) is the JMC condition
+ * LOD a, LOD b, OPR 11 12 15 16, JMC    BRANCH_SLOT_SLOT    jump if (a cmp b) is the JMC condition
+ * </pre>
+ * The superinstruction replaces only the first opcode; the other three instructions stay as they are
+ * and give it its operands, so a program can switch between the fused and the plain opcodes at any
+ * instruction (the Interpreter runs the plain ones when it steps or traces).
+ * Sequences with a jump into their second, third or fourth instruction are not fused.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class Superinstructions {
+
+	private static final int INT = 1 << Type.INT;
+
+	private final Program program;
+	private final TypeInference types;
+	private final int[] fired = new int[Opcode.COUNT];
+
+	/**
+	 * @param program specialized program
+	 * @param types   the TypeInference that specialized it
+	 */
+	Superinstructions(Program program, TypeInference types) {
+		this.program = program;
+		this.types = types;
+	}
+
+	Program fuse() {
+		int size = program.size();
+		int[] opcodes = program.opcodes;
+		boolean[] targeted = new boolean[size + 1];
+		for (int pc = 0; pc < size; pc++) {
+			int opcode = opcodes[pc];
+			if ((opcode == Opcode.JMP || opcode == Opcode.JMC || opcode == Opcode.JMC_TRUE || opcode == Opcode.JMC_FALSE)
+				&& program.operands[pc] >= 0 && program.operands[pc] <= size) {
+				targeted[program.operands[pc]] = true;
+			}
+		}
+		if (program.entry >= 0 && program.entry <= size) {
+			targeted[program.entry] = true;
+		}
+		int[] fused = opcodes.clone();
+		for (int pc = 0; pc + 3 < size; pc++) {
+			if (targeted[pc + 1] || targeted[pc + 2] || targeted[pc + 3]) {
+				continue;
+			}
+			int opcode = superinstruction(pc);
+			if (opcode != -1) {
+				fused[pc] = opcode;
+				fired[opcode]++;
+				pc += 3;
+			}
+		}
+		return program.withOpcodes(fused);
+	}
+
+	/**
+	 * Patterns that fired with the number of times each one did, for the console.
+	 */
+	String report() {
+		StringBuilder report = new StringBuilder();
+		for (int opcode = Opcode.FUSED; opcode < Opcode.COUNT; opcode++) {
+			if (fired[opcode] > 0) {
+				report.append(report.length() == 0 ? "" : ", ").append(fired[opcode]).append(" x ").append(Opcode.NAMES[opcode]);
+			}
+		}
+		return report.length() == 0 ? "none" : report.toString();
+	}
+
+	private int superinstruction(int pc) {
+		int[] opcodes = program.opcodes;
+		if (opcodes[pc] != Opcode.LOD || !isInt(program.operands[pc])) {
+			return -1;
+		}
+		boolean constant = opcodes[pc + 1] == Opcode.LIT_INT;
+		if (!constant && !(opcodes[pc + 1] == Opcode.LOD && isInt(program.operands[pc + 1]))) {
+			return -1;
+		}
+		switch (opcodes[pc + 2]) {
+			case Opcode.ADD:
+			case Opcode.SUB:
+			case Opcode.MUL:
+			case Opcode.DIV:
+				if (opcodes[pc + 3] == Opcode.STO) {
+					return constant ? Opcode.ARITH_SLOT_CONST : Opcode.ARITH_SLOT_SLOT;
+				}
+				break;
+			case Opcode.GT_INT:
+			case Opcode.LT_INT:
+			case Opcode.EQ_INT:
+			case Opcode.NE_INT:
+				if (opcodes[pc + 3] == Opcode.JMC_TRUE || opcodes[pc + 3] == Opcode.JMC_FALSE) {
+					return constant ? Opcode.BRANCH_SLOT_CONST : Opcode.BRANCH_SLOT_SLOT;
+				}
+				break;
+		}
+		return -1;
+	}
+
+	private boolean isInt(int slot) {
+		return types.variable(slot) == INT;
+	}
+
+	/**
+	 * OPR 2 to 5 over two ints, as Interpreter.calculate does it.
+	 */
+	static int arithmetic(int opcode, int a, int b) {
+		switch (opcode) {
+			case Opcode.ADD:
+				return a + b;
+			case Opcode.SUB:
+				return a - b;
+			case Opcode.MUL:
+				return a * b;
+			default:
+				return a / b;
+		}
+	}
+
+	static boolean compare(int opcode, int a, int b) {
+		switch (opcode) {
+			case Opcode.GT_INT:
+				return a > b;
+			case Opcode.LT_INT:
+				return a < b;
+			case Opcode.EQ_INT:
+				return a == b;
+			default:
+				return a != b;
+		}
+	}
+
+}
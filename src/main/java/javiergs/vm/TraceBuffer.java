@@ -0,0 +1,108 @@
+package javiergs.vm;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * ExecutionTracer that keeps the last records in a preallocated ring buffer (one int array per field),
+ * so recording never allocates and the oldest records are overwritten.
+ * In full mode every instruction is recorded; in sampling mode one of every n instructions.
+ * Interpreter.dumpTrace writes the buffer to a file, for example after an error or when a run is interrupted.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public final class TraceBuffer implements ExecutionTracer {
+
+	private final int[] pcs;
+	private final int[] opcodes;
+	private final int[] depths;
+	private final int[] slots;
+	private final int mask;
+	private final int sampling;
+	private int countdown;
+	private long count;
+
+	/**
+	 * @param capacity records kept, rounded up to a power of two
+	 * @param sampling 1 records every instruction, n records one of every n instructions
+	 */
+	public TraceBuffer(int capacity, int sampling) {
+		if (capacity < 1 || sampling < 1) {
+			throw new IllegalArgumentException("capacity and sampling must be positive");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		pcs = new int[size];
+		opcodes = new int[size];
+		depths = new int[size];
+		slots = new int[size];
+		mask = size - 1;
+		this.sampling = sampling;
+		countdown = sampling;
+	}
+
+	public static TraceBuffer full(int capacity) {
+		return new TraceBuffer(capacity, 1);
+	}
+
+	public static TraceBuffer sampled(int capacity, int every) {
+		return new TraceBuffer(capacity, every);
+	}
+
+	@Override
+	public void record(int pc, int opcode, int depth, int slot) {
+		if (--countdown == 0) {
+			store(pc, opcode, depth, slot);
+		}
+	}
+
+	// kept apart so record stays small enough to be inlined into the execution loop
+	private void store(int pc, int opcode, int depth, int slot) {
+		countdown = sampling;
+		int i = (int) count++ & mask;
+		pcs[i] = pc;
+		opcodes[i] = opcode;
+		depths[i] = depth;
+		slots[i] = slot;
+	}
+
+	/**
+	 * Records kept in the buffer.
+	 */
+	public int size() {
+		return (int) Math.min(count, pcs.length);
+	}
+
+	/**
+	 * Instructions seen by the buffer, recorded or not.
+	 */
+	public long executed() {
+		return count * sampling + sampling - countdown;
+	}
+
+	public void clear() {
+		count = 0;
+		countdown = sampling;
+	}
+
+	/**
+	 * Writes the records from the oldest to the newest, one per line:
+	 * record number, instruction number, instruction, values in register_zero and the variable it uses.
+	 */
+	void write(Writer out, String[] names) throws IOException {
+		long first = count - size();
+		out.write("# " + executed() + " instructions executed, " + count + " recorded"
+			+ (sampling > 1 ? " (one of every " + sampling + ")" : "") + ", last " + size() + " follow\n");
+		for (long n = first; n < count; n++) {
+			int i = (int) n & mask;
+			int slot = slots[i];
+			String number = Integer.toString(pcs[i] + 1);
+			out.write(n + "\t" + "0000".substring(Math.min(4, number.length())) + number + "\t" + Opcode.NAMES[opcodes[i]]
+				+ "\tdepth " + depths[i] + (slot >= 0 && slot < names.length ? "\t" + names[slot] : "") + "\n");
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+package javiergs.vm;
+
+/**
+ * Runtime types of the values in register_zero and memory.
+ * A value is a type tag plus one lane: ints (int and boolean as 0 or 1), floats or refs (string).
+ * An array is a memory slot only, never a value in register_zero: its ref is an int[], float[] or boolean[].
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+final class Type {
+
+	static final byte INT = 0;
+	static final byte FLOAT = 1;
+	static final byte BOOLEAN = 2;
+	static final byte STRING = 3;
+	static final byte ARRAY = 4;
+
+	static final String[] NAMES = {"int", "float", "boolean", "string", "array"};
+
+	// elements of an array shown by toString
+	private static final int SHOWN = 16;
+
+	/**
+	 * Same text the Symbol value would show: Integer, Float and Boolean toString or the string itself.
+	 */
+	static String toString(byte type, int i, float f, Object ref) {
+		switch (type) {
+			case INT:
+				return Integer.toString(i);
+			case FLOAT:
+				return Float.toString(f);
+			case BOOLEAN:
+				return i != 0 ? "true" : "false";
+			case ARRAY:
+				return arrayToString(ref);
+			default:
+				return (String) ref;
+		}
+	}
+
+	/**
+	 * A new array of int, float or boolean elements, all zero or false.
+	 */
+	static Object newArray(byte element, int length) {
+		switch (element) {
+			case INT:
+				return new int[length];
+			case FLOAT:
+				return new float[length];
+			case BOOLEAN:
+				return new boolean[length];
+			default:
+				throw new IllegalArgumentException("arrays of " + (element >= 0 && element < NAMES.length
+					? NAMES[element] : "type " + element) + " are not supported");
+		}
+	}
+
+	/**
+	 * Type of the elements of an array made by newArray.
+	 */
+	static byte elementType(Object array) {
+		return array instanceof int[] ? INT : array instanceof float[] ? FLOAT : BOOLEAN;
+	}
+
+	static int length(Object array) {
+		return array instanceof int[] ? ((int[]) array).length
+			: array instanceof float[] ? ((float[]) array).length : ((boolean[]) array).length;
+	}
+
+	static Object copyArray(Object array) {
+		return array instanceof int[] ? ((int[]) array).clone()
+			: array instanceof float[] ? ((float[]) array).clone() : ((boolean[]) array).clone();
+	}
+
+	/**
+	 * The first elements of an array and its length, such as [1, 2, 3] or [0, 0, ... 1000 elements].
+	 */
+	private static String arrayToString(Object array) {
+		byte element = elementType(array);
+		int length = length(array);
+		StringBuilder text = new StringBuilder("[");
+		for (int i = 0; i < Math.min(length, SHOWN); i++) {
+			if (i > 0) {
+				text.append(", ");
+			}
+			if (element == INT) {
+				text.append(((int[]) array)[i]);
+			} else if (element == FLOAT) {
+				text.append(((float[]) array)[i]);
+			} else {
+				text.append(((boolean[]) array)[i]);
+			}
+		}
+		if (length > SHOWN) {
+			text.append(", ... ").append(length).append(" elements");
+		}
+		return text.append(']').toString();
+	}
+
+	private Type() {
+	}
+
+}
@@ -0,0 +1,300 @@
+package javiergs.vm;
+
+/**
+ * Infers the types of the values in register_zero before every instruction of a Program and replaces
+ * comparisons, logic operations and JMC with versions for one type when the types of their operands are known.
+ * A type is a set of Type tags (a bit mask). Variables get every type stored into them in the whole program,
+ * since STO does not convert values to the declared type. Generic opcodes stay where types are mixed.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class TypeInference {
+
+	private static final int INT = 1 << Type.INT;
+	private static final int FLOAT = 1 << Type.FLOAT;
+	private static final int BOOLEAN = 1 << Type.BOOLEAN;
+	private static final int STRING = 1 << Type.STRING;
+
+	private final Program program;
+	private final int[] variables;
+	private int[][] stacks;
+	private boolean variablesChanged;
+	private boolean typed;
+
+	TypeInference(Program program) {
+		this.program = program;
+		variables = new int[program.slots.length];
+		for (int slot = 0; slot < variables.length; slot++) {
+			variables[slot] = 1 << program.memory.types[slot];
+		}
+	}
+
+	/**
+	 * Types in register_zero before instruction pc, from the bottom to the top, or null if it is never reached.
+	 * Only valid after infer() returned true.
+	 */
+	int[] stackAt(int pc) {
+		return stacks[pc];
+	}
+
+	/**
+	 * Types stored in a variable in the whole program, or 0 when the program could not be typed.
+	 */
+	int variable(int slot) {
+		return typed ? variables[slot] : 0;
+	}
+
+	/**
+	 * Runs the analysis. It returns false when the program cannot be typed,
+	 * that is when two paths reach an instruction with a different number of values in register_zero.
+	 */
+	boolean infer() {
+		typed = false;
+		int size = program.size();
+		if (size == 0 || program.entry < 0 || program.entry >= size) {
+			stacks = new int[size][];
+			typed = true;
+			return true;
+		}
+		do {
+			variablesChanged = false;
+			stacks = new int[size][];
+			int[] worklist = new int[size];
+			boolean[] queued = new boolean[size];
+			int pending = 0;
+			stacks[program.entry] = new int[0];
+			worklist[pending++] = program.entry;
+			queued[program.entry] = true;
+			while (pending > 0) {
+				int pc = worklist[--pending];
+				queued[pc] = false;
+				int[] after = transfer(pc, stacks[pc]);
+				if (after == null) {
+					continue;
+				}
+				for (int next : successors(pc)) {
+					if (next < 0 || next >= size) {
+						continue;
+					}
+					int[] before = stacks[next];
+					boolean changed = false;
+					if (before == null) {
+						stacks[next] = after.clone();
+						changed = true;
+					} else if (before.length != after.length) {
+						return false;
+					} else {
+						for (int i = 0; i < before.length; i++) {
+							if ((before[i] | after[i]) != before[i]) {
+								before[i] |= after[i];
+								changed = true;
+							}
+						}
+					}
+					if (changed && !queued[next]) {
+						worklist[pending++] = next;
+						queued[next] = true;
+					}
+				}
+			}
+		} while (variablesChanged);
+		typed = true;
+		return true;
+	}
+
+	/**
+	 * A copy of the program with generic opcodes replaced by the specialized ones.
+	 * The program itself is not changed, so it can still be saved as Bytecode.
+	 */
+	Program specialize() {
+		if (!infer()) {
+			return program;
+		}
+		int[] opcodes = program.opcodes.clone();
+		for (int pc = 0; pc < opcodes.length; pc++) {
+			int[] stack = stacks[pc];
+			if (stack != null && stack.length >= Opcode.POPS[opcodes[pc]]) {
+				opcodes[pc] = specialized(pc, stack);
+			}
+		}
+		return program.withOpcodes(opcodes);
+	}
+
+	private int specialized(int pc, int[] stack) {
+		int opcode = program.opcodes[pc];
+		int top = stack.length > 0 ? stack[stack.length - 1] : 0;
+		int second = stack.length > 1 ? stack[stack.length - 2] : 0;
+		int both = top == second ? top : 0;
+		switch (opcode) {
+			case Opcode.JMC:
+				if (top == BOOLEAN) {
+					String expected = program.strings[program.operands2[pc]];
+					if (expected.equals("true")) {
+						return Opcode.JMC_TRUE;
+					} else if (expected.equals("false")) {
+						return Opcode.JMC_FALSE;
+					}
+				}
+				break;
+			case Opcode.OR:
+				return both == BOOLEAN ? Opcode.OR_BOOLEAN : opcode;
+			case Opcode.AND:
+				return both == BOOLEAN ? Opcode.AND_BOOLEAN : opcode;
+			case Opcode.NOT:
+				return top == BOOLEAN ? Opcode.NOT_BOOLEAN : opcode;
+			case Opcode.GT:
+				return both == INT ? Opcode.GT_INT : both == FLOAT ? Opcode.GT_FLOAT : opcode;
+			case Opcode.LT:
+				return both == INT ? Opcode.LT_INT : both == FLOAT ? Opcode.LT_FLOAT : opcode;
+			case Opcode.EQ:
+				return both == INT ? Opcode.EQ_INT : both == FLOAT ? Opcode.EQ_FLOAT
+					: both == BOOLEAN ? Opcode.EQ_BOOLEAN : both == STRING ? Opcode.EQ_STRING : opcode;
+			case Opcode.NE:
+				return both == INT ? Opcode.NE_INT : both == FLOAT ? Opcode.NE_FLOAT
+					: both == BOOLEAN ? Opcode.NE_BOOLEAN : both == STRING ? Opcode.NE_STRING : opcode;
+		}
+		return opcode;
+	}
+
+	private int[] successors(int pc) {
+		switch (program.opcodes[pc]) {
+			case Opcode.JMP:
+				return new int[]{program.operands[pc]};
+			case Opcode.JMC:
+			case Opcode.JMC_TRUE:
+			case Opcode.JMC_FALSE:
+				return new int[]{pc + 1, program.operands[pc]};
+			case Opcode.EXIT:
+			case Opcode.ERROR:
+				return new int[0];
+			default:
+				return new int[]{pc + 1};
+		}
+	}
+
+	/**
+	 * Types in register_zero after instruction pc, or null when the instruction always fails.
+	 */
+	private int[] transfer(int pc, int[] stack) {
+		int opcode = program.opcodes[pc];
+		int pops = Opcode.POPS[opcode];
+		if (stack.length < pops) {
+			return null;
+		}
+		int top = stack.length > 0 ? stack[stack.length - 1] : 0;
+		int second = stack.length > 1 ? stack[stack.length - 2] : 0;
+		int depth = stack.length - pops;
+		switch (opcode) {
+			case Opcode.LIT_INT:
+				return push(stack, depth, INT);
+			case Opcode.LIT_FLOAT:
+				return push(stack, depth, FLOAT);
+			case Opcode.LIT_BOOLEAN:
+				return push(stack, depth, BOOLEAN);
+			case Opcode.LIT_STRING:
+			case Opcode.READ_STRING:
+				return push(stack, depth, STRING);
+			case Opcode.READ_INT:
+				return push(stack, depth, INT);
+			case Opcode.READ_FLOAT:
+				return push(stack, depth, FLOAT);
+			case Opcode.READ_BOOLEAN:
+			case Opcode.LDX_BOOLEAN:
+				return push(stack, depth, BOOLEAN);
+			case Opcode.LDX_INT:
+				return push(stack, depth, INT);
+			case Opcode.LDX_FLOAT:
+				return push(stack, depth, FLOAT);
+			case Opcode.LOD:
+				return push(stack, depth, variables[program.operands[pc]]);
+			case Opcode.STO: {
+				int slot = program.operands[pc];
+				if ((variables[slot] | top) != variables[slot]) {
+					variables[slot] |= top;
+					variablesChanged = true;
+				}
+				return push(stack, depth, 0);
+			}
+			case Opcode.STL: {
+				int slot = program.operands[pc];
+				if ((variables[slot] | top) != variables[slot]) {
+					variables[slot] |= top;
+					variablesChanged = true;
+				}
+				return push(stack, depth, top);
+			}
+			case Opcode.ADD:
+			case Opcode.SUB:
+			case Opcode.MUL:
+			case Opcode.DIV: {
+				int result = arithmetic(second, top);
+				return result == 0 ? null : push(stack, depth, result);
+			}
+			case Opcode.OR:
+			case Opcode.AND:
+			case Opcode.NOT:
+			case Opcode.GT:
+			case Opcode.LT:
+			case Opcode.EQ:
+			case Opcode.NE:
+			case Opcode.OR_BOOLEAN:
+			case Opcode.AND_BOOLEAN:
+			case Opcode.NOT_BOOLEAN:
+			case Opcode.GT_INT:
+			case Opcode.GT_FLOAT:
+			case Opcode.LT_INT:
+			case Opcode.LT_FLOAT:
+			case Opcode.EQ_INT:
+			case Opcode.EQ_FLOAT:
+			case Opcode.EQ_BOOLEAN:
+			case Opcode.EQ_STRING:
+			case Opcode.NE_INT:
+			case Opcode.NE_FLOAT:
+			case Opcode.NE_BOOLEAN:
+			case Opcode.NE_STRING:
+				return push(stack, depth, BOOLEAN);
+			case Opcode.ERROR:
+				return null;
+			default:
+				return push(stack, depth, 0);
+		}
+	}
+
+	/**
+	 * Result of OPR 2 to 5 for every pair of operand types (see Interpreter.calculate); 0 when it always fails.
+	 */
+	private static int arithmetic(int first, int second) {
+		int result = 0;
+		for (int a = 0; a < 4; a++) {
+			for (int b = 0; b < 4; b++) {
+				if ((first & (1 << a)) == 0 || (second & (1 << b)) == 0) {
+					continue;
+				}
+				if (a == Type.STRING || b == Type.STRING) {
+					result |= STRING;
+				} else if (a == Type.BOOLEAN || b == Type.BOOLEAN) {
+					// fails at runtime
+				} else if (a == Type.FLOAT || b == Type.FLOAT) {
+					result |= FLOAT;
+				} else {
+					result |= INT;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Keeps the first depth types of the stack and pushes type on top (nothing when type is 0).
+	 */
+	private static int[] push(int[] stack, int depth, int type) {
+		int[] result = new int[type == 0 ? depth : depth + 1];
+		System.arraycopy(stack, 0, result, 0, depth);
+		if (type != 0) {
+			result[depth] = type;
+		}
+		return result;
+	}
+
+}
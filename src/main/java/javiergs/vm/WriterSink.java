@@ -0,0 +1,72 @@
+package javiergs.vm;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * OutputSink that collects the output in a StringBuilder of a fixed capacity and writes it to a Writer
+ * in one call when it is full or when the Flush policy says so.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+public final class WriterSink implements OutputSink {
+
+	private final Writer out;
+	private final int capacity;
+	private final Flush flush;
+	private final StringBuilder buffer;
+
+	/**
+	 * @param out      destination, flushed together with the sink
+	 * @param capacity characters kept before they are written
+	 * @param flush    when the characters are written before the buffer is full
+	 */
+	public WriterSink(Writer out, int capacity, Flush flush) {
+		this.out = out;
+		this.capacity = capacity;
+		this.flush = flush;
+		buffer = new StringBuilder(capacity);
+	}
+
+	@Override
+	public void write(String text) {
+		buffer.append(text);
+		if (OutputSink.due(flush, text)) {
+			flush();
+		} else if (buffer.length() >= capacity) {
+			drain();
+		}
+	}
+
+	@Override
+	public void flush() {
+		drain();
+		try {
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void drain() {
+		try {
+			out.append(buffer);
+			buffer.setLength(0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		flush();
+		try {
+			out.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
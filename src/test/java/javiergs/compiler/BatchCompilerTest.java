@@ -0,0 +1,62 @@
+package javiergs.compiler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Files compiled at the same time by the BatchCompiler must not see each other: two sources that declare
+ * the same variable with another type compile as they compile alone, however many run together.
+ * It runs the Lexer, the Parser and the semantic analysis of the project.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class BatchCompilerTest {
+
+	private static final String[] SOURCES = {"int.txt", "string.txt"};
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void clashingSymbolsCompiledAtTheSameTime() throws IOException, InterruptedException {
+		List<Path> sources = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			Path source = directory.resolve(i + "-" + SOURCES[i % 2]);
+			Files.writeString(source, resource(SOURCES[i % 2]));
+			sources.add(source);
+		}
+		List<Compiler.Result> alone = new ArrayList<>();
+		for (int i = 0; i < 2; i++) {
+			alone.add(new BatchCompiler(1, true).compile(sources.subList(i, i + 1)).get(0));
+			assertTrue(alone.get(i).isOk(), BatchCompiler.errors(alone.get(i)));
+		}
+		List<Compiler.Result> results = new BatchCompiler(4, true).compile(sources);
+		assertEquals(sources.size(), results.size());
+		for (int i = 0; i < results.size(); i++) {
+			Compiler.Result result = results.get(i);
+			assertEquals(sources.get(i).toString(), result.source);
+			assertTrue(result.isOk(), result.source + ": " + BatchCompiler.errors(result));
+			assertEquals(alone.get(i % 2).code, result.code, result.source);
+			assertEquals(alone.get(i % 2).tokens, result.tokens, result.source);
+		}
+	}
+
+	private static String resource(String name) throws IOException {
+		try (InputStream in = BatchCompilerTest.class.getResourceAsStream(name)) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+package javiergs.compiler;
+
+import javiergs.compiler.lexer.Token;
+import javiergs.compiler.lexer.Tokens;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.PlainDocument;
+import java.util.Random;
+import java.util.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The EditTracker must tell an edit that changes the tokens from one that only changes the white space,
+ * and replace in the tokens of the last compilation only the ones the edits changed.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class EditTrackerTest {
+
+	@Test
+	void spacesDoNotChangeTheTokens() throws BadLocationException {
+		PlainDocument document = new PlainDocument();
+		document.insertString(0, "int x ;\nx = 1 ;\n", null);
+		EditTracker tracker = new EditTracker(document);
+		assertTrue(tracker.changed());
+		tracker.compiled();
+		assertFalse(tracker.edited());
+		document.insertString(3, "  ", null);
+		assertTrue(tracker.edited());
+		assertFalse(tracker.changed());
+		document.insertString(0, "\n", null);
+		assertTrue(tracker.changed());
+	}
+
+	@Test
+	void wordsChangeTheTokens() throws BadLocationException {
+		PlainDocument document = new PlainDocument();
+		document.insertString(0, "int x ;\nx = 1 ;\n", null);
+		EditTracker tracker = new EditTracker(document);
+		tracker.compiled();
+		document.insertString(13, "2", null);
+		assertTrue(tracker.changed());
+		tracker.compiled();
+		document.remove(13, 1);
+		assertTrue(tracker.changed());
+	}
+
+	@Test
+	void compilesOnlyTheChangedTokens() throws BadLocationException {
+		PlainDocument document = new PlainDocument();
+		document.insertString(0, "int x ;\nint y ;\nx = 1 ;\ny = 2 ;\n", null);
+		EditTracker tracker = new EditTracker(document);
+		Vector<Token> compiled = tracker.compile();
+		tracker.compiled();
+		// 1 becomes 12, and a space that changes no token
+		document.insertString(21, "2", null);
+		document.insertString(26, " ", null);
+		assertTrue(tracker.first() >= 6 && tracker.first() <= 8);
+		assertEquals(5, tracker.tail());
+		assertSame(compiled, tracker.compile());
+		same(document, compiled);
+	}
+
+	@Test
+	void randomEditsCompileLikeTheWholeText() throws BadLocationException {
+		Random random = new Random(25);
+		String[] pieces = {" ", "\n", "x", "1", "if", "\"a b\"", "=", ";", "@"};
+		PlainDocument document = new PlainDocument();
+		document.insertString(0, "int x ;\nx = 1 ;\nprint ( x ) ;\n", null);
+		EditTracker tracker = new EditTracker(document);
+		for (int n = 0; n < 500; n++) {
+			for (int k = random.nextInt(4); k >= 0; k--) {
+				int offset = random.nextInt(document.getLength() + 1);
+				if (random.nextInt(3) == 0) {
+					document.remove(offset, random.nextInt(Math.min(6, document.getLength() - offset) + 1));
+				} else {
+					document.insertString(offset, pieces[random.nextInt(pieces.length)], null);
+				}
+			}
+			if (random.nextInt(10) == 0) {
+				tracker.reset();
+			}
+			same(document, tracker.compile());
+			tracker.compiled();
+		}
+	}
+
+	private static void same(PlainDocument document, Vector<Token> tokens) throws BadLocationException {
+		Vector<Token> expected = Tokens.of(document.getText(0, document.getLength())).toVector();
+		assertEquals(expected.size(), tokens.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getWord(), tokens.get(i).getWord(), "token " + i);
+			assertEquals(expected.get(i).getToken(), tokens.get(i).getToken(), "token " + i);
+			assertEquals(expected.get(i).getLine(), tokens.get(i).getLine(), "token " + i);
+		}
+	}
+
+}
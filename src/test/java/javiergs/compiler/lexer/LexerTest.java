@@ -0,0 +1,65 @@
+package javiergs.compiler.lexer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tokens must find the tokens the Lexer of the project finds: the same words, kinds and lines,
+ * and the same number of errors, so the compiler can count errors with either of them.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class LexerTest {
+
+	private static final String[] SOURCES = {"/javiergs/compiler/int.txt", "/javiergs/compiler/string.txt",
+		"/javiergs/compiler/lexer/rules.txt"};
+
+	@Test
+	void sameTokensAsTheLexer() throws IOException {
+		for (String source : SOURCES) {
+			same(resource(source), source);
+		}
+	}
+
+	@Test
+	void sameTokensWithoutWhiteSpace() {
+		same("{int x;x=1+2;print(x);}", "no white space");
+		same("if(x<=3){y=x;}else{y=0x0;}", "no white space");
+		same("\n\n  x = \"a\" ;\r\n  y = 'b' ;\n", "line breaks");
+		same("", "empty");
+	}
+
+	private static void same(String text, String source) {
+		Lexer lexer = new Lexer(text);
+		lexer.run();
+		Vector<Token> expected = lexer.getTokens();
+		Tokens tokens = Tokens.of(text);
+		assertEquals(expected.size(), tokens.size(), source);
+		int errors = 0;
+		for (int i = 0; i < tokens.size(); i++) {
+			Token token = expected.get(i);
+			String where = source + ", token " + i;
+			assertEquals(token.getWord(), tokens.word(i), where);
+			assertEquals(token.getToken(), tokens.kind(i).name(), where);
+			assertEquals(token.getLine(), tokens.line(i), where);
+			if (token.getToken().equals(TokenKind.ERROR.name())) {
+				errors++;
+			}
+		}
+		assertEquals(errors, tokens.errors(), source);
+	}
+
+	private static String resource(String name) throws IOException {
+		try (InputStream in = LexerTest.class.getResourceAsStream(name)) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+}
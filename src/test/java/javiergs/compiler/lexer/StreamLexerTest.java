@@ -0,0 +1,121 @@
+package javiergs.compiler.lexer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The StreamLexer must find the tokens Tokens finds in the whole text, however the Reader splits the source.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class StreamLexerTest {
+
+	@Test
+	void readsTheTokensOfTheWholeText() throws IOException {
+		String text = resource("/javiergs/compiler/lexer/rules.txt");
+		same(Tokens.of(text), new StreamLexer(text), text);
+	}
+
+	@Test
+	void readsTheTokensWhenTheReaderGivesFewCharacters() throws IOException {
+		String text = resource("/javiergs/compiler/lexer/rules.txt");
+		for (int chunk = 1; chunk <= 3; chunk++) {
+			same(Tokens.of(text), new StreamLexer(new Trickle(text, chunk)), "chunks of " + chunk);
+		}
+	}
+
+	@Test
+	void readsTokensLongerThanTheBuffer() {
+		String word = "x".repeat(20000);
+		String text = "int " + word + " = \"" + "y".repeat(9000) + "\" ;\n" + word + " = 1 ;";
+		same(Tokens.of(text), new StreamLexer(new StringReader(text)), "long tokens");
+	}
+
+	@Test
+	void peeksAheadWithoutTakingTheTokens() {
+		StreamLexer lexer = new StreamLexer("int x = 1 ;");
+		assertEquals(";", lexer.peek(4).getWord());
+		assertNull(lexer.peek(5));
+		assertEquals("int", lexer.peek(0).getWord());
+		assertEquals("int", lexer.next().getWord());
+		assertEquals("x", lexer.peek(0).getWord());
+		assertThrows(IllegalArgumentException.class, () -> lexer.peek(StreamLexer.LOOKAHEAD));
+	}
+
+	@Test
+	void takesTheTokensIntoAVectorForTheParser() {
+		StreamLexer lexer = new StreamLexer("int x = 1 ;\nx = @ ;");
+		lexer.next();
+		Vector<Token> tokens = lexer.toVector();
+		assertEquals(8, tokens.size());
+		assertEquals("x", tokens.get(0).getWord());
+		assertEquals("IDENTIFIER", tokens.get(0).getToken());
+		assertEquals(2, tokens.get(4).getLine());
+		assertEquals("ERROR", tokens.get(6).getToken());
+		assertEquals(1, lexer.errors());
+		assertFalse(lexer.hasNext());
+	}
+
+	private static void same(Tokens expected, StreamLexer lexer, String where) {
+		for (int i = 0; i < expected.size(); i++) {
+			String token = where + ", token " + i;
+			Lexeme lexeme = lexer.next();
+			assertEquals(expected.kind(i), lexeme.getKind(), token);
+			assertEquals(expected.offset(i), lexeme.getOffset(), token);
+			assertEquals(expected.line(i), lexeme.getLine(), token);
+			assertEquals(expected.word(i), lexeme.getWord(), token);
+		}
+		assertFalse(lexer.hasNext(), where);
+		assertEquals(expected.errors(), lexer.errors(), where);
+	}
+
+	private static String resource(String name) throws IOException {
+		try (InputStream in = StreamLexerTest.class.getResourceAsStream(name)) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Reader that gives at most chunk characters on each read.
+	 */
+	private static final class Trickle extends Reader {
+
+		private final String text;
+		private final int chunk;
+		private int position;
+
+		Trickle(String text, int chunk) {
+			this.text = text;
+			this.chunk = chunk;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int length) {
+			if (position == text.length()) {
+				return -1;
+			}
+			int n = Math.min(Math.min(chunk, length), text.length() - position);
+			text.getChars(position, position + n, buffer, offset);
+			position += n;
+			return n;
+		}
+
+		@Override
+		public void close() {
+		}
+
+	}
+
+}
@@ -0,0 +1,124 @@
+package javiergs.compiler.lexer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * After any edit, Tokens.edit must leave the tokens a full lexing of the new text finds.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class TokensTest {
+
+	// characters that start, end or join tokens of every rule
+	private static final String CHARACTERS = "ax_$019b.\"'\\ \n\t=!<&|+;(@";
+	private static final String[] PIECES = {" ", "\n", "if", "int x", "0x1F", "12.5", "\"a b\"", "'c'", "==", "&&",
+		"/", "{ }", "x@y"};
+
+	@Test
+	void randomEditsLexLikeTheWholeText() throws IOException {
+		Random random = new Random(340);
+		StringBuilder text = new StringBuilder(resource("/javiergs/compiler/lexer/rules.txt"));
+		Tokens tokens = Tokens.of(text.toString());
+		Tokens inPlace = Tokens.of(text.toString());
+		for (int n = 0; n < 5000; n++) {
+			int offset = random.nextInt(text.length() + 1);
+			int removed = random.nextInt(4) == 0 ? random.nextInt(Math.min(12, text.length() - offset) + 1) : 0;
+			String inserted = random.nextBoolean()
+				? String.valueOf(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())))
+				: PIECES[random.nextInt(PIECES.length)];
+			if (removed > 0 && random.nextBoolean()) {
+				inserted = "";
+			}
+			String before = text.toString();
+			text.replace(offset, offset + removed, inserted);
+			Tokens.Edit edit = tokens.edit(text.toString().toCharArray(), offset, removed, inserted.length());
+			// the inserted characters in the middle of a bigger array, as a Segment gives them
+			char[] segment = ("<<" + inserted + ">>").toCharArray();
+			Tokens.Edit edited = inPlace.edit(offset, removed, segment, 2, inserted.length());
+			String where = "edit " + n + " at " + offset + " of " + before;
+			same(Tokens.of(text.toString()), tokens, where);
+			same(Tokens.of(text.toString()), inPlace, where + ", in place");
+			assertEquals(edit.first, edited.first, where);
+			assertEquals(edit.removed, edited.removed, where);
+			assertEquals(edit.added, edited.added, where);
+			assertEquals(edit.same, edited.same, where);
+			assertEquals(edit.lines, edited.lines, where);
+			assertEquals(sameWords(Tokens.of(before), edit.first, edit.removed, tokens, edit.added), edit.same, where);
+		}
+	}
+
+	@Test
+	void editsFromAndToAnEmptyText() {
+		Tokens tokens = Tokens.of("");
+		tokens.edit("x = 1 ;".toCharArray(), 0, 0, 7);
+		same(Tokens.of("x = 1 ;"), tokens, "insert");
+		tokens.edit("".toCharArray(), 0, 7, 0);
+		same(Tokens.of(""), tokens, "remove");
+	}
+
+	@Test
+	void spaceInsideALineKeepsTheTokens() {
+		Tokens tokens = Tokens.of("x = 1 ;\ny = 2 ;");
+		Tokens.Edit edit = tokens.edit("x  = 1 ;\ny = 2 ;".toCharArray(), 1, 0, 1);
+		assertTrue(edit.same);
+		assertEquals(0, edit.lines);
+		edit = tokens.edit("x  = 1 ;\n\ny = 2 ;".toCharArray(), 9, 0, 1);
+		assertEquals(1, edit.lines);
+		same(Tokens.of("x  = 1 ;\n\ny = 2 ;"), tokens, "new line");
+	}
+
+	@Test
+	void givesTheParserTheTokensOfTheStreamLexer() throws IOException {
+		String text = resource("/javiergs/compiler/lexer/rules.txt");
+		Vector<Token> expected = new StreamLexer(text).toVector();
+		Vector<Token> tokens = Tokens.of(text).toVector();
+		assertEquals(expected.size(), tokens.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getWord(), tokens.get(i).getWord(), "token " + i);
+			assertEquals(expected.get(i).getToken(), tokens.get(i).getToken(), "token " + i);
+			assertEquals(expected.get(i).getLine(), tokens.get(i).getLine(), "token " + i);
+		}
+	}
+
+	private static boolean sameWords(Tokens old, int first, int removed, Tokens tokens, int added) {
+		if (removed != added) {
+			return false;
+		}
+		for (int i = first; i < first + added; i++) {
+			if (old.kind(i) != tokens.kind(i) || old.line(i) != tokens.line(i) || !old.word(i).equals(tokens.word(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void same(Tokens expected, Tokens tokens, String where) {
+		assertEquals(expected.size(), tokens.size(), where);
+		for (int i = 0; i < expected.size(); i++) {
+			String token = where + ", token " + i;
+			assertEquals(expected.kind(i), tokens.kind(i), token);
+			assertEquals(expected.offset(i), tokens.offset(i), token);
+			assertEquals(expected.length(i), tokens.length(i), token);
+			assertEquals(expected.line(i), tokens.line(i), token);
+			assertEquals(expected.word(i), tokens.word(i), token);
+		}
+		assertEquals(expected.errors(), tokens.errors(), where);
+	}
+
+	private static String resource(String name) throws IOException {
+		try (InputStream in = TokensTest.class.getResourceAsStream(name)) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+}
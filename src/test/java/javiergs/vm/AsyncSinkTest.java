@@ -0,0 +1,199 @@
+package javiergs.vm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The AsyncSink passes the output on in its own thread: in order, waiting when the queue is full,
+ * and throwing the failures of the destination on the next call.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class AsyncSinkTest {
+
+	@Test
+	void passesEverythingInOrder() {
+		Target target = new Target();
+		AsyncSink sink = new AsyncSink(target, 8, 2, OutputSink.Flush.END);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sink.write(" " + i);
+			expected.append(' ').append(i);
+		}
+		sink.close();
+		assertEquals(expected.toString(), target.text());
+		assertTrue(target.closed);
+		sink.close();
+	}
+
+	@Test
+	void waitsWhenTheQueueIsFull() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		Target target = new Target() {
+			@Override
+			public void write(String text) {
+				await(release);
+				super.write(text);
+			}
+		};
+		// one chunk in the destination and one in the queue, the third write waits
+		AsyncSink sink = new AsyncSink(target, 1, 1, OutputSink.Flush.END);
+		CountDownLatch written = new CountDownLatch(1);
+		Thread program = new Thread(() -> {
+			sink.write("a");
+			sink.write("b");
+			sink.write("c");
+			written.countDown();
+		});
+		program.start();
+		assertFalse(written.await(200, TimeUnit.MILLISECONDS));
+		assertEquals("", target.text());
+		release.countDown();
+		assertTrue(written.await(5, TimeUnit.SECONDS));
+		program.join();
+		sink.flush();
+		assertEquals("abc", target.text());
+	}
+
+	@Test
+	void flushWaitsForTheDestination() {
+		Target target = new Target() {
+			@Override
+			public void write(String text) {
+				sleep();
+				super.write(text);
+			}
+		};
+		AsyncSink sink = new AsyncSink(target, 2, 4, OutputSink.Flush.END);
+		sink.write("ab");
+		sink.write("cd");
+		sink.write("e");
+		sink.flush();
+		assertEquals("abcde", target.text());
+		assertEquals(1, target.flushes);
+	}
+
+	@Test
+	void lineQueuesAfterEveryNewLine() {
+		Target target = new Target();
+		AsyncSink sink = new AsyncSink(target, 100, 4, OutputSink.Flush.LINE);
+		sink.write("a");
+		sink.write("b\n");
+		sink.write("c");
+		// the flush of the line is done before the one asked for here
+		sink.flush();
+		assertEquals("ab\nc", target.text());
+		assertEquals(2, target.flushes);
+	}
+
+	@Test
+	void failuresAreThrownByTheNextCall() throws InterruptedException {
+		IllegalStateException failure = new IllegalStateException("disk full");
+		CountDownLatch fail = new CountDownLatch(1);
+		CountDownLatch after = new CountDownLatch(1);
+		Target target = new Target() {
+			@Override
+			public void write(String text) {
+				if (text.equals("bad")) {
+					await(fail);
+					throw failure;
+				}
+				super.write(text);
+				after.countDown();
+			}
+		};
+		AsyncSink sink = new AsyncSink(target, 3, 4, OutputSink.Flush.END);
+		sink.write("bad");
+		sink.write("yes");
+		fail.countDown();
+		// the failed chunk was taken before this one, so the failure is known
+		assertTrue(after.await(5, TimeUnit.SECONDS));
+		assertSame(failure, assertThrows(IllegalStateException.class, () -> sink.write("one")));
+		// thrown once
+		sink.write("two");
+		sink.write("bad");
+		assertSame(failure, assertThrows(IllegalStateException.class, sink::flush));
+		sink.close();
+		// the calls that throw do not write
+		assertEquals("yestwo", target.text());
+	}
+
+	@Test
+	void closeThrowsTheFailureOfTheDestination() {
+		IllegalStateException failure = new IllegalStateException("cannot close");
+		Target target = new Target() {
+			@Override
+			public void close() {
+				throw failure;
+			}
+		};
+		AsyncSink sink = new AsyncSink(target, 8, 4, OutputSink.Flush.END);
+		sink.write("x");
+		assertSame(failure, assertThrows(IllegalStateException.class, sink::close));
+		assertEquals("x", target.text());
+	}
+
+	@Test
+	void noWritesAfterClose() {
+		AsyncSink sink = new AsyncSink(new Target(), 100, 4, OutputSink.Flush.END);
+		sink.close();
+		assertThrows(IllegalStateException.class, () -> sink.write("x"));
+		assertThrows(IllegalStateException.class, sink::flush);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void sleep() {
+		try {
+			Thread.sleep(20);
+		} catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Destination that keeps what it gets; only the thread of the sink calls it before close returns.
+	 */
+	private static class Target implements OutputSink {
+
+		private final StringBuffer text = new StringBuffer();
+		volatile int flushes;
+		volatile boolean closed;
+
+		@Override
+		public void write(String text) {
+			this.text.append(text);
+		}
+
+		@Override
+		public void flush() {
+			flushes++;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+
+		String text() {
+			return text.toString();
+		}
+
+	}
+
+}
@@ -0,0 +1,56 @@
+package javiergs.vm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The BatchRunner runs every program on its own and returns the results in order.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class BatchRunnerTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void resultsInOrder() throws IOException, InterruptedException {
+		List<Path> programs = new ArrayList<>();
+		for (String name : new String[]{"loop", "example", "arithmetic", "strings", "numeric"}) {
+			Path program = directory.resolve(name + ".txt");
+			Files.writeString(program, InterpreterParityTest.resource(name + ".txt"));
+			programs.add(program);
+		}
+		List<BatchRunner.Result> results = new BatchRunner(3, 0).run(programs);
+		for (int i = 0; i < programs.size(); i++) {
+			String name = programs.get(i).getFileName().toString().replace(".txt", "");
+			assertEquals(programs.get(i), results.get(i).program);
+			assertEquals("ok", results.get(i).status, name);
+			assertEquals(InterpreterParityTest.resource(name + ".out"), results.get(i).output, name);
+		}
+	}
+
+	@Test
+	void outputLimit() throws IOException, InterruptedException {
+		Path program = directory.resolve("forever.txt");
+		Files.writeString(program, "@\nlit \"ñ\", 0\nopr 21, 0\njmp 1, 0\n");
+		BatchRunner runner = new BatchRunner(1, -1);
+		runner.setOutputLimit(1000);
+		BatchRunner.Result result = runner.run(List.of(program)).get(0);
+		assertEquals("error", result.status);
+		assertTrue(result.error.contains("the output is over 1000 bytes"), result.error);
+		assertTrue(result.output.startsWith(" \"ñ\"\n \"ñ\"\n"));
+		assertTrue(result.output.length() <= 1000);
+	}
+
+}
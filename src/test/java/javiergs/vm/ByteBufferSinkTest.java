@@ -0,0 +1,50 @@
+package javiergs.vm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The ByteBufferSink keeps UTF-8 up to its maximum and rejects text it cannot encode.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class ByteBufferSinkTest {
+
+	@Test
+	void growsUpToTheMaximum() {
+		ByteBufferSink sink = new ByteBufferSink(1, 64);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 10; i++) {
+			sink.write(" ñ" + i);
+			expected.append(" ñ").append(i);
+		}
+		assertEquals(expected.toString(), sink.toString());
+		assertEquals(40, sink.size());
+		assertThrows(IllegalStateException.class, () -> sink.write("a long text that does not fit in the buffer"));
+		assertEquals(64, sink.size());
+	}
+
+	@Test
+	void rejectsLoneSurrogates() {
+		ByteBufferSink sink = new ByteBufferSink(4, 64);
+		sink.write("ok ");
+		assertThrows(IllegalStateException.class, () -> sink.write("a\uD800b"));
+		assertEquals("ok ", sink.toString());
+		sink.write("😀");
+		assertEquals("ok 😀", sink.toString());
+	}
+
+	@Test
+	void programOutput() {
+		ByteBufferSink sink = new ByteBufferSink(16, 1 << 16);
+		Interpreter interpreter = new Interpreter(InterpreterListener.NONE);
+		interpreter.setOutput(sink);
+		interpreter.init("@\nlit \"añb\", 0\nopr 20, 0\nlit 2, 0\nopr 21, 0\nopr 0, 0\n");
+		interpreter.run();
+		assertEquals(" \"añb\" 2\n", sink.toString());
+	}
+
+}
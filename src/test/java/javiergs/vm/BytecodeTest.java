@@ -0,0 +1,197 @@
+package javiergs.vm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Programs saved as bytecode load and run as the text they come from; damaged files are rejected.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class BytecodeTest {
+
+	// offsets in the header
+	private static final int SIZE = 8;
+	private static final int SLOTS = 12;
+	private static final int STRINGS = 16;
+	private static final int ENTRY = 20;
+
+	@TempDir
+	Path directory;
+
+	@ParameterizedTest
+	@ValueSource(strings = {"loop", "example", "arithmetic", "strings", "numeric"})
+	void roundTrip(String name) throws IOException {
+		Path file = save(name);
+		assertTrue(Bytecode.isBytecode(file));
+		Program program = Bytecode.read(file);
+		Path again = directory.resolve("again.tcvm");
+		Bytecode.write(program, again);
+		assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(again));
+		StringBuilder screen = new StringBuilder();
+		Interpreter interpreter = new Interpreter(new InterpreterListener() {
+			@Override
+			public void writeScreen(String msg) {
+				screen.append(msg);
+			}
+		});
+		interpreter.load(file);
+		interpreter.go("all");
+		assertEquals(Outcome.FINISHED, interpreter.getOutcome());
+		assertEquals(InterpreterParityTest.resource(name + ".out"), screen.toString());
+	}
+
+	@Test
+	void jumpsPastTheEndGoToTheEnd() throws IOException {
+		Program program = Bytecode.read(save("lit 1, 0\njmp 99, 0\nopr 21, 0\n"));
+		assertEquals(Opcode.JMP, program.opcodes[1]);
+		assertEquals(program.size(), program.operands[1]);
+	}
+
+	@Test
+	void rejectsOtherFiles() throws IOException {
+		Path file = directory.resolve("text.txt");
+		Files.writeString(file, "x, int, global, 0\n@\nlod x, 0\nopr 21, 0\nopr 0, 0\n");
+		assertFalse(Bytecode.isBytecode(file));
+		assertThrows(IOException.class, () -> Bytecode.read(file));
+	}
+
+	@Test
+	void rejectsOtherVersions() throws IOException {
+		Path file = save("loop");
+		assertThrows(IOException.class, () -> Bytecode.read(patch(file, 4, (short) (Bytecode.VERSION + 1))));
+	}
+
+	@Test
+	void rejectsEntriesOutOfTheProgram() throws IOException {
+		Path file = save("loop");
+		int size = ByteBuffer.wrap(Files.readAllBytes(file)).getInt(SIZE);
+		assertThrows(IOException.class, () -> Bytecode.read(patch(file, ENTRY, -1)));
+		assertThrows(IOException.class, () -> Bytecode.read(patch(file, ENTRY, size)));
+	}
+
+	@Test
+	void rejectsJumpsOutOfTheProgram() throws IOException {
+		Path file = save("loop");
+		byte[] bytes = Files.readAllBytes(file);
+		int size = ByteBuffer.wrap(bytes).getInt(SIZE);
+		int jump = find(bytes, Opcode.JMP);
+		int operand = bytes.length - 8 * size + 4 * jump;
+		assertEquals(size, Bytecode.read(patch(file, operand, size)).operands[jump]);
+		assertThrows(IOException.class, () -> Bytecode.read(patch(file, operand, size + 1)));
+		assertThrows(IOException.class, () -> Bytecode.read(patch(file, operand, -1)));
+	}
+
+	@Test
+	void rejectsIndexesOutOfRange() throws IOException {
+		Path file = save("loop");
+		assertThrows(IOException.class, () -> Bytecode.read(patch(file, STRINGS, 1 << 20)));
+		byte[] bytes = Files.readAllBytes(file);
+		int size = ByteBuffer.wrap(bytes).getInt(SIZE);
+		int operand = bytes.length - 8 * size + 4 * find(bytes, Opcode.STO);
+		assertThrows(IOException.class, () -> Bytecode.read(patch(file, operand, 99)));
+	}
+
+	@Test
+	void rejectsTruncatedFiles() throws IOException {
+		Path file = save("loop");
+		byte[] bytes = Files.readAllBytes(file);
+		Path truncated = directory.resolve("truncated.tcvm");
+		Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 4));
+		assertThrows(IOException.class, () -> Bytecode.read(truncated));
+	}
+
+	@Test
+	void rejectsCountsLargerThanTheFile() throws IOException {
+		Path file = save("loop");
+		for (int offset : new int[]{SIZE, SLOTS, STRINGS}) {
+			corrupted(patch(file, offset, Integer.MAX_VALUE));
+			corrupted(patch(file, offset, -1));
+		}
+		// length of the first string
+		corrupted(patch(file, 24, Integer.MAX_VALUE));
+		corrupted(patch(file, 24, -2));
+	}
+
+	@Test
+	void rejectsArraysLongerThanDeclared() throws IOException {
+		Path file = save("sieve");
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+		int position = 24;
+		for (int i = buffer.getInt(STRINGS); i > 0; i--) {
+			position += 4 + (buffer.getInt(position) + 3 & ~3);
+		}
+		int arrays = 0;
+		for (int slot = buffer.getInt(SLOTS); slot > 0; slot--, position += 16) {
+			if ((buffer.getInt(position + 8) & 0xff) == Type.ARRAY) {
+				corrupted(patch(file, position + 12, Integer.MAX_VALUE));
+				corrupted(patch(file, position + 12, -1));
+				arrays++;
+			}
+		}
+		assertEquals(2, arrays);
+	}
+
+	private static void corrupted(Path file) {
+		IOException e = assertThrows(IOException.class, () -> Bytecode.read(file));
+		assertTrue(e.getMessage().startsWith("corrupted bytecode file"), e.getMessage());
+	}
+
+	/**
+	 * Saves a program of programs/ (or the code, when it is not the name of one) as bytecode.
+	 */
+	private Path save(String program) throws IOException {
+		String code = program.contains("\n") ? "@\n" + program : InterpreterParityTest.resource(program + ".txt");
+		Interpreter interpreter = new Interpreter(InterpreterListener.NONE);
+		interpreter.init(code);
+		Path file = directory.resolve("program.tcvm");
+		interpreter.save(file);
+		return file;
+	}
+
+	/**
+	 * Index of the first instruction with the opcode in a bytecode file.
+	 */
+	private static int find(byte[] bytes, int opcode) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		int size = buffer.getInt(SIZE);
+		for (int pc = 0; pc < size; pc++) {
+			if (buffer.getInt(bytes.length - 12 * size + 4 * pc) == opcode) {
+				return pc;
+			}
+		}
+		throw new AssertionError("no opcode " + opcode);
+	}
+
+	private Path patch(Path file, int offset, int value) throws IOException {
+		ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+		bytes.putInt(offset, value);
+		Path patched = directory.resolve("patched.tcvm");
+		Files.write(patched, bytes.array());
+		return patched;
+	}
+
+	private Path patch(Path file, int offset, short value) throws IOException {
+		ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+		bytes.putShort(offset, value);
+		Path patched = directory.resolve("patched.tcvm");
+		Files.write(patched, bytes.array());
+		return patched;
+	}
+
+}
@@ -0,0 +1,248 @@
+package javiergs.vm;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checkpoints read back as they were written, and damaged checkpoints or checkpoints of another program
+ * are rejected.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class CheckpointTest {
+
+	// offsets in the header
+	private static final int VERSION = 4;
+	private static final int PC = 14;
+	private static final int OUTCOME = 18;
+	private static final int INPUT = 43;
+	private static final int DEPTH = 51;
+	// adds four ints of the input and prints the sum
+	private static final String READS = "i, int, global, 0\ns, int, global, 0\n#L1, int, 1\n#L2, int, 14\n@\n"
+		+ "lod i, 0\nlit 4, 0\nopr 12, 0\njmc #L2, false\nopr 22, 0\nlod s, 0\nopr 2, 0\nsto s, 0\n"
+		+ "lod i, 0\nlit 1, 0\nopr 2, 0\nsto i, 0\njmp #L1, 0\nlod s, 0\nopr 21, 0\nopr 0, 0\n";
+
+	@Test
+	void roundTrip() throws IOException {
+		OperandStack stack = new OperandStack();
+		stack.pushInt(-7);
+		stack.pushFloat(2.5f);
+		stack.pushBoolean(true);
+		stack.pushString("añb, \"c\"");
+		Memory memory = new Memory(6);
+		memory.types[0] = Type.INT;
+		memory.ints[0] = Integer.MIN_VALUE;
+		memory.types[1] = Type.FLOAT;
+		memory.floats[1] = Float.NaN;
+		memory.types[2] = Type.STRING;
+		memory.refs[2] = "";
+		memory.types[3] = Type.ARRAY;
+		memory.refs[3] = new int[]{1, -2, 3};
+		memory.types[4] = Type.ARRAY;
+		memory.refs[4] = new float[]{0.5f};
+		memory.types[5] = Type.ARRAY;
+		memory.refs[5] = new boolean[]{true, false};
+		Checkpoint checkpoint = new Checkpoint(42L, 3, Outcome.RUNNING, 1000L, 2000L, 30L, 5L, stack, memory);
+		byte[] bytes = checkpoint.toBytes();
+		Checkpoint read = Checkpoint.read(new ByteArrayInputStream(bytes));
+		assertEquals(42L, read.fingerprint);
+		assertEquals(3, read.pc);
+		assertEquals(Outcome.RUNNING, read.outcome);
+		assertEquals(1000L, read.executed);
+		assertEquals(2000L, read.elapsed);
+		assertEquals(30L, read.screen);
+		assertEquals(5L, read.input);
+		assertEquals(4, read.stack.size());
+		assertEquals("añb, \"c\"", read.stack.popString());
+		assertArrayEquals(new int[]{1, -2, 3}, (int[]) read.memory.refs[3]);
+		assertArrayEquals(new boolean[]{true, false}, (boolean[]) read.memory.refs[5]);
+		read.stack.pushString("añb, \"c\"");
+		assertArrayEquals(bytes, read.toBytes());
+	}
+
+	@Test
+	void restoresAProgram() throws IOException {
+		String code = InterpreterParityTest.resource("sum.txt");
+		Interpreter first = interpreter(code);
+		first.runFor(0);
+		assertFalse(first.isFinished());
+		byte[] bytes = first.checkpoint();
+		Interpreter second = interpreter(code);
+		second.restore(bytes);
+		assertEquals(first.getExecuted(), second.getExecuted());
+		assertArrayEquals(bytes, second.checkpoint());
+	}
+
+	@Test
+	void restoresTheInputPosition() throws IOException {
+		String whole = screen(READS, "1 2 3 4", null);
+		assertEquals(" 10\n", whole);
+		Interpreter first = interpreter(READS);
+		InputSource input = InputSource.of("1 2 3 4");
+		first.setInput(input);
+		while (input.position() < 2) {
+			first.go("step");
+		}
+		byte[] bytes = first.checkpoint();
+		assertEquals(2, Checkpoint.read(new ByteArrayInputStream(bytes)).input);
+		// the input from its start, or already where the checkpoint was taken
+		assertEquals(whole, screen(READS, "1 2 3 4", bytes));
+		InputSource rest = InputSource.of("1 2 3 4");
+		rest.skip(2);
+		Interpreter second = interpreter(READS);
+		second.setInput(rest);
+		second.restore(bytes);
+		assertEquals(2, rest.position());
+		assertEquals(3, rest.nextInt());
+	}
+
+	@Test
+	void rejectsInputThatCannotContinue() throws IOException {
+		Interpreter first = interpreter(READS);
+		InputSource input = InputSource.of("1 2 3 4");
+		first.setInput(input);
+		while (input.position() < 3) {
+			first.go("step");
+		}
+		byte[] bytes = first.checkpoint();
+		assertThrows(IOException.class, () -> interpreter(READS).restore(bytes));
+		Interpreter shorter = interpreter(READS);
+		shorter.setInput(InputSource.of("1 2"));
+		assertThrows(IOException.class, () -> shorter.restore(bytes));
+		Interpreter after = interpreter(READS);
+		InputSource past = InputSource.of("1 2 3 4");
+		past.skip(4);
+		after.setInput(past);
+		assertThrows(IOException.class, () -> after.restore(bytes));
+	}
+
+	@Test
+	void rejectsDamagedCheckpoints() {
+		byte[] bytes = new Checkpoint(1L, 0, Outcome.RUNNING, 0, 0, 0, 0, new OperandStack(), new Memory(0)).toBytes();
+		assertThrows(IOException.class, () -> read(patch(bytes, 0, 0)));
+		assertThrows(IOException.class, () -> read(patchShort(bytes, VERSION, Checkpoint.VERSION + 1)));
+		assertThrows(IOException.class, () -> read(patchByte(bytes, OUTCOME, Outcome.values().length)));
+		assertThrows(IOException.class, () -> read(patch(bytes, INPUT, -1)));
+		assertThrows(IOException.class, () -> read(patch(bytes, DEPTH, -1)));
+		// one value of an unknown type in register_zero
+		byte[] value = Arrays.copyOf(patch(bytes, DEPTH, 1), bytes.length + 5);
+		System.arraycopy(value, DEPTH + 4, value, DEPTH + 9, bytes.length - DEPTH - 4);
+		value[DEPTH + 4] = 99;
+		assertThrows(IOException.class, () -> read(value));
+		for (int length = 0; length < bytes.length; length++) {
+			byte[] truncated = Arrays.copyOf(bytes, length);
+			assertThrows(IOException.class, () -> read(truncated));
+		}
+	}
+
+	@Test
+	void rejectsCheckpointsOfOtherPrograms() throws IOException {
+		Interpreter sum = interpreter(InterpreterParityTest.resource("sum.txt"));
+		sum.runFor(0);
+		byte[] bytes = sum.checkpoint();
+		assertThrows(IOException.class, () -> interpreter(InterpreterParityTest.resource("loop.txt")).restore(bytes));
+		Interpreter other = interpreter(InterpreterParityTest.resource("sum.txt"));
+		assertThrows(IOException.class, () -> other.restore(patch(bytes, PC, 1000)));
+		assertThrows(IOException.class, () -> other.restore(patch(bytes, PC, -1)));
+		other.restore(bytes);
+	}
+
+	@Test
+	void rejectsArraysOfAnotherTypeOrLength() throws IOException {
+		String code = InterpreterParityTest.resource("sieve.txt");
+		Interpreter sieve = interpreter(code);
+		sieve.runFor(0);
+		Checkpoint checkpoint = Checkpoint.read(new ByteArrayInputStream(sieve.checkpoint()));
+		Memory memory = checkpoint.memory.copy();
+		int f = slot(memory, float[].class);
+		int i = slot(memory, null);
+		memory.refs[f] = new float[11];
+		assertThrows(IOException.class, () -> interpreter(code).restore(copy(checkpoint, memory)));
+		memory.refs[f] = new int[10];
+		assertThrows(IOException.class, () -> interpreter(code).restore(copy(checkpoint, memory)));
+		memory.refs[f] = new float[10];
+		memory.types[i] = Type.ARRAY;
+		memory.refs[i] = new int[1];
+		assertThrows(IOException.class, () -> interpreter(code).restore(copy(checkpoint, memory)));
+		memory.types[i] = Type.INT;
+		memory.refs[i] = null;
+		interpreter(code).restore(copy(checkpoint, memory));
+	}
+
+	/**
+	 * The first slot that keeps an array of the class, or the first one that keeps an int when it is null.
+	 */
+	private static int slot(Memory memory, Class<?> array) {
+		for (int slot = 0; slot < memory.size(); slot++) {
+			if (array == null ? memory.types[slot] == Type.INT : array.isInstance(memory.refs[slot])) {
+				return slot;
+			}
+		}
+		throw new AssertionError("no slot of " + array);
+	}
+
+	private static byte[] copy(Checkpoint checkpoint, Memory memory) {
+		return new Checkpoint(checkpoint.fingerprint, checkpoint.pc, checkpoint.outcome, checkpoint.executed,
+			checkpoint.elapsed, checkpoint.screen, checkpoint.input, checkpoint.stack, memory).toBytes();
+	}
+
+	/**
+	 * The screen of the program run over the input, from the checkpoint when it is not null.
+	 */
+	private static String screen(String code, String input, byte[] checkpoint) throws IOException {
+		StringBuilder screen = new StringBuilder();
+		Interpreter interpreter = new Interpreter(new InterpreterListener() {
+			@Override
+			public void writeScreen(String msg) {
+				screen.append(msg);
+			}
+		});
+		interpreter.init(code);
+		interpreter.setInput(InputSource.of(input));
+		if (checkpoint != null) {
+			interpreter.restore(checkpoint);
+		}
+		interpreter.go("all");
+		assertEquals(Outcome.FINISHED, interpreter.getOutcome());
+		return screen.toString();
+	}
+
+	private static Interpreter interpreter(String code) {
+		Interpreter interpreter = new Interpreter(InterpreterListener.NONE);
+		interpreter.init(code);
+		return interpreter;
+	}
+
+	private static Checkpoint read(byte[] bytes) throws IOException {
+		return Checkpoint.read(new ByteArrayInputStream(bytes));
+	}
+
+	private static byte[] patch(byte[] bytes, int offset, int value) {
+		byte[] patched = bytes.clone();
+		ByteBuffer.wrap(patched).putInt(offset, value);
+		return patched;
+	}
+
+	private static byte[] patchShort(byte[] bytes, int offset, int value) {
+		byte[] patched = bytes.clone();
+		ByteBuffer.wrap(patched).putShort(offset, (short) value);
+		return patched;
+	}
+
+	private static byte[] patchByte(byte[] bytes, int offset, int value) {
+		byte[] patched = bytes.clone();
+		patched[offset] = (byte) value;
+		return patched;
+	}
+
+}
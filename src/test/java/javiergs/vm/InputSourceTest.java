@@ -0,0 +1,97 @@
+package javiergs.vm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Values of every type read from strings and files, across the end of the buffer, past the end of the input
+ * and with the wrong type.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class InputSourceTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void readsEveryType() {
+		InputSource input = InputSource.of("  12 -3\n2.5e1\ttrue FALSE hello  \n");
+		assertEquals(12, input.nextInt());
+		assertEquals(-3, input.nextInt());
+		assertEquals(25f, input.nextFloat());
+		assertTrue(input.nextBoolean());
+		assertFalse(input.nextBoolean());
+		assertEquals("hello", input.nextString());
+		assertFalse(input.hasNext());
+		assertEquals(6, input.position());
+	}
+
+	@Test
+	void readsTokensAcrossTheBuffer() {
+		StringBuilder text = new StringBuilder();
+		long sum = 0;
+		for (int i = 0; i < 1000; i++) {
+			text.append(i * 7919).append(i % 3 == 0 ? "\n" : "   ");
+			sum += i * 7919;
+		}
+		String word = "a-token-longer-than-the-buffer-of-sixteen-characters";
+		text.append(word);
+		InputSource input = new InputSource(new StringReader(text.toString()), 16);
+		long read = 0;
+		for (int i = 0; i < 1000; i++) {
+			read += input.nextInt();
+		}
+		assertEquals(sum, read);
+		assertEquals(word, input.nextString());
+		assertFalse(input.hasNext());
+	}
+
+	@Test
+	void readsFiles() throws IOException {
+		Path file = directory.resolve("input.txt");
+		Files.writeString(file, "7 true\n");
+		try (InputSource input = InputSource.of(file)) {
+			assertEquals(7, input.nextInt());
+			assertTrue(input.nextBoolean());
+			assertFalse(input.hasNext());
+		}
+	}
+
+	@Test
+	void endOfInput() {
+		InputSource input = InputSource.of("1 2 ");
+		input.skip(2);
+		assertEquals(2, input.position());
+		IllegalStateException e = assertThrows(IllegalStateException.class, input::nextString);
+		assertEquals("the input ended after 2 values", e.getMessage());
+		assertThrows(IllegalStateException.class, () -> InputSource.of("").nextInt());
+		assertThrows(IllegalStateException.class, () -> InputSource.of("1").skip(2));
+	}
+
+	@Test
+	void wrongTypes() {
+		InputSource input = InputSource.of("1.5 abc yes 2147483648 ok");
+		IllegalArgumentException e = assertThrows(IllegalArgumentException.class, input::nextInt);
+		assertEquals("value 1 of the input is not int: 1.5", e.getMessage());
+		e = assertThrows(IllegalArgumentException.class, input::nextFloat);
+		assertEquals("value 2 of the input is not float: abc", e.getMessage());
+		e = assertThrows(IllegalArgumentException.class, input::nextBoolean);
+		assertEquals("value 3 of the input is not boolean: yes", e.getMessage());
+		assertThrows(IllegalArgumentException.class, input::nextInt);
+		// a value of the wrong type is read anyway
+		assertEquals("ok", input.nextString());
+	}
+
+}
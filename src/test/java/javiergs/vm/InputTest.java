@@ -0,0 +1,82 @@
+package javiergs.vm;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Programs that read their input with OPR 22 to 25, interpreted and compiled (JIT threshold 0):
+ * the values they read, and the error when the input ends, has a value of the wrong type or is missing.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class InputTest {
+
+	// reads two ints, a float and a boolean, and prints the sum of the ints, the float and the boolean
+	private static final String NUMBERS = "@\nopr 22, 0\nopr 22, 0\nopr 2, 0\nopr 21, 0\nopr 23, 0\nopr 21, 0\n"
+		+ "opr 25, 0\nopr 21, 0\nopr 0, 0\n";
+	// reads a string and prints it twice
+	private static final String WORDS = "w, string, global, 0\n@\nopr 24, 0\nsto w, 0\nlod w, 0\nopr 21, 0\n"
+		+ "lod w, 0\nopr 21, 0\nopr 0, 0\n";
+
+	private final StringBuilder screen = new StringBuilder();
+	private final StringBuilder console = new StringBuilder();
+
+	@ParameterizedTest
+	@ValueSource(ints = {-1, 0})
+	void readsEveryType(int jitThreshold) {
+		assertEquals(Outcome.FINISHED, run(NUMBERS, "3 4\n2.5 TRUE", jitThreshold));
+		assertEquals(" 7\n 2.5\n true\n", screen.toString());
+		screen.setLength(0);
+		assertEquals(Outcome.FINISHED, run(WORDS, "hello world", jitThreshold));
+		assertEquals(" hello\n hello\n", screen.toString());
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {-1, 0})
+	void endOfInputIsAnError(int jitThreshold) {
+		assertEquals(Outcome.ERROR, run(NUMBERS, "3 4 2.5", jitThreshold));
+		assertEquals(" 7\n 2.5\n", screen.toString());
+		assertTrue(console.toString().contains("the input ended after 3 values"), console.toString());
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {-1, 0})
+	void wrongTypeIsAnError(int jitThreshold) {
+		assertEquals(Outcome.ERROR, run(NUMBERS, "3 four 2.5 true", jitThreshold));
+		assertEquals("", screen.toString());
+		assertTrue(console.toString().contains("value 2 of the input is not int: four"), console.toString());
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {-1, 0})
+	void noInputIsAnError(int jitThreshold) {
+		assertEquals(Outcome.ERROR, run(NUMBERS, null, jitThreshold));
+		assertTrue(console.toString().contains("the program reads input and there is none"), console.toString());
+	}
+
+	private Outcome run(String code, String input, int jitThreshold) {
+		Interpreter interpreter = new Interpreter(new InterpreterListener() {
+			@Override
+			public void writeScreen(String msg) {
+				screen.append(msg);
+			}
+
+			@Override
+			public void writeConsole(String msg) {
+				console.append(msg).append('\n');
+			}
+		});
+		interpreter.setJitThreshold(jitThreshold);
+		interpreter.init(code);
+		if (input != null) {
+			interpreter.setInput(InputSource.of(input));
+		}
+		interpreter.go("all");
+		return interpreter.getOutcome();
+	}
+
+}
@@ -0,0 +1,50 @@
+package javiergs.vm;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The decoded Interpreter must print what the string-dispatched Interpreter printed.
+ * Every program in programs/ has next to it (.out) the screen of the old Interpreter running it.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class InterpreterParityTest {
+
+	@ParameterizedTest
+	@ValueSource(strings = {"loop", "example", "arithmetic", "strings", "numeric"})
+	void printsWhatTheOldInterpreterPrinted(String name) throws IOException {
+		String expected = resource(name + ".out");
+		assertEquals(expected, run(resource(name + ".txt"), false));
+		assertEquals(expected, run(resource(name + ".txt"), true));
+	}
+
+	static String run(String code, boolean optimize) {
+		StringBuilder screen = new StringBuilder();
+		Interpreter interpreter = new Interpreter(new InterpreterListener() {
+			@Override
+			public void writeScreen(String msg) {
+				screen.append(msg);
+			}
+		});
+		interpreter.setOptimize(optimize);
+		interpreter.init(code);
+		interpreter.go("all");
+		assertEquals(Outcome.FINISHED, interpreter.getOutcome());
+		return screen.toString();
+	}
+
+	static String resource(String name) throws IOException {
+		try (InputStream in = InterpreterParityTest.class.getResourceAsStream("programs/" + name)) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+package javiergs.vm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Programs compiled by the Jit must do what the Interpreter does: same screen, same outcome and, when they
+ * finish, the same number of executed instructions; also when they stop in the middle of a loop
+ * and continue from a checkpoint.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class JitTest {
+
+	@ParameterizedTest
+	@ValueSource(strings = {"loop", "sum", "numeric"})
+	void compiledProgramsDoWhatTheInterpreterDoes(String name) throws IOException {
+		String code = InterpreterParityTest.resource(name + ".txt");
+		Run interpreted = new Run(code, -1);
+		interpreted.interpreter.run();
+		Run compiled = new Run(code, 0);
+		compiled.interpreter.run();
+		assertTrue(compiled.console.toString().contains("instructions compiled into"), compiled.console.toString());
+		assertEquals(Outcome.FINISHED, interpreted.interpreter.getOutcome());
+		assertEquals(Outcome.FINISHED, compiled.interpreter.getOutcome());
+		assertEquals(interpreted.screen.toString(), compiled.screen.toString());
+		assertEquals(interpreted.interpreter.getExecuted(), compiled.interpreter.getExecuted());
+	}
+
+	@Test
+	void arrays() throws IOException {
+		String code = InterpreterParityTest.resource("sieve.txt");
+		Run interpreted = new Run(code, -1);
+		interpreted.interpreter.run();
+		Run compiled = new Run(code, 0);
+		compiled.interpreter.run();
+		assertTrue(compiled.console.toString().contains("instructions compiled into"), compiled.console.toString());
+		// the program ends reading f[10]
+		assertEquals(Outcome.ERROR, interpreted.interpreter.getOutcome());
+		assertEquals(Outcome.ERROR, compiled.interpreter.getOutcome());
+		assertEquals(" 9592\n 7.0\n", interpreted.screen.toString());
+		assertEquals(interpreted.screen.toString(), compiled.screen.toString());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"strings", "arithmetic", "peephole"})
+	void stringsAndMixedTypesStayInTheInterpreter(String name) throws IOException {
+		String code = InterpreterParityTest.resource(name + ".txt");
+		Run interpreted = new Run(code, -1);
+		interpreted.interpreter.run();
+		Run compiled = new Run(code, 0);
+		compiled.interpreter.run();
+		assertTrue(compiled.console.toString().contains("the program stays interpreted"), compiled.console.toString());
+		assertEquals(interpreted.screen.toString(), compiled.screen.toString());
+		assertEquals(interpreted.interpreter.getExecuted(), compiled.interpreter.getExecuted());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"sum", "sieve"})
+	void checkpointsInTheMiddleOfALoop(String name) throws IOException {
+		String code = InterpreterParityTest.resource(name + ".txt");
+		Run reference = new Run(code, -1);
+		reference.interpreter.run();
+		for (int from = -1; from <= 0; from++) {
+			for (int to = -1; to <= 0; to++) {
+				Run first = new Run(code, from);
+				// runFor(0) runs one slice: a slice of the Interpreter or the compiled code up to its budget of jumps
+				int slices = 0;
+				while (first.interpreter.getExecuted() < 2_000_000) {
+					assertFalse(first.interpreter.runFor(0));
+					slices++;
+				}
+				assertTrue(slices > 1 && first.interpreter.getExecuted() < reference.interpreter.getExecuted() - 1_000_000);
+				byte[] checkpoint = first.interpreter.checkpoint();
+				Run second = new Run(code, to);
+				second.interpreter.restore(checkpoint);
+				second.interpreter.run();
+				String where = name + " from " + from + " to " + to;
+				assertEquals(reference.interpreter.getOutcome(), second.interpreter.getOutcome(), where);
+				assertEquals(reference.screen.toString(), first.screen.toString() + second.screen, where);
+				if (reference.interpreter.getOutcome() == Outcome.FINISHED) {
+					assertEquals(reference.interpreter.getExecuted(), second.interpreter.getExecuted(), where);
+				}
+			}
+		}
+	}
+
+	/**
+	 * An Interpreter with a program loaded and a listener that keeps its screen and console.
+	 */
+	private static final class Run implements InterpreterListener {
+
+		final StringBuilder screen = new StringBuilder();
+		final StringBuilder console = new StringBuilder();
+		final Interpreter interpreter = new Interpreter(this);
+
+		Run(String code, int jitThreshold) {
+			interpreter.setJitThreshold(jitThreshold);
+			interpreter.init(code);
+		}
+
+		@Override
+		public void writeScreen(String msg) {
+			screen.append(msg);
+		}
+
+		@Override
+		public void writeConsole(String msg) {
+			console.append(msg).append('\n');
+		}
+
+	}
+
+}
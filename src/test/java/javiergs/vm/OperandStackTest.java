@@ -0,0 +1,50 @@
+package javiergs.vm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Popped strings and arrays must not stay reachable from the stack.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class OperandStackTest {
+
+	@Test
+	void popsClearTheReference() {
+		OperandStack stack = new OperandStack();
+		stack.pushString("a");
+		assertEquals("a", stack.popString());
+		assertNull(stack.refs[0]);
+		stack.pushString("b");
+		assertEquals("b", stack.popAsString());
+		assertNull(stack.refs[0]);
+		stack.pushString("1.5");
+		assertEquals(1.5f, stack.popAsFloat());
+		assertNull(stack.refs[0]);
+		stack.pushString("true");
+		assertTrue(stack.popAsBoolean());
+		assertNull(stack.refs[0]);
+		stack.pushString("x");
+		stack.pushString("x");
+		assertTrue(stack.popEquals());
+		assertNull(stack.refs[0]);
+		assertNull(stack.refs[1]);
+	}
+
+	@Test
+	void storeClearsTheReference() {
+		OperandStack stack = new OperandStack();
+		Memory memory = new Memory(1);
+		stack.pushString("kept in memory");
+		stack.store(memory, 0);
+		assertEquals("kept in memory", memory.refs[0]);
+		assertNull(stack.refs[0]);
+		assertEquals(0, stack.size());
+	}
+
+}
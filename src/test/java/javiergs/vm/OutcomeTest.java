@@ -0,0 +1,96 @@
+package javiergs.vm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * How a program ends: finished, with an error or stopped by a limit or by cancel,
+ * interpreted and compiled (JIT threshold 0).
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class OutcomeTest {
+
+	private static final String FOREVER = "i, int, global, 0\n@\nlod i, 0\nlit 1, 0\nopr 2, 0\nsto i, 0\njmp 1, 0\n";
+
+	@ParameterizedTest
+	@ValueSource(ints = {-1, 0})
+	void finished(int jitThreshold) {
+		Interpreter interpreter = interpreter("@\nlit 1, 0\nopr 21, 0\nopr 0, 0\n", jitThreshold);
+		interpreter.run();
+		assertEquals(Outcome.FINISHED, interpreter.getOutcome());
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {-1, 0})
+	void instructionLimit(int jitThreshold) {
+		Interpreter interpreter = interpreter(FOREVER, jitThreshold);
+		interpreter.setInstructionLimit(100_000);
+		interpreter.run();
+		assertEquals(Outcome.INSTRUCTION_LIMIT, interpreter.getOutcome());
+		assertTrue(interpreter.getExecuted() >= 100_000);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {-1, 0})
+	void timeLimit(int jitThreshold) {
+		Interpreter interpreter = interpreter(FOREVER, jitThreshold);
+		interpreter.setTimeLimit(20_000_000L);
+		interpreter.run();
+		assertEquals(Outcome.TIME_LIMIT, interpreter.getOutcome());
+	}
+
+	@Test
+	void cancelled() {
+		Interpreter interpreter = interpreter(FOREVER, -1);
+		interpreter.cancel();
+		interpreter.run();
+		assertEquals(Outcome.CANCELLED, interpreter.getOutcome());
+	}
+
+	@Test
+	void stackLimit() {
+		Interpreter interpreter = interpreter("@\nlit 1, 0\nlit 2, 0\nlit 3, 0\nopr 0, 0\n", -1);
+		interpreter.setStackLimit(2);
+		interpreter.run();
+		assertEquals(Outcome.STACK_LIMIT, interpreter.getOutcome());
+	}
+
+	@Test
+	void errorsWithAFullStackAreErrors() {
+		// the input ends with register_zero at its limit
+		Interpreter interpreter = interpreter("@\nlit 1, 0\nlit 2, 0\nopr 22, 0\nopr 0, 0\n", -1);
+		interpreter.setStackLimit(2);
+		interpreter.run();
+		assertEquals(Outcome.ERROR, interpreter.getOutcome());
+		interpreter = interpreter("p, int[2], global, 0\n@\nlit 1, 0\nlit 5, 0\nldx p, 0\nopr 0, 0\n", -1);
+		interpreter.setStackLimit(2);
+		interpreter.run();
+		assertEquals(Outcome.ERROR, interpreter.getOutcome());
+	}
+
+	@Test
+	void limitsBelowTheStackAreRejected() {
+		OperandStack stack = new OperandStack();
+		stack.pushInt(1);
+		stack.pushInt(2);
+		assertThrows(StackLimitException.class, () -> stack.setLimit(1));
+		stack.setLimit(2);
+		assertThrows(StackLimitException.class, () -> stack.pushInt(3));
+		assertEquals(2, stack.size());
+	}
+
+	private static Interpreter interpreter(String code, int jitThreshold) {
+		Interpreter interpreter = new Interpreter(InterpreterListener.NONE);
+		interpreter.setJitThreshold(jitThreshold);
+		interpreter.init(code);
+		return interpreter;
+	}
+
+}
@@ -0,0 +1,120 @@
+package javiergs.vm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Hashtable;
+import java.util.StringJoiner;
+import java.util.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The instructions the PeepholeOptimizer removes and rewrites, and the output of the programs,
+ * which must be the same with and without it.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class PeepholeOptimizerTest {
+
+	private final Hashtable<String, Vector<Symbol>> symbolTable = new Hashtable<>();
+	private final Vector<Instruction> instructions = new Vector<>();
+
+	@Test
+	void removesNopsAndJumpsToTheNextInstruction() throws IOException {
+		load("@\nopr 1, 0\njmp 3, 0\nlit 1, 0\nopr 21, 0\nopr 0, 0\n");
+		assertEquals(2, optimize());
+		assertEquals("LIT 1|OPR 21|OPR 0", code());
+	}
+
+	@Test
+	void storesAndLoadsBecomeStl() throws IOException {
+		load("x, int, global, 0\n@\nlit 1, 0\nsto x, 0\nlod x, 0\nopr 21, 0\n");
+		assertEquals(1, optimize());
+		assertEquals("LIT 1|STL x|OPR 21", code());
+	}
+
+	@Test
+	void foldsLiterals() throws IOException {
+		load("@\nlit 2, 0\nlit 3, 0\nopr 4, 0\nlit 1, 0\nlit 0, 0\nopr 5, 0\n");
+		// division by zero fails when it runs, so it stays
+		assertEquals(2, optimize());
+		assertEquals("LIT 6|LIT 1|LIT 0|OPR 5", code());
+	}
+
+	@Test
+	void flipsTheConditionAfterNot() throws IOException {
+		load("@\nlit true, 0\nopr 10, 0\njmc 4, true\nopr 0, 0\n");
+		assertEquals(1, optimize());
+		assertEquals("LIT true|JMC 3 false|OPR 0", code());
+	}
+
+	@Test
+	void jumpsToJumpsGoToTheirTarget() throws IOException {
+		load("#L1, int, 3\n@\njmp #L1, 0\nopr 0, 0\njmp 5, 0\nopr 0, 0\nlit 1, 0\n");
+		assertEquals(0, optimize());
+		assertEquals("JMP 5|OPR 0|JMP 5|OPR 0|LIT 1", code());
+	}
+
+	@Test
+	void renumbersLabelsOnly() throws IOException {
+		load("#L1, int, 4\nk, int, global, 0\n@\nopr 1, 0\nopr 1, 0\nlod k, 0\nopr 21, 0\njmp #L1, 0\n");
+		// a variable whose value looks like an instruction number is not a label
+		symbolTable.get("k").get(0).setValue(4);
+		assertEquals(2, optimize());
+		assertEquals("LOD k|OPR 21|JMP #L1", code());
+		assertEquals(2, symbolTable.get("#L1").get(0).getValue());
+		assertEquals(4, symbolTable.get("k").get(0).getValue());
+	}
+
+	@Test
+	void removedCountOfAProgram() throws IOException {
+		load(InterpreterParityTest.resource("peephole.txt"));
+		int size = instructions.size();
+		assertEquals(11, optimize());
+		assertEquals(size - 11, instructions.size());
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {"loop", "example", "arithmetic", "strings", "numeric", "peephole"})
+	void sameOutput(String name) throws IOException {
+		String code = InterpreterParityTest.resource(name + ".txt");
+		assertEquals(run(code, false), run(code, true));
+	}
+
+	private static String run(String code, boolean optimize) {
+		StringBuilder screen = new StringBuilder();
+		Interpreter interpreter = new Interpreter(new InterpreterListener() {
+			@Override
+			public void writeScreen(String msg) {
+				screen.append(msg);
+			}
+		});
+		interpreter.setOptimize(optimize);
+		interpreter.init(code);
+		interpreter.go("all");
+		return screen + "|" + interpreter.getOutcome();
+	}
+
+	private void load(String code) throws IOException {
+		new ProgramLoader(symbolTable, instructions, InterpreterListener.NONE).load(new StringReader(code));
+	}
+
+	private int optimize() {
+		return new PeepholeOptimizer().optimize(instructions, symbolTable);
+	}
+
+	private String code() {
+		StringJoiner code = new StringJoiner("|");
+		for (Instruction instruction : instructions) {
+			String text = instruction.getName().trim().toUpperCase() + " " + instruction.getParameter1().trim();
+			code.add(instruction.getName().trim().equalsIgnoreCase("JMC") ? text + " " + instruction.getParameter2().trim() : text);
+		}
+		return code.toString();
+	}
+
+}
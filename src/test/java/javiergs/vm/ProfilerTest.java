@@ -0,0 +1,79 @@
+package javiergs.vm;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Counts by instruction, by opcode and by loop of a run of loop.txt, which adds i to s for i from 0 to 999.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class ProfilerTest {
+
+	// instructions of loop.txt: the condition starts at 2, the back jump is 14 and the program has 18
+	private static final int CONDITION = 2;
+	private static final int BACK = 14;
+	private static final int SIZE = 18;
+
+	@Test
+	void countsEveryInstruction() throws IOException {
+		Profiler profiler = (Profiler) run().getTracer();
+		for (int pc = 0; pc < SIZE; pc++) {
+			long expected = pc < CONDITION || pc > BACK ? 1 : pc <= CONDITION + 3 ? 1001 : 1000;
+			assertEquals(expected, profiler.count(pc), "instruction " + (pc + 1));
+		}
+		assertEquals(0, profiler.count(SIZE));
+		// the hot instructions are the four of the condition
+		long hottest = 0;
+		for (int pc = 0; pc < SIZE; pc++) {
+			hottest = Math.max(hottest, profiler.count(pc));
+		}
+		for (int pc = 0; pc < SIZE; pc++) {
+			assertEquals(pc >= CONDITION && pc <= CONDITION + 3, profiler.count(pc) == hottest, "instruction " + (pc + 1));
+		}
+	}
+
+	@Test
+	void reportsOpcodesAndTheHotLoop() throws IOException {
+		String report = run().profileReport();
+		assertTrue(report.startsWith("Profile: " + (2 + 4 * 1001 + 9 * 1000 + 3) + " instructions executed"), report);
+		// lod i in the condition, lod s, lod i and lod i in the body, and lod s after the loop
+		assertTrue(report.matches("(?s).*\nLOD +4002 .*"), report);
+		assertTrue(report.matches("(?s).*\nJMP +1000 .*"), report);
+		// iterations (the condition runs once more than the body) and instructions of the loop
+		assertTrue(report.contains("\n0003-0015           1001          13004 "), report);
+		// ranked by time, the hot instructions are in the loop but for the first print or the first instruction
+		String[] hot = report.substring(report.indexOf("Hot instructions:")).split("\n");
+		int inLoop = 0;
+		for (int i = 2; i < 12; i++) {
+			int pc = Integer.parseInt(hot[i].substring(0, 4)) - 1;
+			if (pc >= CONDITION && pc <= BACK) {
+				inLoop++;
+				assertTrue(hot[i].matches(".* 100[01] .*"), hot[i]);
+			}
+		}
+		assertTrue(inLoop >= 8, report);
+	}
+
+	@Test
+	void noReportWithoutAProfiler() {
+		Interpreter interpreter = new Interpreter(InterpreterListener.NONE);
+		assertEquals("There is no profile, load the program with profiling on.", interpreter.profileReport());
+	}
+
+	private static Interpreter run() throws IOException {
+		Interpreter interpreter = new Interpreter(InterpreterListener.NONE);
+		interpreter.setOptimize(false);
+		interpreter.setTracer(new Profiler());
+		interpreter.init(InterpreterParityTest.resource("loop.txt"));
+		interpreter.go("all");
+		assertEquals(Outcome.FINISHED, interpreter.getOutcome());
+		return interpreter;
+	}
+
+}
@@ -0,0 +1,84 @@
+package javiergs.vm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Hashtable;
+import java.util.Vector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The sequences fused into superinstructions, the ones a jump goes into, and the report of the patterns.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class SuperinstructionsTest {
+
+	// values a jump into i = i + 1 must push first, by the instruction it jumps to
+	private static final String[] PUSH = {"", "lod i, 0\n", "lod i, 0\nlit 2, 0\n", "lod i, 0\n"};
+
+	@Test
+	void fusesTheLoopOfLoop() throws IOException {
+		Superinstructions superinstructions = superinstructions(InterpreterParityTest.resource("loop.txt"));
+		Program fused = superinstructions.fuse();
+		// the condition (instructions 3 to 6), s = s + i (7 to 10) and i = i + 1 (11 to 14)
+		assertEquals(Opcode.BRANCH_SLOT_CONST, fused.opcodes[2]);
+		assertEquals(Opcode.ARITH_SLOT_SLOT, fused.opcodes[6]);
+		assertEquals(Opcode.ARITH_SLOT_CONST, fused.opcodes[10]);
+		assertEquals("1 x " + Opcode.NAMES[Opcode.ARITH_SLOT_CONST] + ", 1 x " + Opcode.NAMES[Opcode.ARITH_SLOT_SLOT]
+			+ ", 1 x " + Opcode.NAMES[Opcode.BRANCH_SLOT_CONST], superinstructions.report());
+	}
+
+	@Test
+	void aJumpToTheFirstInstructionKeepsTheFusion() throws IOException {
+		Superinstructions superinstructions = superinstructions(code(0));
+		Program fused = superinstructions.fuse();
+		assertEquals(Opcode.ARITH_SLOT_CONST, fused.opcodes[0]);
+		assertEquals(Opcode.BRANCH_SLOT_CONST, fused.opcodes[4]);
+		assertEquals("1 x " + Opcode.NAMES[Opcode.ARITH_SLOT_CONST] + ", 1 x " + Opcode.NAMES[Opcode.BRANCH_SLOT_CONST],
+			superinstructions.report());
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {1, 2, 3})
+	void aJumpIntoTheSequenceIsNotFused(int target) throws IOException {
+		Superinstructions superinstructions = superinstructions(code(target));
+		Program fused = superinstructions.fuse();
+		assertEquals(Opcode.LOD, fused.opcodes[0]);
+		assertEquals(Opcode.LIT_INT, fused.opcodes[1]);
+		assertEquals(Opcode.ADD, fused.opcodes[2]);
+		assertEquals(Opcode.STO, fused.opcodes[3]);
+		assertEquals(Opcode.BRANCH_SLOT_CONST, fused.opcodes[4]);
+		assertEquals("1 x " + Opcode.NAMES[Opcode.BRANCH_SLOT_CONST], superinstructions.report());
+	}
+
+	@Test
+	void nothingToFuse() throws IOException {
+		Superinstructions superinstructions = superinstructions("@\nlit 1, 0\nopr 21, 0\nopr 0, 0\n");
+		superinstructions.fuse();
+		assertEquals("none", superinstructions.report());
+	}
+
+	/**
+	 * i = i + 1 (instructions 0 to 3) and i &lt; 5 (4 to 7), and while it is, a jump to the instruction target.
+	 */
+	private static String code(int target) {
+		return "i, int, global, 0\n#L1, int, " + (target + 1) + "\n#L2, int, " + (PUSH[target].chars().filter(c -> c == '\n').count() + 10)
+			+ "\n@\nlod i, 0\nlit 1, 0\nopr 2, 0\nsto i, 0\nlod i, 0\nlit 5, 0\nopr 12, 0\njmc #L2, false\n"
+			+ PUSH[target] + "jmp #L1, 0\nopr 0, 0\n";
+	}
+
+	private static Superinstructions superinstructions(String code) throws IOException {
+		Hashtable<String, Vector<Symbol>> symbolTable = new Hashtable<>();
+		Vector<Instruction> instructions = new Vector<>();
+		new ProgramLoader(symbolTable, instructions, InterpreterListener.NONE).load(new StringReader(code));
+		TypeInference types = new TypeInference(new Decoder().decode(instructions, symbolTable));
+		return new Superinstructions(types.specialize(), types);
+	}
+
+}
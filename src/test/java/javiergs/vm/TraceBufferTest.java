@@ -0,0 +1,105 @@
+package javiergs.vm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The ring buffer keeps the last records, one of every n when sampling, and writes them from the oldest.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class TraceBufferTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void keepsTheLastRecords() throws IOException {
+		TraceBuffer trace = TraceBuffer.full(4);
+		for (int pc = 0; pc < 10; pc++) {
+			trace.record(pc, Opcode.JMP, pc % 3, -1);
+		}
+		assertEquals(4, trace.size());
+		assertEquals(10, trace.executed());
+		String[] lines = write(trace, new String[0]);
+		assertEquals("# 10 instructions executed, 10 recorded, last 4 follow", lines[0]);
+		assertEquals(5, lines.length);
+		for (int n = 6; n < 10; n++) {
+			assertEquals(n + "\t" + String.format("%04d", n + 1) + "\tJMP\tdepth " + n % 3, lines[n - 5]);
+		}
+	}
+
+	@Test
+	void capacityIsRoundedUpToAPowerOfTwo() {
+		TraceBuffer trace = TraceBuffer.full(5);
+		for (int pc = 0; pc < 20; pc++) {
+			trace.record(pc, Opcode.JMP, 0, -1);
+		}
+		assertEquals(8, trace.size());
+	}
+
+	@Test
+	void samplingRecordsOneOfEveryN() throws IOException {
+		TraceBuffer trace = TraceBuffer.sampled(16, 3);
+		for (int pc = 0; pc < 10; pc++) {
+			trace.record(pc, Opcode.LOD, 0, 0);
+		}
+		assertEquals(3, trace.size());
+		assertEquals(10, trace.executed());
+		String[] lines = write(trace, new String[]{"x"});
+		assertEquals("# 10 instructions executed, 3 recorded (one of every 3), last 3 follow", lines[0]);
+		assertEquals("0\t0003\tLOD\tdepth 0\tx", lines[1]);
+		assertEquals("1\t0006\tLOD\tdepth 0\tx", lines[2]);
+		assertEquals("2\t0009\tLOD\tdepth 0\tx", lines[3]);
+	}
+
+	@Test
+	void clearStartsAgain() {
+		TraceBuffer trace = TraceBuffer.sampled(4, 2);
+		for (int pc = 0; pc < 7; pc++) {
+			trace.record(pc, Opcode.JMP, 0, -1);
+		}
+		trace.clear();
+		assertEquals(0, trace.size());
+		assertEquals(0, trace.executed());
+		trace.record(0, Opcode.JMP, 0, -1);
+		trace.record(1, Opcode.JMP, 0, -1);
+		assertEquals(1, trace.size());
+	}
+
+	@Test
+	void tracesARun() throws IOException {
+		Interpreter interpreter = new Interpreter(InterpreterListener.NONE);
+		TraceBuffer trace = TraceBuffer.full(64);
+		interpreter.setTracer(trace);
+		interpreter.init(InterpreterParityTest.resource("loop.txt"));
+		interpreter.go("all");
+		assertEquals(Outcome.FINISHED, interpreter.getOutcome());
+		assertEquals(interpreter.getExecuted(), trace.executed());
+		Path file = directory.resolve("trace.txt");
+		interpreter.dumpTrace(file);
+		List<String> lines = Files.readAllLines(file);
+		assertEquals(65, lines.size());
+		assertTrue(lines.get(0).startsWith("# " + interpreter.getExecuted() + " instructions executed"), lines.get(0));
+		// the program ends with lod s, opr 21 and opr 0
+		assertTrue(lines.get(62).endsWith("\tLOD\tdepth 0\ts"), lines.get(62));
+		assertTrue(lines.get(64).startsWith(interpreter.getExecuted() - 1 + "\t0018\t"), lines.get(64));
+	}
+
+	private static String[] write(TraceBuffer trace, String[] names) throws IOException {
+		StringWriter out = new StringWriter();
+		trace.write(out, names);
+		return out.toString().split("\n");
+	}
+
+}
@@ -0,0 +1,110 @@
+package javiergs.vm;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The WriterSink writes its buffer in one call when it is full or when the Flush policy says so.
+ *
+ * @author javiergs
+ * @version 1.0
+ */
+class WriterSinkTest {
+
+	@Test
+	void writesWhenTheBufferIsFull() {
+		Recorder out = new Recorder();
+		WriterSink sink = new WriterSink(out, 10, OutputSink.Flush.END);
+		sink.write("12345");
+		sink.write("6789\n");
+		assertEquals(List.of("123456789\n"), out.writes);
+		sink.write("ab");
+		assertEquals(1, out.writes.size());
+		assertEquals(0, out.flushes);
+		sink.flush();
+		assertEquals(List.of("123456789\n", "ab"), out.writes);
+		assertEquals(1, out.flushes);
+	}
+
+	@Test
+	void lineWritesAfterEveryNewLine() {
+		Recorder out = new Recorder();
+		WriterSink sink = new WriterSink(out, 100, OutputSink.Flush.LINE);
+		sink.write("a");
+		sink.write(" b");
+		assertTrue(out.writes.isEmpty());
+		sink.write(" c\n");
+		assertEquals(List.of("a b c\n"), out.writes);
+		assertEquals(1, out.flushes);
+	}
+
+	@Test
+	void alwaysWritesEveryValue() {
+		Recorder out = new Recorder();
+		WriterSink sink = new WriterSink(out, 100, OutputSink.Flush.ALWAYS);
+		sink.write("a");
+		sink.write("b");
+		assertEquals(List.of("a", "b"), out.writes);
+		assertEquals(2, out.flushes);
+	}
+
+	@Test
+	void closeWritesTheRestAndClosesTheWriter() {
+		Recorder out = new Recorder();
+		WriterSink sink = new WriterSink(out, 100, OutputSink.Flush.END);
+		sink.write("rest");
+		sink.close();
+		assertEquals(List.of("rest"), out.writes);
+		assertTrue(out.closed);
+	}
+
+	@Test
+	void failuresAreUnchecked() {
+		Recorder out = new Recorder();
+		out.failing = true;
+		WriterSink sink = new WriterSink(out, 4, OutputSink.Flush.END);
+		sink.write("ab");
+		assertThrows(UncheckedIOException.class, () -> sink.write("cd"));
+		assertThrows(UncheckedIOException.class, sink::flush);
+	}
+
+	/**
+	 * Writer that keeps every write apart.
+	 */
+	private static final class Recorder extends Writer {
+
+		final List<String> writes = new ArrayList<>();
+		int flushes;
+		boolean closed;
+		boolean failing;
+
+		@Override
+		public void write(char[] chars, int offset, int length) throws IOException {
+			if (failing) {
+				throw new IOException("disk full");
+			}
+			writes.add(new String(chars, offset, length));
+		}
+
+		@Override
+		public void flush() {
+			flushes++;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+
+	}
+
+}